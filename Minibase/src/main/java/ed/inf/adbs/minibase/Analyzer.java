@@ -0,0 +1,76 @@
+package ed.inf.adbs.minibase;
+
+import ed.inf.adbs.minibase.base.RelationalAtom;
+import ed.inf.adbs.minibase.base.Term;
+import ed.inf.adbs.minibase.base.Variable;
+import ed.inf.adbs.minibase.operator.DatabaseCatalog;
+import ed.inf.adbs.minibase.operator.RelationStatistics;
+import ed.inf.adbs.minibase.operator.ScanOperator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Collects the statistics used by the planner (ANALYZE): the row count of each relation and, for each column,
+ * the number of distinct values, the smallest and largest values and an equi-depth histogram.
+ * The statistics are written to the stats.txt file of the database directory, where the catalog loads them.
+ *
+ */
+public class Analyzer {
+    // The number of histogram buckets per column, configurable with -Dminibase.analyze.buckets
+    public static final int HISTOGRAM_BUCKETS = Integer.getInteger("minibase.analyze.buckets", 10);
+
+    /**
+     * Analyzes the relations given on the command line, or every relation of the schema if none is given.
+     *
+     * @param args the database directory followed by optional relation names.
+     */
+    public static void main(String[] args) {
+
+        if (args.length < 1) {
+            System.err.println("Usage: Analyzer database_dir [relation ...]");
+            return;
+        }
+
+        String databaseDir = args[0];
+        List<String> relations = new ArrayList<>(Arrays.asList(args).subList(1, args.length));
+
+        analyzeDatabase(databaseDir, relations);
+    }
+
+    /**
+     * Computes the statistics of the given relations and saves them, keeping the statistics of the other relations.
+     *
+     * @param databaseDir the path of the database directory.
+     * @param relations the relations to analyze; all relations of the schema if empty.
+     */
+    public static void analyzeDatabase(String databaseDir, List<String> relations) {
+        DatabaseCatalog dbc = DatabaseCatalog.getInstance();
+        dbc.init(databaseDir);
+        if (relations.isEmpty()) relations.addAll(dbc.getRelationNames());
+
+        for (String relation : relations) {
+            List<String> schema = dbc.getSchema(relation);
+            if (schema == null) {
+                System.err.println("Relation not found in schema: " + relation);
+                continue;
+            }
+            // Scan every column of the relation
+            List<Term> terms = new ArrayList<>();
+            for (int i = 0; i < schema.size(); i++) terms.add(new Variable("c" + i));
+            ScanOperator scan = new ScanOperator(new RelationalAtom(relation, terms));
+            RelationStatistics statistics = RelationStatistics.collect(scan, schema.size(), HISTOGRAM_BUCKETS);
+            dbc.setStatistics(relation, statistics);
+            System.out.println("Analyzed " + statistics.getRowCount() + " rows of " + relation);
+        }
+
+        try {
+            dbc.saveStatistics();
+        } catch (IOException e) {
+            System.err.println("Exception occurred while saving statistics to " + dbc.getStatisticsPath());
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package ed.inf.adbs.minibase;
+
+import ed.inf.adbs.minibase.operator.ColumnarRelationFile;
+import ed.inf.adbs.minibase.operator.DatabaseCatalog;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Converts the CSV relations of a database into the binary columnar format.
+ * Each relation files/R.csv gets a files/R.col next to it, which the catalog then prefers while it is up to date.
+ *
+ */
+public class ColumnarImporter {
+
+    /**
+     * Imports the relations given on the command line, or every relation of the schema if none is given.
+     *
+     * @param args the database directory followed by optional relation names.
+     */
+    public static void main(String[] args) {
+
+        if (args.length < 1) {
+            System.err.println("Usage: ColumnarImporter database_dir [relation ...]");
+            return;
+        }
+
+        String databaseDir = args[0];
+        List<String> relations = new ArrayList<>(Arrays.asList(args).subList(1, args.length));
+
+        importDatabase(databaseDir, relations);
+    }
+
+    /**
+     * Converts the CSV files of the given relations into columnar files.
+     *
+     * @param databaseDir the path of the database directory.
+     * @param relations the relations to import; all relations of the schema if empty.
+     */
+    public static void importDatabase(String databaseDir, List<String> relations) {
+        DatabaseCatalog dbc = DatabaseCatalog.getInstance();
+        dbc.init(databaseDir);
+        if (relations.isEmpty()) relations.addAll(dbc.getRelationNames());
+
+        for (String relation : relations) {
+            if (dbc.getSchema(relation) == null) {
+                System.err.println("Relation not found in schema: " + relation);
+                continue;
+            }
+            try {
+                int rows = ColumnarRelationFile.importCsv(dbc.getRelationPath(relation), dbc.getSchema(relation),
+                        dbc.getColumnarRelationPath(relation));
+                System.out.println("Imported " + rows + " rows into " + dbc.getColumnarRelationPath(relation));
+            } catch (IOException e) {
+                System.err.println("Exception occurred while importing relation " + relation);
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package ed.inf.adbs.minibase;
+
+import ed.inf.adbs.minibase.operator.BTreeIndex;
+import ed.inf.adbs.minibase.operator.DatabaseCatalog;
+import ed.inf.adbs.minibase.operator.HashIndex;
+import ed.inf.adbs.minibase.operator.IndexDefinition;
+import ed.inf.adbs.minibase.operator.RelationIndex;
+
+import java.io.IOException;
+
+/**
+ * Builds a persistent secondary index over a column of a relation (CREATE INDEX) and registers it in the
+ * indexes.txt file of the database, where the catalog finds it. A hash index serves equality predicates and joins;
+ * a B+tree index, only available on int columns, also serves range predicates. Columns are numbered from 0.
+ * An index is ignored by the planner once its relation file changes, until it is built again.
+ *
+ */
+public class CreateIndex {
+
+    /**
+     * Builds the index described on the command line.
+     *
+     * @param args the database directory, the relation name, the column index and optionally the kind of index,
+     *             "hash" (the default) or "btree".
+     */
+    public static void main(String[] args) {
+
+        if (args.length < 3) {
+            System.err.println("Usage: CreateIndex database_dir relation column [hash|btree]");
+            return;
+        }
+
+        String kind = args.length > 3 ? args[3] : HashIndex.KIND;
+        if (!kind.equals(HashIndex.KIND) && !kind.equals(BTreeIndex.KIND)) {
+            System.err.println("Unknown index kind: " + kind);
+            return;
+        }
+        createIndex(args[0], new IndexDefinition(args[1], Integer.parseInt(args[2]), kind));
+    }
+
+    /**
+     * Builds an index file and registers the index in the catalog.
+     *
+     * @param databaseDir the path of the database directory.
+     * @param definition the relation, column and kind of the index.
+     */
+    public static void createIndex(String databaseDir, IndexDefinition definition) {
+        DatabaseCatalog dbc = DatabaseCatalog.getInstance();
+        dbc.init(databaseDir);
+        String relation = definition.getRelationName();
+        if (dbc.getSchema(relation) == null) {
+            System.err.println("Relation not found in schema: " + relation);
+            return;
+        }
+        try {
+            int rows = RelationIndex.build(dbc.getRelationPath(relation), dbc.getSchema(relation),
+                    definition.getColumn(), definition.getKind(), dbc.getIndexPath(definition));
+            dbc.registerIndex(definition);
+            System.out.println("Indexed " + rows + " rows into " + dbc.getIndexPath(definition));
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Exception occurred while indexing relation " + relation);
+            e.printStackTrace();
+        }
+    }
+}
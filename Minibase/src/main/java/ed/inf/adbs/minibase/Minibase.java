@@ -3,10 +3,20 @@ package ed.inf.adbs.minibase;
 import ed.inf.adbs.minibase.operator.*;
 import ed.inf.adbs.minibase.base.*;
 import ed.inf.adbs.minibase.parser.QueryParser;
+import ed.inf.adbs.minibase.planner.CardinalityEstimator;
+import ed.inf.adbs.minibase.planner.Hypergraph;
+import ed.inf.adbs.minibase.planner.IndexAccess;
+import ed.inf.adbs.minibase.planner.IndexSelector;
+import ed.inf.adbs.minibase.planner.JoinOrderOptimizer;
+import ed.inf.adbs.minibase.planner.PredicateAnalyzer;
 
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * In-memory database system
@@ -73,6 +83,18 @@ public class Minibase {
      * @return the root operator of the query plan
      */
     private static Operator buildQueryPlan(Query query) {
+        return buildQueryPlan(query, ParallelExecution.DEFAULT_PARALLELISM, HashJoinOperator.DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     * Builds the query plan for a given query with the given number of workers and hash table budget.
+     *
+     * @param query query the query to build the plan for
+     * @param parallelism the number of workers of parallel plans; 1 builds serial plans only
+     * @param joinBudget the memory a join hash table may take before the planner prefers joins that spill, in bytes
+     * @return the root operator of the query plan
+     */
+    static Operator buildQueryPlan(Query query, int parallelism, long joinBudget) {
         List<RelationalAtom> relationalBody = new ArrayList<>();
         List<ComparisonAtom> comparisonBody = new ArrayList<>();
         List<Term> headTerms = new ArrayList<>(query.getHead().getVariables());
@@ -116,33 +138,503 @@ public class Minibase {
             }
         }
 
+        // Merge the variables equated by comparisons, so that equalities between atoms join them on a shared variable
+        // instead of filtering their cross product, and the comparisons of a merged variable, such as equalities with
+        // constants, filter the scans of all its atoms
+        headTerms = mergeEqualVariables(relationalBody, comparisonBody, headTerms);
+        headRel = new RelationalAtom(query.getHead().getName(), headTerms);
+        separateRepeatedVariables(relationalBody, comparisonBody, allVar);
+
+        // Replace the comparisons by the bounds they imply on every variable, which the selections of all atoms holding
+        // the variable apply, and answer queries whose comparisons contradict each other without reading any relation
+        Map<String, String> varTypes = variableTypes(relationalBody);
+        PredicateAnalyzer predicates = new PredicateAnalyzer(comparisonBody, varTypes);
+        if (predicates.isUnsatisfiable())
+            return buildHead(new EmptyOperator(new ArrayList<>(varTypes.keySet()), new ArrayList<>(varTypes.values())), query, headRel);
+        comparisonBody = predicates.getComparisons();
+
+        // Choose the join order from estimated relation and intermediate result sizes
+        DatabaseCatalog dbc = DatabaseCatalog.getInstance();
+        CardinalityEstimator estimator = new CardinalityEstimator(dbc);
+        relationalBody = new JoinOrderOptimizer(relationalBody, comparisonBody, estimator).order();
+
+        // Get the variables needed above the scans: head and comparison variables, and variables shared between atoms
+        List<String> requiredVars = new ArrayList<>();
+        for (Term term : headTerms) {
+            if (term instanceof Variable) requiredVars.add(((Variable) term).getName());
+            if (term instanceof SumAggregate)
+                for (Term productTerm : ((SumAggregate) term).getProductTerms())
+                    if (productTerm instanceof Variable) requiredVars.add(((Variable) productTerm).getName());
+        }
+        for (ComparisonAtom compAtom : comparisonBody) {
+            if (compAtom.getTerm1() instanceof Variable) requiredVars.add(((Variable) compAtom.getTerm1()).getName());
+            if (compAtom.getTerm2() instanceof Variable) requiredVars.add(((Variable) compAtom.getTerm2()).getName());
+        }
+        List<String> seenVars = new ArrayList<>();
+        for (RelationalAtom relAtom : relationalBody) {
+            for (Term term : relAtom.getTerms()) {
+                if (!(term instanceof Variable)) continue;
+                String varName = ((Variable) term).getName();
+                if (seenVars.contains(varName)) requiredVars.add(varName);
+                else seenVars.add(varName);
+            }
+        }
+
+        // Join cyclic queries with a worst-case optimal join, which binds one variable at a time instead of joining atoms pairwise
+        Hypergraph hypergraph = new Hypergraph(relationalBody);
+        if (relationalBody.size() > 2 && !hypergraph.isAcyclic())
+            return buildHead(new LeapfrogTriejoinOperator(buildAtomScans(relationalBody, comparisonBody, requiredVars),
+                    hypergraph.variableOrder(), spanningComparisons(relationalBody, comparisonBody)), query, headRel);
+
+        // Aggregate acyclic SUM queries by passing partial sums along their join forest instead of building their join
+        if (query.getHead().getSumAggregate() != null && JoinTreeSumOperator.ENABLED && relationalBody.size() > 1
+                && spanningComparisons(relationalBody, comparisonBody).isEmpty() && hypergraph.isAcyclic())
+            return new JoinTreeSumOperator(buildAtomScans(relationalBody, comparisonBody, requiredVars),
+                    hypergraph.joinForest(), headRel);
+
+        // Project acyclic queries from a factorized join of their reduced atoms, enumerated with constant delay, when it
+        // leaves out the atoms whose join partners the projection does not need, instead of the flat join of all atoms
+        List<String> headVars = new ArrayList<>();
+        for (Term term : headTerms) {
+            if (term instanceof Variable) headVars.add(((Variable) term).getName());
+        }
+        if (query.getHead().getSumAggregate() == null && FactorizedJoinOperator.ENABLED && relationalBody.size() > 1
+                && spanningComparisons(relationalBody, comparisonBody).isEmpty() && hypergraph.isAcyclic()) {
+            int[] forest = hypergraph.joinForest();
+            List<Operator> atomOperators = buildAtomScans(relationalBody, comparisonBody, requiredVars);
+            SemiJoinReducer reducer = new SemiJoinReducer(atomOperators, forest);
+            for (int i = 0; i < atomOperators.size(); i++) atomOperators.set(i, reducer.getAtomOperator(i));
+            FactorizedJoinOperator factorized = new FactorizedJoinOperator(atomOperators, forest, headVars);
+            if (factorized.dropsAtoms()) return buildHead(factorized, query, headRel);
+        }
+
+        // Reduce the atoms of acyclic queries by semi-joins when the pairwise joins are estimated to build many dangling tuples,
+        // and join the atoms along the join forest of the reduction
+        int[] joinForest = chooseSemiJoinReduction(relationalBody, comparisonBody, estimator, hypergraph);
+        if (joinForest != null) joinForest = orderAlongForest(relationalBody, joinForest);
+
+        // Read atoms through secondary indexes when their predicates are selective or their joins are cheaper by lookups
+        IndexSelector indexSelector = new IndexSelector(dbc, estimator);
+        JoinOrderOptimizer joinEstimates = new JoinOrderOptimizer(relationalBody, comparisonBody, estimator);
+        List<IndexAccess> scanAccesses = new ArrayList<>();
+        List<IndexAccess> joinAccesses = new ArrayList<>();
+        List<String> joinedVars = new ArrayList<>();
+        for (int i = 0; i < relationalBody.size(); i++) {
+            RelationalAtom relAtom = relationalBody.get(i);
+            IndexAccess joinAccess = i == 0 || joinForest != null ? null
+                    : indexSelector.chooseJoin(relAtom, joinedVars, joinEstimates.prefixRows(i));
+            joinAccesses.add(joinAccess);
+            scanAccesses.add(joinAccess == null ? indexSelector.chooseScan(relAtom, comparisonBody) : null);
+            for (Term term : relAtom.getTerms()) {
+                if (term instanceof Variable) joinedVars.add(((Variable) term).getName());
+            }
+        }
+
+        // Estimate the memory taken by every atom and by the join of the atoms before it, to choose the join algorithms
+        List<Double> atomBytes = new ArrayList<>();
+        List<Double> prefixBytes = new ArrayList<>();
+        List<String> prefixVars = new ArrayList<>();
+        for (int i = 0; i < relationalBody.size(); i++) {
+            RelationalAtom relAtom = relationalBody.get(i);
+            atomBytes.add(estimator.atomRows(relAtom, comparisonBody) * DatabaseCatalog.estimateRowSize(new long[relAtom.getTerms().size()]));
+            prefixBytes.add(i == 0 ? 0 : joinEstimates.prefixRows(i) * DatabaseCatalog.estimateRowSize(new long[prefixVars.size()]));
+            for (Term term : relAtom.getTerms()) {
+                if (term instanceof Variable && !prefixVars.contains(((Variable) term).getName()))
+                    prefixVars.add(((Variable) term).getName());
+            }
+        }
+
+        // Run the plan on parallel workers when the first relation spans several morsels and the serial plan would scan
+        // every atom without an index and join them with in-memory hash tables or nested loops: the workers share build
+        // sides held in memory whatever their size, and read no index, sorted input or spilled partition
+        boolean inMemoryJoins = true;
+        for (int i = 0; i < relationalBody.size(); i++) {
+            if (joinAccesses.get(i) != null || scanAccesses.get(i) != null || (i > 0 && atomBytes.get(i) > joinBudget))
+                inMemoryJoins = false;
+        }
+        if (parallelism > 1 && joinForest == null && inMemoryJoins
+                && estimator.relationRows(relationalBody.get(0).getName()) > MorselSource.DEFAULT_MORSEL_SIZE)
+            return buildParallelQueryPlan(relationalBody, comparisonBody, requiredVars, headRel, query, parallelism);
+
+        List<Operator> atomOperators = new ArrayList<>();
+        List<IndexScanOperator> joinIndexScans = new ArrayList<>();
+        for (int i = 0; i < relationalBody.size(); i++) {
+            RelationalAtom relAtom = relationalBody.get(i);
+            // Scan operation, through an index, or reading only the required columns when the relation has been imported as columnar
+            IndexAccess access = joinAccesses.get(i) != null ? joinAccesses.get(i) : scanAccesses.get(i);
+            Operator scan;
+            if (access != null)
+                scan = new IndexScanOperator(relAtom, access.getIndex(), access.getLow(), access.getHigh());
+            else if (dbc.hasColumnarRelation(relAtom.getName()))
+                scan = new ColumnarScanOperator(relAtom, requiredVars);
+            else
+                scan = new ScanOperator(relAtom);
+            joinIndexScans.add(joinAccesses.get(i) != null ? (IndexScanOperator) scan : null);
+            atomOperators.add(buildSelection(relAtom, scan, comparisonBody));
+        }
+        if (joinForest != null) {
+            SemiJoinReducer reducer = new SemiJoinReducer(atomOperators, joinForest);
+            for (int i = 0; i < atomOperators.size(); i++) atomOperators.set(i, reducer.getAtomOperator(i));
+        }
+        Operator rootOperator = buildJoinTree(relationalBody, comparisonBody, atomOperators, null, joinIndexScans, atomBytes,
+                prefixBytes, joinBudget);
+        return buildHead(rootOperator, query, headRel);
+    }
+
+    /**
+     * Merges the variables equated by comparisons between two variables of the same type into the first of them in
+     * the body, renaming them in the atoms and the head and dropping the equalities that become trivial.
+     *
+     * @param relationalBody the relational atoms, rewritten in place
+     * @param comparisonBody the comparison atoms, rewritten in place
+     * @param headTerms the terms of the head, with the sum aggregate as last term if there is one
+     * @return the renamed terms of the head
+     */
+    private static List<Term> mergeEqualVariables(List<RelationalAtom> relationalBody, List<ComparisonAtom> comparisonBody,
+                                                  List<Term> headTerms) {
+        Map<String, String> varTypes = variableTypes(relationalBody);
+        List<String> bodyVars = new ArrayList<>(varTypes.keySet());
+
+        // Every variable points to an earlier variable of its class, or to itself
+        Map<String, String> merged = new HashMap<>();
+        for (String var : bodyVars) merged.put(var, var);
+        for (ComparisonAtom compAtom : comparisonBody) {
+            if (compAtom.getOp() != ComparisonOperator.EQ || !(compAtom.getTerm1() instanceof Variable)
+                    || !(compAtom.getTerm2() instanceof Variable)) continue;
+            String root1 = findMerged(merged, ((Variable) compAtom.getTerm1()).getName());
+            String root2 = findMerged(merged, ((Variable) compAtom.getTerm2()).getName());
+            if (root1 == null || root2 == null || !varTypes.get(root1).equals(varTypes.get(root2))) continue;
+            if (bodyVars.indexOf(root1) < bodyVars.indexOf(root2)) merged.put(root2, root1);
+            else merged.put(root1, root2);
+        }
+
+        for (int i = 0; i < relationalBody.size(); i++) {
+            RelationalAtom relAtom = relationalBody.get(i);
+            relationalBody.set(i, new RelationalAtom(relAtom.getName(), renameTerms(relAtom.getTerms(), merged)));
+        }
+        List<ComparisonAtom> comparisons = new ArrayList<>();
+        for (ComparisonAtom compAtom : comparisonBody) {
+            List<Term> terms = renameTerms(Arrays.asList(compAtom.getTerm1(), compAtom.getTerm2()), merged);
+            boolean trivial = compAtom.getOp() == ComparisonOperator.EQ && terms.get(0) instanceof Variable
+                    && terms.get(1) instanceof Variable
+                    && ((Variable) terms.get(0)).getName().equals(((Variable) terms.get(1)).getName());
+            if (!trivial) comparisons.add(new ComparisonAtom(terms.get(0), terms.get(1), compAtom.getOp()));
+        }
+        comparisonBody.clear();
+        comparisonBody.addAll(comparisons);
+        return renameTerms(headTerms, merged);
+    }
+
+    /**
+     * Returns the types of the variables of the relational atoms, from the schemas of their relations.
+     *
+     * @param relationalBody the relational atoms
+     * @return the type ("int" or "string") of every variable, in the order in which the variables first occur
+     */
+    private static Map<String, String> variableTypes(List<RelationalAtom> relationalBody) {
+        DatabaseCatalog dbc = DatabaseCatalog.getInstance();
+        Map<String, String> varTypes = new LinkedHashMap<>();
+        for (RelationalAtom relAtom : relationalBody) {
+            List<String> schema = dbc.getSchema(relAtom.getName());
+            for (int i = 0; i < relAtom.getTerms().size(); i++) {
+                Term term = relAtom.getTerms().get(i);
+                if (term instanceof Variable) varTypes.putIfAbsent(((Variable) term).getName(), schema.get(i));
+            }
+        }
+        return varTypes;
+    }
+
+    /**
+     * Finds the variable a variable is merged into.
+     *
+     * @param merged the variable every variable points to
+     * @param var the variable
+     * @return the first variable of the class of the variable, or null if the variable is not in the body
+     */
+    private static String findMerged(Map<String, String> merged, String var) {
+        if (!merged.containsKey(var)) return null;
+        while (!merged.get(var).equals(var)) var = merged.get(var);
+        return var;
+    }
+
+    /**
+     * Renames the merged variables of a list of terms, including the factors of a sum aggregate.
+     *
+     * @param terms the terms
+     * @param merged the variable every variable points to
+     * @return the renamed terms
+     */
+    private static List<Term> renameTerms(List<Term> terms, Map<String, String> merged) {
+        List<Term> renamed = new ArrayList<>();
+        for (Term term : terms) {
+            String root = term instanceof Variable ? findMerged(merged, ((Variable) term).getName()) : null;
+            if (root != null) renamed.add(new Variable(root));
+            else if (term instanceof SumAggregate)
+                renamed.add(new SumAggregate(renameTerms(((SumAggregate) term).getProductTerms(), merged)));
+            else renamed.add(term);
+        }
+        return renamed;
+    }
+
+    /**
+     * Replaces the repeated occurrences of a variable in an atom by new variables equated to it, so that the
+     * equality of the columns is checked by the selection of the atom and no operator sees a variable twice in an atom.
+     *
+     * @param relationalBody the relational atoms, rewritten in place
+     * @param comparisonBody the comparison atoms, to which the equalities are added
+     * @param allVar the variable names in use
+     */
+    private static void separateRepeatedVariables(List<RelationalAtom> relationalBody, List<ComparisonAtom> comparisonBody,
+                                                  List<String> allVar) {
+        for (int i = 0; i < relationalBody.size(); i++) {
+            RelationalAtom relAtom = relationalBody.get(i);
+            List<Term> terms = new ArrayList<>(relAtom.getTerms());
+            List<String> atomVars = new ArrayList<>();
+            for (int j = 0; j < terms.size(); j++) {
+                if (!(terms.get(j) instanceof Variable)) continue;
+                String varName = ((Variable) terms.get(j)).getName();
+                if (!atomVars.contains(varName)) {
+                    atomVars.add(varName);
+                    continue;
+                }
+                String newVarName = generateNewVariable(allVar);
+                terms.set(j, new Variable(newVarName));
+                comparisonBody.add(new ComparisonAtom(new Variable(newVarName), new Variable(varName), ComparisonOperator.EQ));
+            }
+            relationalBody.set(i, new RelationalAtom(relAtom.getName(), terms));
+        }
+    }
+
+    /**
+     * Decides whether the atoms of a query are reduced by semi-joins before they are joined. In the "auto" mode, they are
+     * when the query is acyclic and the intermediate results of the pairwise joins are estimated to hold more tuples that
+     * do not extend to an output tuple than the atoms hold tuples, which bounds the cost of the reduction.
+     *
+     * @param relationalBody the relational atoms, in join order
+     * @param comparisonBody the comparison atoms
+     * @param estimator the estimator of relation and selection sizes
+     * @param hypergraph the hypergraph of the atoms
+     * @return the join forest of the atoms, or null if they are not reduced
+     */
+    private static int[] chooseSemiJoinReduction(List<RelationalAtom> relationalBody, List<ComparisonAtom> comparisonBody,
+                                                 CardinalityEstimator estimator, Hypergraph hypergraph) {
+        String mode = SemiJoinReducer.DEFAULT_MODE;
+        if (relationalBody.size() < 2 || mode.equals("never")) return null;
+        int[] joinForest = hypergraph.joinForest();
+        if (joinForest == null || mode.equals("always")) return joinForest;
+        JoinOrderOptimizer joinEstimates = new JoinOrderOptimizer(relationalBody, comparisonBody, estimator);
+        double outputRows = joinEstimates.prefixRows(relationalBody.size());
+        double danglingRows = 0;
+        for (int i = 2; i < relationalBody.size(); i++) danglingRows += Math.max(0, joinEstimates.prefixRows(i) - outputRows);
+        double inputRows = 0;
+        for (RelationalAtom relAtom : relationalBody) inputRows += estimator.atomRows(relAtom, comparisonBody);
+        return danglingRows > inputRows ? joinForest : null;
+    }
+
+    /**
+     * Reorders the atoms so that every atom but the first of each tree of a join forest follows a neighbour in the tree,
+     * keeping the given order where possible. Every prefix of a tree is then connected in the tree, so joining reduced
+     * atoms in that order builds no dangling tuple.
+     *
+     * @param relationalBody the relational atoms, reordered in place
+     * @param joinForest the index of the parent of every atom, or -1 for the roots
+     * @return the join forest of the reordered atoms
+     */
+    private static int[] orderAlongForest(List<RelationalAtom> relationalBody, int[] joinForest) {
+        int n = relationalBody.size();
+        List<Integer> order = new ArrayList<>();
+        boolean[] placed = new boolean[n];
+        while (order.size() < n) {
+            int next = -1;
+            for (int i = 0; i < n && next < 0; i++) {
+                if (placed[i]) continue;
+                boolean adjacent = joinForest[i] >= 0 && placed[joinForest[i]];
+                for (int j = 0; j < n && !adjacent; j++) adjacent = placed[j] && joinForest[j] == i;
+                if (adjacent) next = i;
+            }
+            // Start a new tree from the first remaining atom when no atom is adjacent to the placed ones
+            if (next < 0) {
+                next = 0;
+                while (placed[next]) next++;
+            }
+            placed[next] = true;
+            order.add(next);
+        }
+        List<RelationalAtom> atoms = new ArrayList<>(relationalBody);
+        int[] position = new int[n];
+        for (int k = 0; k < n; k++) {
+            relationalBody.set(k, atoms.get(order.get(k)));
+            position[order.get(k)] = k;
+        }
+        int[] reordered = new int[n];
+        for (int k = 0; k < n; k++) {
+            int parent = joinForest[order.get(k)];
+            reordered[k] = parent < 0 ? -1 : position[parent];
+        }
+        return reordered;
+    }
+
+    /**
+     * Adds the operator computing the head of the query above the join of its body.
+     *
+     * @param rootOperator the root operator of the join
+     * @param query the query
+     * @param headRel the head of the query, with the sum aggregate as last term if there is one
+     * @return the root operator of the query plan
+     */
+    private static Operator buildHead(Operator rootOperator, Query query, RelationalAtom headRel) {
+        // Project operation
+        if (query.getHead().getSumAggregate() != null) {
+            rootOperator = new SumOperator(rootOperator, headRel);
+        }
+        else {
+            rootOperator = new ProjectOperator(rootOperator, headRel);
+        }
+
+        return rootOperator;
+    }
+
+    /**
+     * Builds the scans of the relational atoms for the operators that join all atoms at once, with the comparisons
+     * local to every atom applied to its scan.
+     *
+     * @param relationalBody the relational atoms, in join order
+     * @param comparisonBody the comparison atoms
+     * @param requiredVars the variables needed above the scans
+     * @return the operators producing the selected tuples of the atoms
+     */
+    private static List<Operator> buildAtomScans(List<RelationalAtom> relationalBody, List<ComparisonAtom> comparisonBody,
+                                                 List<String> requiredVars) {
+        DatabaseCatalog dbc = DatabaseCatalog.getInstance();
+        List<Operator> atomOperators = new ArrayList<>();
+        for (RelationalAtom relAtom : relationalBody) {
+            Operator scan = dbc.hasColumnarRelation(relAtom.getName())
+                    ? new ColumnarScanOperator(relAtom, requiredVars) : new ScanOperator(relAtom);
+            atomOperators.add(buildSelection(relAtom, scan, comparisonBody));
+        }
+        return atomOperators;
+    }
+
+    /**
+     * Returns the comparisons that no single atom can evaluate, since their variables occur in different atoms.
+     *
+     * @param relationalBody the relational atoms
+     * @param comparisonBody the comparison atoms
+     * @return the comparisons spanning several atoms
+     */
+    private static List<ComparisonAtom> spanningComparisons(List<RelationalAtom> relationalBody, List<ComparisonAtom> comparisonBody) {
+        List<ComparisonAtom> spanning = new ArrayList<>();
+        for (ComparisonAtom compAtom : comparisonBody) {
+            boolean local = false;
+            for (RelationalAtom relAtom : relationalBody) local |= CardinalityEstimator.isLocal(compAtom, relAtom);
+            if (!local) spanning.add(compAtom);
+        }
+        return spanning;
+    }
+
+    /**
+     * Builds a morsel-driven parallel query plan. Every worker runs its own copy of the join tree over the morsels of
+     * the first relation; the other relations are read in parallel once, into build sides shared by all workers.
+     * The workers are aggregated by a ParallelSumOperator, or project every morsel before an ExchangeOperator gathers
+     * them below the final projection, which removes the duplicates found in different morsels.
+     *
+     * @param relationalBody the relational atoms, in join order
+     * @param comparisonBody the comparison atoms
+     * @param requiredVars the variables needed above the scans
+     * @param headRel the head of the query, with the sum aggregate as last term if there is one
+     * @param query the query
+     * @param parallelism the number of workers
+     * @return the root operator of the query plan
+     */
+    private static Operator buildParallelQueryPlan(List<RelationalAtom> relationalBody, List<ComparisonAtom> comparisonBody,
+                                                   List<String> requiredVars, RelationalAtom headRel, Query query, int parallelism) {
+        List<SharedBuild> sharedBuilds = new ArrayList<>();
+        sharedBuilds.add(null);
+        for (RelationalAtom relAtom : relationalBody.subList(1, relationalBody.size())) {
+            MorselSource source = new MorselSource(relAtom, requiredVars);
+            MorselScanOperator[] scans = new MorselScanOperator[parallelism];
+            Operator[] pipelines = new Operator[parallelism];
+            for (int w = 0; w < parallelism; w++) {
+                scans[w] = new MorselScanOperator(source);
+                pipelines[w] = buildSelection(relAtom, scans[w], comparisonBody);
+            }
+            sharedBuilds.add(new SharedBuild(source, scans, pipelines));
+        }
+
+        MorselSource source = new MorselSource(relationalBody.get(0), requiredVars);
+        MorselScanOperator[] scans = new MorselScanOperator[parallelism];
+        Operator[] pipelines = new Operator[parallelism];
+        for (int w = 0; w < parallelism; w++) {
+            scans[w] = new MorselScanOperator(source);
+            List<Operator> atomOperators = new ArrayList<>();
+            atomOperators.add(buildSelection(relationalBody.get(0), scans[w], comparisonBody));
+            pipelines[w] = buildJoinTree(relationalBody, comparisonBody, atomOperators, sharedBuilds, null, null, null, 0);
+        }
+        List<SharedBuild> builds = sharedBuilds.subList(1, sharedBuilds.size());
+        if (query.getHead().getSumAggregate() != null)
+            return new ParallelSumOperator(source, scans, pipelines, builds, headRel);
+        for (int w = 0; w < parallelism; w++) pipelines[w] = new ProjectOperator(pipelines[w], headRel);
+        return new ProjectOperator(new ExchangeOperator(source, scans, pipelines, builds), headRel);
+    }
+
+    /**
+     * Applies to the scan of an atom the comparisons whose variables all occur in the atom.
+     *
+     * @param relAtom the relational atom
+     * @param scan the scan of the atom
+     * @param comparisonBody the comparison atoms of the query
+     * @return the select operator over the scan
+     */
+    private static Operator buildSelection(RelationalAtom relAtom, Operator scan, List<ComparisonAtom> comparisonBody) {
+        List<String> subtreeVars = new ArrayList<>();
+        for (Term term : relAtom.getTerms()) {
+            if (term instanceof Variable) subtreeVars.add(((Variable) term).getName());
+        }
+        List<ComparisonAtom> selectComparisonsInvolved = new ArrayList<>();
+        for (ComparisonAtom compAtom : comparisonBody)
+            if (checkComparisonInvolved(compAtom, subtreeVars))
+                selectComparisonsInvolved.add(compAtom);
+        return new SelectOperator(scan, selectComparisonsInvolved);
+    }
+
+    /**
+     * Builds the left-deep join tree of the relational atoms.
+     *
+     * @param relationalBody the relational atoms, in join order
+     * @param comparisonBody the comparison atoms
+     * @param atomOperators the operators producing the selected tuples of the atoms, at least for the first atom
+     * @param sharedBuilds the build sides shared by parallel workers for the atoms after the first one,
+     *                     or null to join the operators of atomOperators
+     * @param joinIndexScans the index scans below the operators of the atoms joined by index lookups, null for the
+     *                       other atoms, or null if no atom is joined by index lookups
+     * @param atomBytes the estimated memory taken by the selected tuples of every atom, or null when sharedBuilds is set
+     * @param prefixBytes the estimated memory taken by the join of the atoms before every atom, or null when sharedBuilds
+     *                    is set
+     * @param joinBudget the memory a join hash table may take before the planner prefers joins that spill, in bytes,
+     *                   unused when sharedBuilds is set
+     * @return the root operator of the join tree
+     */
+    private static Operator buildJoinTree(List<RelationalAtom> relationalBody, List<ComparisonAtom> comparisonBody,
+                                          List<Operator> atomOperators, List<SharedBuild> sharedBuilds,
+                                          List<IndexScanOperator> joinIndexScans, List<Double> atomBytes,
+                                          List<Double> prefixBytes, long joinBudget) {
         Operator rootOperator = null;
         List<String> prevMergedVars = new ArrayList<>();
         // Iterate through the relational atoms to construct the query plan
-        for (RelationalAtom relAtom : relationalBody) {
+        for (int i = 0; i < relationalBody.size(); i++) {
             List<String> subtreeVars = new ArrayList<>();
             // Get all variable names used in the current relational atom
-            for (Term term : relAtom.getTerms()) {
+            for (Term term : relationalBody.get(i).getTerms()) {
                 if (!(term instanceof Variable)) continue;
                 subtreeVars.add(((Variable) term).getName());
             }
 
-            // Scan operation
-            Operator subtree = new ScanOperator(relAtom);
-
-            // Select operation
-            List<ComparisonAtom> selectComparisonsInvolved = new ArrayList<>();
-            for (ComparisonAtom compAtom : comparisonBody)
-                if (checkComparisonInvolved(compAtom, subtreeVars))
-                    selectComparisonsInvolved.add(compAtom);
-            subtree = new SelectOperator(subtree, selectComparisonsInvolved);
-
             // Join operation
             List<String> mergedTreeVars = new ArrayList<>();
             mergedTreeVars.addAll(prevMergedVars);
             mergedTreeVars.addAll(subtreeVars);
             if (rootOperator == null) {
-                rootOperator = subtree;
+                rootOperator = atomOperators.get(0);
             } else {
                 List<ComparisonAtom> joinComparisonsInvolved = new ArrayList<>();
                 for (ComparisonAtom compAtom : comparisonBody) {
@@ -153,19 +645,47 @@ public class Minibase {
                         joinComparisonsInvolved.add(compAtom);
                     }
                 }
-                rootOperator = new JoinOperator(rootOperator, subtree, joinComparisonsInvolved);
+                // Use a hash join on the shared variables, or fall back to a block nested loop join for cross products and theta joins
+                boolean sharesVariables = false;
+                for (String var : subtreeVars) {
+                    if (prevMergedVars.contains(var)) {
+                        sharesVariables = true;
+                        break;
+                    }
+                }
+                if (joinIndexScans != null && joinIndexScans.get(i) != null) {
+                    rootOperator = new IndexNestedLoopJoinOperator(rootOperator, atomOperators.get(i), joinIndexScans.get(i),
+                            joinComparisonsInvolved);
+                } else if (sharedBuilds != null) {
+                    SharedBuild build = sharedBuilds.get(i);
+                    if (sharesVariables)
+                        rootOperator = new HashJoinOperator(rootOperator, build, joinComparisonsInvolved);
+                    else
+                        rootOperator = new BlockNestedLoopJoinOperator(rootOperator, build, joinComparisonsInvolved);
+                } else if (sharesVariables) {
+                    // Merge the inputs when both are already sorted on the shared variables. When the hash table would not
+                    // fit in memory, sort the inputs that are not sorted yet if one of them already is, or if both are too
+                    // large to keep either in memory, and otherwise partition them to disk
+                    List<String> keyVars = new ArrayList<>();
+                    for (String var : rootOperator.getVarsName()) {
+                        if (var != null && atomOperators.get(i).getVarsName().contains(var)) keyVars.add(var);
+                    }
+                    boolean leftSorted = SortMergeJoinOperator.isSortedOn(rootOperator, keyVars);
+                    boolean rightSorted = SortMergeJoinOperator.isSortedOn(atomOperators.get(i), keyVars);
+                    boolean buildTooLarge = atomBytes.get(i) > joinBudget;
+                    if ((leftSorted && rightSorted) || (buildTooLarge && (leftSorted || rightSorted
+                            || prefixBytes.get(i) > joinBudget)))
+                        rootOperator = new SortMergeJoinOperator(rootOperator, atomOperators.get(i), joinComparisonsInvolved);
+                    else if (buildTooLarge)
+                        rootOperator = new HybridHashJoinOperator(rootOperator, atomOperators.get(i), joinComparisonsInvolved,
+                                joinBudget);
+                    else
+                        rootOperator = new HashJoinOperator(rootOperator, atomOperators.get(i), joinComparisonsInvolved);
+                } else
+                    rootOperator = new BlockNestedLoopJoinOperator(rootOperator, atomOperators.get(i), joinComparisonsInvolved);
             }
             prevMergedVars = mergedTreeVars;
         }
-        // Project operation
-        assert rootOperator != null;
-        if (query.getHead().getSumAggregate() != null) {
-            rootOperator = new SumOperator(rootOperator, headRel);
-        }
-        else {
-            rootOperator = new ProjectOperator(rootOperator, headRel);
-        }
-
         return rootOperator;
     }
 
@@ -22,6 +22,24 @@ public enum ComparisonOperator {
         return text;
     }
 
+    /**
+     * Returns the operator obtained by swapping the operands, so that "a op b" is equivalent to "b op.reverse() a".
+     */
+    public ComparisonOperator reverse() {
+        switch (this) {
+            case GT:
+                return LT;
+            case GEQ:
+                return LEQ;
+            case LT:
+                return GT;
+            case LEQ:
+                return GEQ;
+            default:
+                return this;
+        }
+    }
+
     public static ComparisonOperator fromString(String s) throws NoSuchElementException {
         return Arrays.stream(values())
                 .filter(op -> op.text.equalsIgnoreCase(s))
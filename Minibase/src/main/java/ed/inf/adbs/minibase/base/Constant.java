@@ -1,4 +1,7 @@
 package ed.inf.adbs.minibase.base;
 
-public class Constant extends Term {
+/**
+ * Constants are compared by value: numbers numerically, strings lexicographically, and numbers before strings.
+ */
+public abstract class Constant extends Term implements Comparable<Constant> {
 }
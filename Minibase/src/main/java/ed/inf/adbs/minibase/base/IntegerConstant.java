@@ -1,18 +1,52 @@
 package ed.inf.adbs.minibase.base;
 
 public class IntegerConstant extends Constant {
-    private Integer value;
+    // Small values are shared, since they are the most frequent in relations and keys
+    private static final int CACHE_LOW = -128;
+    private static final int CACHE_HIGH = 1023;
+    private static final IntegerConstant[] CACHE = new IntegerConstant[CACHE_HIGH - CACHE_LOW + 1];
 
-    public IntegerConstant(Integer value) {
+    static {
+        for (int i = 0; i < CACHE.length; i++) CACHE[i] = new IntegerConstant(i + CACHE_LOW);
+    }
+
+    private final int value;
+
+    public IntegerConstant(int value) {
         this.value = value;
     }
 
-    public Integer getValue() {
+    /**
+     * Returns an IntegerConstant with the given value, shared for small values.
+     */
+    public static IntegerConstant valueOf(int value) {
+        if (value >= CACHE_LOW && value <= CACHE_HIGH) return CACHE[value - CACHE_LOW];
+        return new IntegerConstant(value);
+    }
+
+    public int getValue() {
         return value;
     }
 
+    @Override
+    public int compareTo(Constant o) {
+        if (o instanceof IntegerConstant) return Integer.compare(value, ((IntegerConstant) o).value);
+        if (o instanceof LongConstant) return Long.compare(value, ((LongConstant) o).getValue());
+        return -1;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof IntegerConstant && value == ((IntegerConstant) o).value;
+    }
+
+    @Override
+    public int hashCode() {
+        return Integer.hashCode(value);
+    }
+
     @Override
     public String toString() {
-        return value.toString();
+        return Integer.toString(value);
     }
 }
@@ -0,0 +1,35 @@
+package ed.inf.adbs.minibase.base;
+
+public class LongConstant extends Constant {
+    private final long value;
+
+    public LongConstant(long value) {
+        this.value = value;
+    }
+
+    public long getValue() {
+        return value;
+    }
+
+    @Override
+    public int compareTo(Constant o) {
+        if (o instanceof LongConstant) return Long.compare(value, ((LongConstant) o).value);
+        if (o instanceof IntegerConstant) return Long.compare(value, ((IntegerConstant) o).getValue());
+        return -1;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof LongConstant && value == ((LongConstant) o).value;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(value);
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(value);
+    }
+}
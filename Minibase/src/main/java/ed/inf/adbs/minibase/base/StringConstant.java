@@ -1,18 +1,53 @@
 package ed.inf.adbs.minibase.base;
 
+import java.util.concurrent.ConcurrentHashMap;
+
 public class StringConstant extends Constant {
-    private String value;
+    // Interned constants, so that repeated values of a relation share one object; bounded to limit memory
+    private static final int INTERN_LIMIT = 1 << 20;
+    private static final ConcurrentHashMap<String, StringConstant> INTERNED = new ConcurrentHashMap<>();
+
+    private final String value;
 
     public StringConstant(String value) {
         this.value = value;
     }
 
+    /**
+     * Returns the interned StringConstant with the given value, or a new one once the intern table is full.
+     */
+    public static StringConstant valueOf(String value) {
+        StringConstant constant = INTERNED.get(value);
+        if (constant != null) return constant;
+        constant = new StringConstant(value);
+        if (INTERNED.size() >= INTERN_LIMIT) return constant;
+        StringConstant previous = INTERNED.putIfAbsent(value, constant);
+        return previous != null ? previous : constant;
+    }
+
     public String getValue() {
         return value;
     }
 
+    @Override
+    public int compareTo(Constant o) {
+        if (o instanceof StringConstant) return value.compareTo(((StringConstant) o).value);
+        return 1;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        return o instanceof StringConstant && value.equals(((StringConstant) o).value);
+    }
+
+    @Override
+    public int hashCode() {
+        return value.hashCode();
+    }
+
     @Override
     public String toString() {
         return "'" + value + "'";
     }
-}
\ No newline at end of file
+}
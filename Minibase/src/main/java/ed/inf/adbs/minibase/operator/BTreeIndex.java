@@ -0,0 +1,169 @@
+/**
+ * The BTreeIndex class is a persistent B+tree index over an integer column of a relation file, for equality and range
+ * lookups. The file is made of fixed-size pages after a header page. Leaf pages hold entries sorted by key and then by
+ * row offset, and are chained in key order; internal pages hold the smallest key of each of their children.
+ * The tree is bulk-loaded bottom-up from the sorted entries, so every page but the last of each level is full.
+ */
+
+package ed.inf.adbs.minibase.operator;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class BTreeIndex extends RelationIndex {
+    public static final String KIND = "btree";
+
+    private static final int PAGE_SIZE = 4096;
+    private static final int PAGE_HEADER_SIZE = 16;
+    private static final byte LEAF_PAGE = 0;
+    private static final byte INTERNAL_PAGE = 1;
+    private static final int LEAF_CAPACITY = (PAGE_SIZE - PAGE_HEADER_SIZE) / 16;
+    private static final int INTERNAL_CAPACITY = (PAGE_SIZE - PAGE_HEADER_SIZE) / 12;
+
+    private final int rootPage;
+
+    /**
+     * Opens a B+tree index file.
+     *
+     * @param path the path of the index file
+     * @throws IOException if the file cannot be read or is not a B+tree index
+     */
+    public BTreeIndex(String path) throws IOException {
+        super(path, KIND);
+        this.rootPage = this.buffer.getInt(HEADER_SIZE);
+    }
+
+    /**
+     * Writes the pages of a B+tree index, after the header.
+     *
+     * @param out the stream of the index file
+     * @param keys the key of every row
+     * @param offsets the offset of every row, increasing
+     * @param count the number of rows
+     * @throws IOException if the file cannot be written
+     */
+    static void writeEntries(DataOutputStream out, long[] keys, long[] offsets, int count) throws IOException {
+        // A stable sort by key keeps the entries of equal keys in file order
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Long.compare(keys[a], keys[b]));
+
+        // Compute the pages of every level, from the leaves to the root, before writing them in that order
+        int leafCount = Math.max(1, (count + LEAF_CAPACITY - 1) / LEAF_CAPACITY);
+        List<long[]> levelKeys = new ArrayList<>();
+        long[] childKeys = new long[leafCount];
+        for (int leaf = 0; leaf < leafCount; leaf++) childKeys[leaf] = count == 0 ? 0 : keys[order[leaf * LEAF_CAPACITY]];
+        int firstChildPage = 1;
+        int nextPage = 1 + leafCount;
+        int rootPage = 1;
+        List<int[]> levelLayout = new ArrayList<>();
+        while (childKeys.length > 1) {
+            int nodes = (childKeys.length + INTERNAL_CAPACITY - 1) / INTERNAL_CAPACITY;
+            levelKeys.add(childKeys);
+            levelLayout.add(new int[]{firstChildPage, nextPage});
+            long[] nodeKeys = new long[nodes];
+            for (int node = 0; node < nodes; node++) nodeKeys[node] = childKeys[node * INTERNAL_CAPACITY];
+            firstChildPage = nextPage;
+            rootPage = nextPage + nodes - 1;
+            nextPage += nodes;
+            childKeys = nodeKeys;
+        }
+
+        out.writeInt(rootPage);
+        out.write(new byte[PAGE_SIZE - HEADER_SIZE - 4]);
+        byte[] padding = new byte[PAGE_SIZE];
+        for (int leaf = 0; leaf < leafCount; leaf++) {
+            int start = leaf * LEAF_CAPACITY;
+            int entries = Math.min(LEAF_CAPACITY, count - start);
+            out.writeByte(LEAF_PAGE);
+            out.write(new byte[3]);
+            out.writeInt(entries);
+            out.writeInt(leaf + 1 < leafCount ? leaf + 2 : -1);
+            out.writeInt(0);
+            for (int i = start; i < start + entries; i++) {
+                out.writeLong(keys[order[i]]);
+                out.writeLong(offsets[order[i]]);
+            }
+            out.write(padding, 0, PAGE_SIZE - PAGE_HEADER_SIZE - 16 * entries);
+        }
+        for (int level = 0; level < levelKeys.size(); level++) {
+            long[] children = levelKeys.get(level);
+            int childPage = levelLayout.get(level)[0];
+            for (int start = 0; start < children.length; start += INTERNAL_CAPACITY) {
+                int entries = Math.min(INTERNAL_CAPACITY, children.length - start);
+                out.writeByte(INTERNAL_PAGE);
+                out.write(new byte[3]);
+                out.writeInt(entries);
+                out.writeLong(0);
+                for (int i = 0; i < INTERNAL_CAPACITY; i++) out.writeLong(i < entries ? children[start + i] : 0);
+                for (int i = 0; i < INTERNAL_CAPACITY; i++) out.writeInt(i < entries ? childPage + start + i : 0);
+                out.write(padding, 0, PAGE_SIZE - PAGE_HEADER_SIZE - 12 * INTERNAL_CAPACITY);
+            }
+        }
+    }
+
+    /**
+     * Returns true, since a B+tree index supports range lookups.
+     *
+     * @return true
+     */
+    @Override
+    public boolean supportsRanges() {
+        return true;
+    }
+
+    /**
+     * Returns the offsets of the rows whose key lies in a range. The tree is descended to the first leaf that may
+     * hold the smallest key, and the chained leaves are then read until a key exceeds the range.
+     *
+     * @param low the smallest key, inclusive
+     * @param high the largest key, inclusive
+     * @return the offsets of the matching rows, in increasing order of key and offset
+     */
+    @Override
+    public long[] lookup(long low, long high) {
+        long[] offsets = new long[16];
+        int count = 0;
+        if (low > high || this.entryCount == 0) return new long[0];
+        int page = this.rootPage;
+        while (this.buffer.get(position(page)) == INTERNAL_PAGE) {
+            int base = position(page);
+            int entries = this.buffer.getInt(base + 4);
+            // Find the last child whose smallest key is below low, since equal keys may start in that child
+            int lo = 0;
+            int hi = entries - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (this.buffer.getLong(base + PAGE_HEADER_SIZE + 8 * mid) < low) lo = mid;
+                else hi = mid - 1;
+            }
+            page = this.buffer.getInt(base + PAGE_HEADER_SIZE + 8 * INTERNAL_CAPACITY + 4 * lo);
+        }
+        while (page > 0) {
+            int base = position(page);
+            int entries = this.buffer.getInt(base + 4);
+            for (int i = 0; i < entries; i++) {
+                long key = this.buffer.getLong(base + PAGE_HEADER_SIZE + 16 * i);
+                if (key < low) continue;
+                if (key > high) return Arrays.copyOf(offsets, count);
+                if (count == offsets.length) offsets = Arrays.copyOf(offsets, 2 * count);
+                offsets[count++] = this.buffer.getLong(base + PAGE_HEADER_SIZE + 16 * i + 8);
+            }
+            page = this.buffer.getInt(base + 8);
+        }
+        return Arrays.copyOf(offsets, count);
+    }
+
+    /**
+     * Returns the position of a page in the file.
+     *
+     * @param page the page number
+     * @return the offset of the first byte of the page
+     */
+    private static int position(int page) {
+        return page * PAGE_SIZE;
+    }
+}
@@ -0,0 +1,200 @@
+/**
+ * The Batch class holds a block of rows in column vectors, with a selection vector listing the rows that are part of
+ * the result. Operators exchange batches through Operator.getNextBatch, so the per-tuple virtual calls between
+ * operators are paid once per batch and every operator processes its rows in a tight loop over primitive arrays.
+ * A filter does not move rows: it only shrinks the selection vector, and the next operator reads the selected rows.
+ * A batch returned by an operator is valid until the next call on that operator. Its consumer may shrink its
+ * selection vector but must not modify its columns.
+ */
+
+package ed.inf.adbs.minibase.operator;
+
+public class Batch {
+    // The default number of rows per batch, configurable with -Dminibase.batch.size
+    public static final int DEFAULT_CAPACITY = Integer.getInteger("minibase.batch.size", 1024);
+
+    private final long[][] columns;
+    private final int[] selection;
+    private int size = 0;
+    private int count = 0;
+    private boolean allSelected = true;
+
+    /**
+     * Creates an empty batch with the default capacity.
+     *
+     * @param columnCount the number of columns
+     */
+    public Batch(int columnCount) {
+        this(columnCount, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty batch.
+     *
+     * @param columnCount the number of columns
+     * @param capacity the maximum number of rows
+     */
+    public Batch(int columnCount, int capacity) {
+        this.columns = new long[columnCount][capacity];
+        this.selection = new int[capacity];
+    }
+
+    /**
+     * Returns the number of columns of the batch.
+     *
+     * @return the column count
+     */
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    /**
+     * Returns the maximum number of rows of the batch.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return selection.length;
+    }
+
+    /**
+     * Returns the vector of a column, holding one slot per row.
+     *
+     * @param column the index of the column
+     * @return the column vector
+     */
+    public long[] getColumn(int column) {
+        return columns[column];
+    }
+
+    /**
+     * Returns the number of rows stored in the batch, selected or not.
+     *
+     * @return the number of rows
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Sets the number of rows stored in the batch, after its column vectors have been filled, and selects them all.
+     *
+     * @param size the number of rows
+     */
+    public void setSize(int size) {
+        this.size = size;
+        this.count = size;
+        this.allSelected = true;
+    }
+
+    /**
+     * Returns the number of selected rows.
+     *
+     * @return the number of rows that are part of the result
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns whether every stored row is selected, in which case the selection vector is not used.
+     *
+     * @return true if the i-th selected row is row i
+     */
+    public boolean isAllSelected() {
+        return allSelected;
+    }
+
+    /**
+     * Returns the selection vector. Its first getCount entries are the selected rows in increasing order,
+     * unless every row is selected.
+     *
+     * @return the selection vector
+     */
+    public int[] getSelection() {
+        return selection;
+    }
+
+    /**
+     * Returns the row index of a selected row.
+     *
+     * @param i the position of the row among the selected rows
+     * @return the index of the row in the column vectors
+     */
+    public int rowAt(int i) {
+        return allSelected ? i : selection[i];
+    }
+
+    /**
+     * Keeps only the rows written to the first entries of the selection vector.
+     * Filters write the rows they keep in place: the i-th kept row is written after the i-th selected row was read.
+     *
+     * @param count the number of rows kept
+     */
+    public void select(int count) {
+        this.count = count;
+        this.allSelected = false;
+    }
+
+    /**
+     * Removes all rows from the batch.
+     */
+    public void clear() {
+        setSize(0);
+    }
+
+    /**
+     * Returns whether the batch cannot hold more rows.
+     *
+     * @return true if the batch is full
+     */
+    public boolean isFull() {
+        return size == selection.length;
+    }
+
+    /**
+     * Appends a row to a batch whose rows are all selected.
+     *
+     * @param values the slots of the row
+     */
+    public void addRow(long[] values) {
+        for (int c = 0; c < columns.length; c++) columns[c][size] = values[c];
+        setSize(size + 1);
+    }
+
+    /**
+     * Appends the join of two rows to a batch whose rows are all selected: every slot of the left row,
+     * followed by the given columns of the right row.
+     *
+     * @param left the slots of the left row
+     * @param right the slots of the right row
+     * @param rightColumns the indices of the right columns to copy
+     */
+    public void addJoinedRow(long[] left, long[] right, int[] rightColumns) {
+        for (int c = 0; c < left.length; c++) columns[c][size] = left[c];
+        for (int c = 0; c < rightColumns.length; c++) columns[left.length + c][size] = right[rightColumns[c]];
+        setSize(size + 1);
+    }
+
+    /**
+     * Copies the slots of a row into an array.
+     *
+     * @param row the index of the row in the column vectors
+     * @param target the array receiving one slot per column
+     */
+    public void copyRow(int row, long[] target) {
+        for (int c = 0; c < columns.length; c++) target[c] = columns[c][row];
+    }
+
+    /**
+     * Returns the slots of a row in a new array.
+     *
+     * @param row the index of the row in the column vectors
+     * @return the slots of the row
+     */
+    public long[] getRow(int row) {
+        long[] values = new long[columns.length];
+        copyRow(row, values);
+        return values;
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * The BlockNestedLoopJoinOperator class represents a nested loop join that reads each child only once.
+ * The right (inner) child is buffered in memory on the first call, and the left (outer) child is consumed
+ * in blocks of a configurable number of tuples. Every inner tuple is compared against a whole block of outer
+ * tuples before moving on, so arbitrary join conditions such as x < u no longer rescan the inner relation.
+ * In a parallel plan, the inner tuples are taken from a SharedBuild read once for all workers.
+ * It inherits the JoinOperator class, which computes the output variables and the join conditions.
+ */
+
+package ed.inf.adbs.minibase.operator;
+
+import ed.inf.adbs.minibase.base.ComparisonAtom;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BlockNestedLoopJoinOperator extends JoinOperator {
+    // The default number of outer tuples per block, configurable with -Dminibase.join.blockSize
+    public static final int DEFAULT_BLOCK_SIZE = Integer.getInteger("minibase.join.blockSize", 1024);
+
+    private final int blockSize;
+    private List<Tuple> innerTuples = null;
+    private final List<Tuple> outerBlock = new ArrayList<>();
+    private int innerIndex = 0;
+    private int blockIndex = 0;
+    private final SharedBuild sharedBuild;
+
+    /**
+     * Constructs a BlockNestedLoopJoinOperator object with the default block size.
+     *
+     * @param leftChildOperator the left (outer) child operator
+     * @param rightChildOperator the right (inner) child operator
+     * @param comparisonAtoms the list of comparison atoms for the join condition
+     */
+    public BlockNestedLoopJoinOperator(Operator leftChildOperator, Operator rightChildOperator, List<ComparisonAtom> comparisonAtoms) {
+        this(leftChildOperator, rightChildOperator, comparisonAtoms, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Constructs a BlockNestedLoopJoinOperator object.
+     *
+     * @param leftChildOperator the left (outer) child operator
+     * @param rightChildOperator the right (inner) child operator
+     * @param comparisonAtoms the list of comparison atoms for the join condition
+     * @param blockSize the number of outer tuples held in memory at a time
+     */
+    public BlockNestedLoopJoinOperator(Operator leftChildOperator, Operator rightChildOperator, List<ComparisonAtom> comparisonAtoms, int blockSize) {
+        this(leftChildOperator, rightChildOperator, comparisonAtoms, blockSize, null);
+    }
+
+    /**
+     * Constructs a BlockNestedLoopJoinOperator object whose inner tuples come from a build side shared by parallel workers.
+     *
+     * @param leftChildOperator the left (outer) child operator
+     * @param sharedBuild the shared build side
+     * @param comparisonAtoms the list of comparison atoms for the join condition
+     */
+    public BlockNestedLoopJoinOperator(Operator leftChildOperator, SharedBuild sharedBuild, List<ComparisonAtom> comparisonAtoms) {
+        this(leftChildOperator, sharedBuild.getTemplate(), comparisonAtoms, DEFAULT_BLOCK_SIZE, sharedBuild);
+    }
+
+    private BlockNestedLoopJoinOperator(Operator leftChildOperator, Operator rightChildOperator, List<ComparisonAtom> comparisonAtoms,
+                                        int blockSize, SharedBuild sharedBuild) {
+        super(leftChildOperator, rightChildOperator, comparisonAtoms);
+        this.sharedBuild = sharedBuild;
+        if (blockSize < 1) throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Resets the outer child operator and the current block. The buffered inner tuples are kept,
+     * since the inner child produces the same tuples after a reset.
+     */
+    @Override
+    public void reset() {
+        this.leftChildOperator.reset();
+        this.outerBlock.clear();
+        this.innerIndex = 0;
+        this.blockIndex = 0;
+    }
+
+    /**
+     * Returns the next tuple produced by joining the current outer block with the buffered inner tuples.
+     *
+     * @return the next joined tuple, or null if there are no more tuples
+     */
+    @Override
+    public Tuple getNextTuple() {
+        if (this.innerTuples == null) bufferInner();
+        if (this.innerTuples.isEmpty()) return null;
+
+        while (true) {
+            if (this.outerBlock.isEmpty() || this.innerIndex >= this.innerTuples.size()) {
+                if (!loadOuterBlock()) return null;
+            }
+            while (this.innerIndex < this.innerTuples.size()) {
+                Tuple innerTuple = this.innerTuples.get(this.innerIndex);
+                while (this.blockIndex < this.outerBlock.size()) {
+                    Tuple outerTuple = this.outerBlock.get(this.blockIndex++);
+                    if (satisfiesJoinCondition(outerTuple, innerTuple)) return joinTuples(outerTuple, innerTuple);
+                }
+                this.blockIndex = 0;
+                this.innerIndex++;
+            }
+        }
+    }
+
+    /**
+     * Reads every tuple of the inner child operator into memory, or wraps the rows of the shared build side.
+     */
+    private void bufferInner() {
+        this.innerTuples = new ArrayList<>();
+        if (this.sharedBuild != null) {
+            for (long[] row : this.sharedBuild.getRows()) this.innerTuples.add(new Tuple(row));
+            return;
+        }
+        Tuple tuple = this.rightChildOperator.getNextTuple();
+        while (tuple != null) {
+            this.innerTuples.add(tuple);
+            tuple = this.rightChildOperator.getNextTuple();
+        }
+    }
+
+    /**
+     * Replaces the current block with up to blockSize tuples from the outer child operator.
+     *
+     * @return true if at least one outer tuple was read, false if the outer child is exhausted
+     */
+    private boolean loadOuterBlock() {
+        this.outerBlock.clear();
+        this.innerIndex = 0;
+        this.blockIndex = 0;
+        while (this.outerBlock.size() < this.blockSize) {
+            Tuple tuple = this.leftChildOperator.getNextTuple();
+            if (tuple == null) break;
+            this.outerBlock.add(tuple);
+        }
+        return !this.outerBlock.isEmpty();
+    }
+}
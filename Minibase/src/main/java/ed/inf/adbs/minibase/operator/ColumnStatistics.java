@@ -0,0 +1,146 @@
+/**
+ * The ColumnStatistics class holds the statistics of one column of a relation: the number of distinct values,
+ * the smallest and largest values, and the bounds of an equi-depth histogram, where consecutive bounds delimit
+ * buckets holding roughly the same number of rows.
+ */
+
+package ed.inf.adbs.minibase.operator;
+
+import ed.inf.adbs.minibase.base.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ColumnStatistics {
+    private final long distinctValues;
+    private final Constant min;
+    private final Constant max;
+    private final List<Constant> histogram;
+
+    /**
+     * Constructs the statistics of a column.
+     *
+     * @param distinctValues the number of distinct values
+     * @param min the smallest value, or null for an empty relation
+     * @param max the largest value, or null for an empty relation
+     * @param histogram the sorted bounds of the equi-depth histogram, including min and max
+     */
+    public ColumnStatistics(long distinctValues, Constant min, Constant max, List<Constant> histogram) {
+        this.distinctValues = distinctValues;
+        this.min = min;
+        this.max = max;
+        this.histogram = histogram;
+    }
+
+    /**
+     * Computes the statistics of a column from its distinct count and a sorted sample of its values.
+     *
+     * @param distinctValues the number of distinct values of the column
+     * @param sortedSample the sampled values of the column, in increasing order
+     * @param buckets the number of histogram buckets
+     * @return the statistics of the column
+     */
+    public static ColumnStatistics fromSortedSample(long distinctValues, List<Constant> sortedSample, int buckets) {
+        if (sortedSample.isEmpty()) return new ColumnStatistics(distinctValues, null, null, new ArrayList<>());
+        List<Constant> histogram = new ArrayList<>();
+        for (int i = 0; i <= buckets; i++) {
+            histogram.add(sortedSample.get((int) ((long) i * (sortedSample.size() - 1) / buckets)));
+        }
+        return new ColumnStatistics(distinctValues, sortedSample.get(0), sortedSample.get(sortedSample.size() - 1), histogram);
+    }
+
+    /**
+     * Returns the number of distinct values of the column.
+     *
+     * @return the distinct count
+     */
+    public long getDistinctValues() {
+        return distinctValues;
+    }
+
+    /**
+     * Returns the smallest value of the column.
+     *
+     * @return the smallest value, or null for an empty relation
+     */
+    public Constant getMin() {
+        return min;
+    }
+
+    /**
+     * Returns the largest value of the column.
+     *
+     * @return the largest value, or null for an empty relation
+     */
+    public Constant getMax() {
+        return max;
+    }
+
+    /**
+     * Returns the bounds of the equi-depth histogram of the column.
+     *
+     * @return the sorted bucket bounds, including the smallest and largest values
+     */
+    public List<Constant> getHistogram() {
+        return histogram;
+    }
+
+    /**
+     * Estimates the fraction of rows whose value v satisfies "v op constant".
+     *
+     * @param op the comparison operator
+     * @param constant the constant compared with the column
+     * @return the estimated selectivity, between 0 and 1, or -1 if the constant has a different type from the column
+     */
+    public double selectivity(ComparisonOperator op, Constant constant) {
+        if (min == null) return 0;
+        if (min.getClass() != constant.getClass()) return -1;
+        double equal = constant.compareTo(min) < 0 || constant.compareTo(max) > 0
+                ? 0 : 1.0 / Math.max(1, distinctValues);
+        double below = fractionBelow(constant);
+        double selectivity;
+        switch (op) {
+            case EQ:
+                selectivity = equal;
+                break;
+            case NEQ:
+                selectivity = 1 - equal;
+                break;
+            case LT:
+                selectivity = below;
+                break;
+            case LEQ:
+                selectivity = below + equal;
+                break;
+            case GT:
+                selectivity = 1 - below - equal;
+                break;
+            default:
+                selectivity = 1 - below;
+                break;
+        }
+        return Math.max(0, Math.min(1, selectivity));
+    }
+
+    /**
+     * Estimates the fraction of rows whose value is smaller than a constant, interpolating linearly
+     * inside the histogram bucket of the constant for integer columns.
+     *
+     * @param constant the constant
+     * @return the estimated fraction of rows, between 0 and 1
+     */
+    private double fractionBelow(Constant constant) {
+        int buckets = histogram.size() - 1;
+        if (buckets < 1 || constant.compareTo(histogram.get(0)) <= 0) return 0;
+        if (constant.compareTo(histogram.get(buckets)) > 0) return 1;
+        int bucket = 0;
+        while (bucket < buckets - 1 && constant.compareTo(histogram.get(bucket + 1)) > 0) bucket++;
+        double position = 0.5;
+        if (constant instanceof IntegerConstant) {
+            double low = ((IntegerConstant) histogram.get(bucket)).getValue();
+            double high = ((IntegerConstant) histogram.get(bucket + 1)).getValue();
+            position = high > low ? (((IntegerConstant) constant).getValue() - low) / (high - low) : 0;
+        }
+        return (bucket + position) / buckets;
+    }
+}
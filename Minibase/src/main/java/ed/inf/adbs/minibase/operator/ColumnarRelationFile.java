@@ -0,0 +1,246 @@
+/**
+ * The ColumnarRelationFile class reads and writes the binary columnar format of a relation.
+ * A file starts with a header holding a magic number, the format version, the row count, the column count, and the
+ * length and modification time of the CSV file it was imported from, so it is only used while that file is unchanged.
+ * The header is followed by one entry per column with its type, the offset of its data and the length of its data.
+ * An int column stores one 4-byte value per row. A string column stores a dictionary of distinct values
+ * (a count, then each value as a length-prefixed UTF-8 string) followed by one 4-byte dictionary code per row.
+ * Columns are stored contiguously, so a reader can map only the columns it needs.
+ */
+
+package ed.inf.adbs.minibase.operator;
+
+import java.io.*;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ColumnarRelationFile {
+    public static final int MAGIC = 0x4D42434C;
+    public static final int VERSION = 2;
+    private static final byte INT_COLUMN = 0;
+    private static final byte STRING_COLUMN = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int COLUMN_ENTRY_SIZE = 17;
+
+    private final Path path;
+    private final int rowCount;
+    private final long sourceLength;
+    private final long sourceLastModified;
+    private final byte[] types;
+    private final long[] offsets;
+    private final long[] lengths;
+
+    /**
+     * Opens a columnar relation file and reads its header.
+     *
+     * @param path the path of the columnar file
+     * @throws IOException if the file cannot be read or is not in the columnar format
+     */
+    public ColumnarRelationFile(String path) throws IOException {
+        this.path = Paths.get(path);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not a columnar relation file: " + path);
+            int version = in.readInt();
+            if (version != VERSION) throw new IOException("Unsupported columnar format version " + version + ": " + path);
+            this.rowCount = in.readInt();
+            int columnCount = in.readInt();
+            this.sourceLength = in.readLong();
+            this.sourceLastModified = in.readLong();
+            this.types = new byte[columnCount];
+            this.offsets = new long[columnCount];
+            this.lengths = new long[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                this.types[i] = in.readByte();
+                this.offsets[i] = in.readLong();
+                this.lengths[i] = in.readLong();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of rows stored in the file.
+     *
+     * @return the row count
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Checks whether the file still describes a CSV relation file, that is, whether the CSV file has the length
+     * and modification time it had when it was imported.
+     *
+     * @param csvPath the path of the CSV relation file
+     * @return true if the columnar file is up to date
+     */
+    public boolean isUpToDate(String csvPath) {
+        File csvFile = new File(csvPath);
+        return csvFile.length() == sourceLength && csvFile.lastModified() == sourceLastModified;
+    }
+
+    /**
+     * Returns the number of columns stored in the file.
+     *
+     * @return the column count
+     */
+    public int getColumnCount() {
+        return types.length;
+    }
+
+    /**
+     * Returns whether a column holds integers.
+     *
+     * @param column the index of the column
+     * @return true for an int column, false for a string column
+     */
+    public boolean isIntColumn(int column) {
+        return types[column] == INT_COLUMN;
+    }
+
+    /**
+     * Maps the values of an int column, or the dictionary codes of a string column.
+     *
+     * @param column the index of the column
+     * @return a buffer with one value per row
+     * @throws IOException if the column cannot be mapped
+     */
+    public IntBuffer mapValues(int column) throws IOException {
+        long valuesLength = 4L * rowCount;
+        long valuesOffset = offsets[column] + lengths[column] - valuesLength;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, valuesOffset, valuesLength).asIntBuffer();
+        }
+    }
+
+    /**
+     * Reads the dictionary of a string column.
+     *
+     * @param column the index of the column
+     * @return the distinct values of the column, indexed by dictionary code
+     * @throws IOException if the dictionary cannot be read
+     */
+    public String[] readDictionary(int column) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offsets[column], lengths[column] - 4L * rowCount);
+            String[] dictionary = new String[buffer.getInt()];
+            for (int i = 0; i < dictionary.length; i++) {
+                byte[] bytes = new byte[buffer.getInt()];
+                buffer.get(bytes);
+                dictionary[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            return dictionary;
+        }
+    }
+
+    /**
+     * Converts a CSV relation file into the columnar format.
+     * Each column is first written to its own temporary file while the dictionaries are built in memory,
+     * and the columns are then concatenated behind the header.
+     *
+     * @param csvPath the path of the CSV relation file
+     * @param schema the column types of the relation, as listed in the schema file
+     * @param columnarPath the path of the columnar file to write
+     * @return the number of rows written
+     * @throws IOException if a file cannot be read or written
+     */
+    public static int importCsv(String csvPath, List<String> schema, String columnarPath) throws IOException {
+        int columnCount = schema.size();
+        List<Map<String, Integer>> dictionaries = new ArrayList<>();
+        List<List<String>> dictionaryValues = new ArrayList<>();
+        File[] columnFiles = new File[columnCount];
+        DataOutputStream[] columnOutputs = new DataOutputStream[columnCount];
+        int rowCount = 0;
+        try {
+            for (int i = 0; i < columnCount; i++) {
+                dictionaries.add(new HashMap<>());
+                dictionaryValues.add(new ArrayList<>());
+                columnFiles[i] = File.createTempFile("minibase-column", ".tmp");
+                columnOutputs[i] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(columnFiles[i])));
+            }
+
+            // Write every column to its own temporary file
+            File csvFile = new File(csvPath);
+            long sourceLength = csvFile.length();
+            long sourceLastModified = csvFile.lastModified();
+            CsvRelationReader reader = new CsvRelationReader(csvPath, schema);
+            long[] row = reader.nextRow();
+            while (row != null) {
+                for (int i = 0; i < columnCount; i++) {
+                    if (schema.get(i).equals("int")) {
+                        columnOutputs[i].writeInt((int) row[i]);
+                    } else {
+                        String value = StringDictionary.decode(row[i]);
+                        Integer code = dictionaries.get(i).get(value);
+                        if (code == null) {
+                            code = dictionaryValues.get(i).size();
+                            dictionaries.get(i).put(value, code);
+                            dictionaryValues.get(i).add(value);
+                        }
+                        columnOutputs[i].writeInt(code);
+                    }
+                }
+                rowCount++;
+                row = reader.nextRow();
+            }
+            for (DataOutputStream out : columnOutputs) out.close();
+
+            // Serialize the dictionaries and compute the column offsets
+            byte[][] dictionaryBytes = new byte[columnCount][];
+            long[] lengths = new long[columnCount];
+            long[] offsets = new long[columnCount];
+            long offset = HEADER_SIZE + (long) COLUMN_ENTRY_SIZE * columnCount;
+            for (int i = 0; i < columnCount; i++) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                if (!schema.get(i).equals("int")) {
+                    DataOutputStream out = new DataOutputStream(bytes);
+                    out.writeInt(dictionaryValues.get(i).size());
+                    for (String value : dictionaryValues.get(i)) {
+                        byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+                        out.writeInt(encoded.length);
+                        out.write(encoded);
+                    }
+                    out.flush();
+                }
+                dictionaryBytes[i] = bytes.toByteArray();
+                offsets[i] = offset;
+                lengths[i] = dictionaryBytes[i].length + 4L * rowCount;
+                offset += lengths[i];
+            }
+
+            // Write the header followed by the columns
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(columnarPath)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(rowCount);
+                out.writeInt(columnCount);
+                out.writeLong(sourceLength);
+                out.writeLong(sourceLastModified);
+                for (int i = 0; i < columnCount; i++) {
+                    out.writeByte(schema.get(i).equals("int") ? INT_COLUMN : STRING_COLUMN);
+                    out.writeLong(offsets[i]);
+                    out.writeLong(lengths[i]);
+                }
+                for (int i = 0; i < columnCount; i++) {
+                    out.write(dictionaryBytes[i]);
+                    Files.copy(columnFiles[i].toPath(), out);
+                }
+            }
+            return rowCount;
+        } finally {
+            for (int i = 0; i < columnCount; i++) {
+                if (columnOutputs[i] != null) columnOutputs[i].close();
+                if (columnFiles[i] != null) columnFiles[i].delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * This class represents a Scan Operator over a relation stored in the binary columnar format.
+ * Only the columns whose variables are needed by the rest of the query plan are mapped and returned,
+ * so the output tuples of this operator contain just those columns.
+ * Batches are filled with bulk copies of the mapped column values.
+ */
+package ed.inf.adbs.minibase.operator;
+
+import ed.inf.adbs.minibase.base.*;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+public class ColumnarScanOperator extends Operator {
+    private final String relationName;
+    private final List<Integer> columns = new ArrayList<>();
+    private ColumnarRelationFile relationFile;
+    private IntBuffer[] values;
+    // For every string column, the StringDictionary code of each code of the file dictionary
+    private int[][] dictionaries;
+    private int nextRow = 0;
+    private Batch batch = null;
+    private int[] buffer = null;
+
+    /**
+     * Constructs a new ColumnarScanOperator object for the given RelationalAtom.
+     *
+     * @param atom the RelationalAtom to scan.
+     * @param requiredVariables the names of the variables used outside of this atom; the other columns are skipped.
+     */
+    public ColumnarScanOperator(RelationalAtom atom, Collection<String> requiredVariables) {
+        for (int i = 0; i < atom.getTerms().size(); i++) {
+            Term term = atom.getTerms().get(i);
+            if (term instanceof Variable && requiredVariables.contains(((Variable) term).getName())) {
+                this.varsName.add(((Variable) term).getName());
+                this.varsType.add(DatabaseCatalog.getInstance().getSchema(atom.getName()).get(i));
+                this.columns.add(i);
+            }
+        }
+        this.relationName = atom.getName();
+        this.reset();
+    }
+
+    /**
+     * Resets the operator to the beginning of the relation.
+     * The required columns are only mapped on the first call.
+     */
+    @Override
+    public void reset() {
+        this.nextRow = 0;
+        if (this.relationFile != null) return;
+        DatabaseCatalog dbCat = DatabaseCatalog.getInstance();
+        try {
+            this.relationFile = new ColumnarRelationFile(dbCat.getColumnarRelationPath(relationName));
+            this.values = new IntBuffer[this.columns.size()];
+            this.dictionaries = new int[this.columns.size()][];
+            for (int i = 0; i < this.columns.size(); i++) {
+                int column = this.columns.get(i);
+                this.values[i] = this.relationFile.mapValues(column);
+                if (this.relationFile.isIntColumn(column)) continue;
+                String[] dictionary = this.relationFile.readDictionary(column);
+                this.dictionaries[i] = new int[dictionary.length];
+                for (int code = 0; code < dictionary.length; code++) {
+                    this.dictionaries[i][code] = StringDictionary.encode(dictionary[code]);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Columnar relation file could not be read: " + dbCat.getColumnarRelationPath(relationName));
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Returns the next tuple in the relation, or null if there are no more tuples.
+     *
+     * @return the next tuple in the relation, or null if there are no more tuples.
+     */
+    @Override
+    public Tuple getNextTuple() {
+        if (this.relationFile == null || this.nextRow >= this.relationFile.getRowCount()) return null;
+        long[] row = new long[this.columns.size()];
+        for (int i = 0; i < row.length; i++) {
+            int value = this.values[i].get(this.nextRow);
+            row[i] = this.dictionaries[i] == null ? value : this.dictionaries[i][value];
+        }
+        this.nextRow++;
+        return new Tuple(row);
+    }
+
+    /**
+     * Returns the next batch of tuples in the relation, or null if there are no more tuples.
+     *
+     * @return the next batch of tuples in the relation, or null if there are no more tuples.
+     */
+    @Override
+    public Batch getNextBatch() {
+        if (this.relationFile == null || this.nextRow >= this.relationFile.getRowCount()) return null;
+        if (this.batch == null) {
+            this.batch = new Batch(this.columns.size());
+            this.buffer = new int[this.batch.getCapacity()];
+        }
+        int size = Math.min(this.batch.getCapacity(), this.relationFile.getRowCount() - this.nextRow);
+        for (int i = 0; i < this.columns.size(); i++) {
+            IntBuffer values = this.values[i].duplicate();
+            values.position(this.nextRow);
+            values.get(this.buffer, 0, size);
+            long[] column = this.batch.getColumn(i);
+            int[] dictionary = this.dictionaries[i];
+            if (dictionary == null) {
+                for (int row = 0; row < size; row++) column[row] = this.buffer[row];
+            } else {
+                for (int row = 0; row < size; row++) column[row] = dictionary[this.buffer[row]];
+            }
+        }
+        this.nextRow += size;
+        this.batch.setSize(size);
+        return this.batch;
+    }
+}
@@ -0,0 +1,269 @@
+/**
+ * The CsvRelationReader class reads the rows of a relation file by memory-mapping it and tokenizing its bytes directly.
+ * Integer columns are parsed straight from the mapped bytes without building intermediate Strings, and string columns
+ * are read between their quotes. Files larger than a single mapping are read through consecutive windows that end on
+ * a line boundary, so no row is ever split between two windows.
+ */
+
+package ed.inf.adbs.minibase.operator;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CsvRelationReader {
+    // The maximum number of bytes mapped at once
+    private static final int WINDOW_SIZE = 256 * 1024 * 1024;
+
+    private final Path path;
+    private final boolean[] intColumns;
+    private final long startOffset;
+    private final long endOffset;
+    private MappedByteBuffer buffer = null;
+    private long windowStart;
+    private byte[] stringBytes = new byte[64];
+
+    /**
+     * Constructs a reader over a whole relation file.
+     *
+     * @param path the path of the relation file
+     * @param schema the column types of the relation, as listed in the schema file
+     * @throws IOException if the file cannot be accessed
+     */
+    public CsvRelationReader(String path, List<String> schema) throws IOException {
+        this(path, schema, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Constructs a reader over the rows that start in the byte range [startOffset, endOffset) of a relation file.
+     * Both offsets must be at the beginning of a line (or at the end of the file).
+     *
+     * @param path the path of the relation file
+     * @param schema the column types of the relation, as listed in the schema file
+     * @param startOffset the offset of the first byte to read
+     * @param endOffset the offset after the last byte to read, capped at the file size
+     * @throws IOException if the file cannot be accessed
+     */
+    public CsvRelationReader(String path, List<String> schema, long startOffset, long endOffset) throws IOException {
+        this.path = Paths.get(path);
+        this.intColumns = new boolean[schema.size()];
+        for (int i = 0; i < schema.size(); i++) {
+            this.intColumns[i] = schema.get(i).equals("int");
+        }
+        this.startOffset = startOffset;
+        this.endOffset = Math.min(endOffset, this.path.toFile().length());
+        if (!this.path.toFile().isFile()) throw new IOException("Relation data file not found: " + path);
+        this.reset();
+    }
+
+    /**
+     * Splits a relation file into chunks of about the given size, moving every boundary forward to the beginning of
+     * the next line, so that each chunk can be read by its own reader.
+     *
+     * @param path the path of the relation file
+     * @param chunkSize the approximate number of bytes per chunk
+     * @return the offsets of the chunk boundaries, from 0 to the file size
+     * @throws IOException if the file cannot be read
+     */
+    public static long[] splitLines(String path, long chunkSize) throws IOException {
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        try (RandomAccessFile file = new RandomAccessFile(path, "r")) {
+            long length = file.length();
+            byte[] bytes = new byte[4096];
+            long bound = chunkSize;
+            while (bound < length) {
+                // Move the boundary after the next newline
+                file.seek(bound - 1);
+                long lineStart = -1;
+                while (lineStart < 0) {
+                    long position = file.getFilePointer();
+                    int read = file.read(bytes);
+                    if (read <= 0) break;
+                    for (int i = 0; i < read; i++) {
+                        if (bytes[i] == '\n') {
+                            lineStart = position + i + 1;
+                            break;
+                        }
+                    }
+                }
+                if (lineStart < 0 || lineStart >= length) break;
+                bounds.add(lineStart);
+                bound = lineStart + chunkSize;
+            }
+            bounds.add(length);
+        }
+        long[] offsets = new long[bounds.size()];
+        for (int i = 0; i < offsets.length; i++) offsets[i] = bounds.get(i);
+        return offsets;
+    }
+
+    /**
+     * Moves the reader back to the first row of its range.
+     */
+    public void reset() {
+        this.buffer = null;
+        this.windowStart = this.startOffset;
+    }
+
+    /**
+     * Skips to the next row of the relation and returns its offset in the file, without reading it.
+     *
+     * @return the offset of the first byte of the next row, or -1 if there are no more rows
+     * @throws IOException if a window of the file cannot be mapped
+     */
+    public long nextRowOffset() throws IOException {
+        if (!skipBlankLines()) return -1;
+        return this.windowStart + this.buffer.position();
+    }
+
+    /**
+     * Moves the reader to a row of its range, for reading rows located through an index.
+     * The current window is kept when it contains the offset.
+     *
+     * @param offset the offset of the first byte of the row, which must be at the beginning of a line
+     */
+    public void seek(long offset) {
+        if (this.buffer != null && offset >= this.windowStart && offset < this.windowStart + this.buffer.limit()) {
+            this.buffer.position((int) (offset - this.windowStart));
+            return;
+        }
+        this.buffer = null;
+        this.windowStart = offset;
+    }
+
+    /**
+     * Reads the next row of the relation. String values are encoded with the StringDictionary.
+     *
+     * @return the slots of the next row, or null if there are no more rows
+     * @throws IOException if a window of the file cannot be mapped
+     */
+    public long[] nextRow() throws IOException {
+        if (!skipBlankLines()) return null;
+        long[] values = new long[this.intColumns.length];
+        for (int i = 0; i < this.intColumns.length; i++) {
+            skipSeparators();
+            if (this.intColumns[i]) values[i] = readInt();
+            else values[i] = StringDictionary.encode(readString());
+        }
+        // Ignore anything left on the line
+        while (this.buffer.hasRemaining() && this.buffer.get() != '\n') ;
+        return values;
+    }
+
+    /**
+     * Skips empty lines, mapping the next window of the file whenever the current one is exhausted.
+     *
+     * @return true if a row is available, false at the end of the range
+     * @throws IOException if a window of the file cannot be mapped
+     */
+    private boolean skipBlankLines() throws IOException {
+        while (true) {
+            while (this.buffer != null && this.buffer.hasRemaining()) {
+                byte b = this.buffer.get(this.buffer.position());
+                if (b != '\n' && b != '\r') return true;
+                this.buffer.get();
+            }
+            if (!mapNextWindow()) return false;
+        }
+    }
+
+    /**
+     * Maps the next window of the range, ending it after the last complete line it contains.
+     *
+     * @return true if a non-empty window was mapped, false at the end of the range
+     * @throws IOException if the file cannot be mapped
+     */
+    private boolean mapNextWindow() throws IOException {
+        if (this.buffer != null) this.windowStart += this.buffer.limit();
+        if (this.windowStart >= this.endOffset) return false;
+        long windowSize = Math.min(WINDOW_SIZE, this.endOffset - this.windowStart);
+        try (FileChannel channel = FileChannel.open(this.path, StandardOpenOption.READ)) {
+            while (true) {
+                this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, this.windowStart, windowSize);
+                if (this.windowStart + windowSize >= this.endOffset) return true;
+                int lastNewline = (int) windowSize - 1;
+                while (lastNewline >= 0 && this.buffer.get(lastNewline) != '\n') lastNewline--;
+                if (lastNewline >= 0) {
+                    this.buffer.limit(lastNewline + 1);
+                    return true;
+                }
+                // A single line is longer than the window, so map a larger one
+                windowSize = Math.min(Math.min(2 * windowSize, Integer.MAX_VALUE), this.endOffset - this.windowStart);
+            }
+        }
+    }
+
+    /**
+     * Skips the commas and whitespace in front of a field, without crossing the end of the line.
+     */
+    private void skipSeparators() {
+        while (this.buffer.hasRemaining()) {
+            byte b = this.buffer.get(this.buffer.position());
+            if (b != ',' && b != ' ' && b != '\t') return;
+            this.buffer.get();
+        }
+    }
+
+    /**
+     * Parses an integer field directly from the mapped bytes.
+     *
+     * @return the value of the field
+     */
+    private int readInt() {
+        long start = this.windowStart + this.buffer.position();
+        boolean negative = false;
+        if (this.buffer.hasRemaining() && this.buffer.get(this.buffer.position()) == '-') {
+            negative = true;
+            this.buffer.get();
+        }
+        // Accumulate the magnitude in a long to detect values outside the int range, which reaches one further below zero
+        long limit = negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE;
+        long value = 0;
+        int digits = 0;
+        while (this.buffer.hasRemaining()) {
+            byte b = this.buffer.get(this.buffer.position());
+            if (b < '0' || b > '9') break;
+            value = value * 10 + (b - '0');
+            if (value > limit) {
+                throw new NumberFormatException("Integer out of range at byte " + start + " of " + this.path);
+            }
+            digits++;
+            this.buffer.get();
+        }
+        if (digits == 0) {
+            throw new NumberFormatException("Expected an integer at byte " + (this.windowStart + this.buffer.position()) + " of " + this.path);
+        }
+        return (int) (negative ? -value : value);
+    }
+
+    /**
+     * Reads a string field, either enclosed in single quotes or as a bare run of letters and digits.
+     *
+     * @return the value of the field, without its quotes
+     */
+    private String readString() {
+        int length = 0;
+        boolean quoted = this.buffer.hasRemaining() && this.buffer.get(this.buffer.position()) == '\'';
+        if (quoted) this.buffer.get();
+        while (this.buffer.hasRemaining()) {
+            byte b = this.buffer.get(this.buffer.position());
+            if (quoted ? b == '\'' || b == '\n' : !Character.isLetterOrDigit(b)) break;
+            if (length == this.stringBytes.length) {
+                byte[] larger = new byte[2 * length];
+                System.arraycopy(this.stringBytes, 0, larger, 0, length);
+                this.stringBytes = larger;
+            }
+            this.stringBytes[length++] = this.buffer.get();
+        }
+        if (quoted && this.buffer.hasRemaining() && this.buffer.get(this.buffer.position()) == '\'') this.buffer.get();
+        return new String(this.stringBytes, 0, length, StandardCharsets.UTF_8);
+    }
+}
@@ -1,17 +1,39 @@
 /**
  * A class representing the catalog of a database that stores information about its schema.
+ * It also keeps recently scanned relations decoded in memory, within a size budget, so later scans of the same
+ * relation file do not parse it again while the file keeps its length and modification time.
+ * The secondary indexes built by CreateIndex are registered in the indexes.txt file of the database.
  */
 
 package ed.inf.adbs.minibase.operator;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.*;
 
 public class DatabaseCatalog {
+    // The default size budget of the relation cache in bytes, configurable with -Dminibase.cache.maxBytes
+    public static final long DEFAULT_CACHE_BUDGET = Long.getLong("minibase.cache.maxBytes", 256L * 1024 * 1024);
+
+    // The number of bytes read from the start of a CSV file to estimate its row count
+    private static final int ROW_COUNT_SAMPLE_BYTES = 64 * 1024;
+
     public static DatabaseCatalog instance;
     private String databaseDirectory;
     Map<String, List<String>> schema = new HashMap<>();
+    // Statistics collected by the Analyzer, loaded from stats.txt
+    private Map<String, RelationStatistics> statistics = new LinkedHashMap<>();
+    // Indexes registered in indexes.txt, and the index files opened so far keyed by path
+    private List<IndexDefinition> indexes = new ArrayList<>();
+    private final Map<String, RelationIndex> openIndexes = new HashMap<>();
+    // Decoded relations keyed by file path, from least to most recently used
+    private final LinkedHashMap<String, CachedRelation> relationCache = new LinkedHashMap<>(16, 0.75f, true);
+    private long cacheBudget = DEFAULT_CACHE_BUDGET;
+    private long cacheSize = 0;
 
     /**
      * Returns an instance of the database catalog.
@@ -37,13 +59,154 @@ public class DatabaseCatalog {
             Scanner scanner = new Scanner(f);
             while (scanner.hasNextLine()) {
                 ArrayList<String> fileLine = new ArrayList<>(Arrays.asList(scanner.nextLine().split("\\s+")));
-                this.schema.put(fileLine.get(0), fileLine.subList(1, fileLine.size()));
+                List<String> previousSchema = this.schema.put(fileLine.get(0), fileLine.subList(1, fileLine.size()));
+                // Rows decoded with a different schema must not be served from the cache
+                if (previousSchema != null && !previousSchema.equals(fileLine.subList(1, fileLine.size())))
+                    evictRelation(getRelationPath(fileLine.get(0)));
             }
             scanner.close();
         } catch (FileNotFoundException e) {
             System.out.println("Schema file not found at : " + schema_path);
             e.printStackTrace();
         }
+        loadStatistics();
+        loadIndexes();
+    }
+
+    /**
+     * Returns the path of the statistics file of the database.
+     *
+     * @return the path of the statistics file.
+     */
+    public String getStatisticsPath() {
+        return this.databaseDirectory + File.separator + "stats.txt";
+    }
+
+    /**
+     * Loads the statistics file of the database, if the relations have been analyzed.
+     */
+    private void loadStatistics() {
+        this.statistics = new LinkedHashMap<>();
+        File statisticsFile = new File(getStatisticsPath());
+        if (!statisticsFile.isFile()) return;
+        try {
+            this.statistics = RelationStatistics.parse(Files.readAllLines(statisticsFile.toPath()));
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Statistics file could not be read: " + getStatisticsPath());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes the statistics of all analyzed relations to the statistics file of the database.
+     *
+     * @throws IOException if the file cannot be written.
+     */
+    public void saveStatistics() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, RelationStatistics> entry : statistics.entrySet()) {
+            lines.addAll(entry.getValue().toLines(entry.getKey()));
+        }
+        Files.write(Paths.get(getStatisticsPath()), lines);
+    }
+
+    /**
+     * Returns the statistics of a relation.
+     *
+     * @param relationName the name of the relation.
+     * @return the statistics of the relation, or null if it has not been analyzed.
+     */
+    public RelationStatistics getStatistics(String relationName) {
+        return statistics.get(relationName);
+    }
+
+    /**
+     * Sets the statistics of a relation, replacing any previous ones.
+     *
+     * @param relationName the name of the relation.
+     * @param relationStatistics the statistics of the relation.
+     */
+    public void setStatistics(String relationName, RelationStatistics relationStatistics) {
+        statistics.put(relationName, relationStatistics);
+    }
+
+    /**
+     * Returns the path of the file listing the indexes of the database.
+     *
+     * @return the path of the indexes file.
+     */
+    public String getIndexesPath() {
+        return this.databaseDirectory + File.separator + "indexes.txt";
+    }
+
+    /**
+     * Loads the indexes file of the database, if indexes have been created.
+     */
+    private void loadIndexes() {
+        this.indexes = new ArrayList<>();
+        File indexesFile = new File(getIndexesPath());
+        if (!indexesFile.isFile()) return;
+        try {
+            for (String line : Files.readAllLines(indexesFile.toPath())) {
+                if (!line.trim().isEmpty()) this.indexes.add(IndexDefinition.parse(line));
+            }
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Indexes file could not be read: " + getIndexesPath());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Registers an index and writes the indexes file of the database.
+     *
+     * @param definition the definition of the index.
+     * @throws IOException if the file cannot be written.
+     */
+    public synchronized void registerIndex(IndexDefinition definition) throws IOException {
+        if (!indexes.contains(definition)) indexes.add(definition);
+        openIndexes.remove(getIndexPath(definition));
+        List<String> lines = new ArrayList<>();
+        for (IndexDefinition index : indexes) lines.add(index.toLine());
+        Files.write(Paths.get(getIndexesPath()), lines);
+    }
+
+    /**
+     * Returns the path of the file of an index.
+     *
+     * @param definition the definition of the index.
+     * @return the path of the index file, next to the relation file.
+     */
+    public String getIndexPath(IndexDefinition definition) {
+        return this.databaseDirectory + File.separator + "files" + File.separator + definition.getRelationName()
+                + "." + definition.getColumn() + "." + definition.getKind() + ".idx";
+    }
+
+    /**
+     * Returns the usable indexes of a relation: the registered indexes whose files exist and are up to date
+     * with the relation file.
+     *
+     * @param relationName the name of the relation.
+     * @return the opened indexes of the relation.
+     */
+    public synchronized List<RelationIndex> getIndexes(String relationName) {
+        List<RelationIndex> usable = new ArrayList<>();
+        for (IndexDefinition definition : indexes) {
+            if (!definition.getRelationName().equals(relationName)) continue;
+            String path = getIndexPath(definition);
+            if (!new File(path).isFile()) continue;
+            try {
+                RelationIndex index = openIndexes.get(path);
+                if (index == null) {
+                    index = RelationIndex.open(path, definition.getKind());
+                    openIndexes.put(path, index);
+                }
+                if (index.isUpToDate(getRelationPath(relationName))) usable.add(index);
+            } catch (IOException e) {
+                System.out.println("Index file could not be read: " + path);
+                e.printStackTrace();
+            }
+        }
+        return usable;
     }
 
     /**
@@ -56,6 +219,43 @@ public class DatabaseCatalog {
         return (this.databaseDirectory + File.separator + "files" + File.separator + relationName + ".csv");
     }
 
+    /**
+     * Returns the path of the binary columnar file of a relation in the database.
+     *
+     * @param relationName the name of the relation.
+     * @return the path of the columnar file of the relation.
+     */
+    public String getColumnarRelationPath(String relationName) {
+        return (this.databaseDirectory + File.separator + "files" + File.separator + relationName + ".col");
+    }
+
+    /**
+     * Returns whether a relation should be read from its columnar file, that is, whether the columnar file exists
+     * and the CSV file it was imported from is unchanged since, or has been removed.
+     *
+     * @param relationName the name of the relation.
+     * @return true if the columnar file of the relation is available and up to date.
+     */
+    public boolean hasColumnarRelation(String relationName) {
+        String columnarPath = getColumnarRelationPath(relationName);
+        if (!new File(columnarPath).isFile()) return false;
+        try {
+            ColumnarRelationFile columnarFile = new ColumnarRelationFile(columnarPath);
+            return !new File(getRelationPath(relationName)).exists() || columnarFile.isUpToDate(getRelationPath(relationName));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the names of all relations in the schema of the database.
+     *
+     * @return the relation names.
+     */
+    public Set<String> getRelationNames() {
+        return schema.keySet();
+    }
+
     /**
      * Returns the schema of a relation in the database.
      *
@@ -65,4 +265,147 @@ public class DatabaseCatalog {
     public List<String> getSchema(String relationName) {
         return schema.get(relationName);
     }
+
+    /**
+     * Estimates the number of rows of a relation without scanning it. The row count is exact for columnar and
+     * cached relations, then taken from the statistics of analyzed relations; otherwise it is extrapolated
+     * from the average length of the lines at the start of the CSV file.
+     *
+     * @param relationName the name of the relation.
+     * @return the estimated number of rows.
+     */
+    public long estimateRowCount(String relationName) {
+        if (hasColumnarRelation(relationName)) {
+            try {
+                return new ColumnarRelationFile(getColumnarRelationPath(relationName)).getRowCount();
+            } catch (IOException e) {
+                // Fall back to the CSV file
+            }
+        }
+        File csvFile = new File(getRelationPath(relationName));
+        List<long[]> cachedRows = getCachedRelation(getRelationPath(relationName), csvFile.length(), csvFile.lastModified());
+        if (cachedRows != null) return cachedRows.size();
+        if (statistics.containsKey(relationName)) return statistics.get(relationName).getRowCount();
+
+        long fileLength = csvFile.length();
+        if (fileLength == 0) return 0;
+        byte[] sample = new byte[(int) Math.min(fileLength, ROW_COUNT_SAMPLE_BYTES)];
+        try (FileInputStream in = new FileInputStream(csvFile)) {
+            int length = in.read(sample);
+            int lines = 0;
+            for (int i = 0; i < length; i++) {
+                if (sample[i] == '\n') lines++;
+            }
+            if (length == fileLength) return sample[length - 1] == '\n' ? lines : lines + 1;
+            return lines == 0 ? 1 : Math.round((double) fileLength * lines / length);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Returns the decoded rows of a relation file if they are cached and the file has not changed since, that is,
+     * if it still has the length and modification time it had when it was read.
+     *
+     * @param relationPath the path of the relation file.
+     * @param length the current length of the file.
+     * @param lastModified the current modification time of the file.
+     * @return the cached rows, or null if the relation is not cached or its entry is stale.
+     */
+    public synchronized List<long[]> getCachedRelation(String relationPath, long length, long lastModified) {
+        CachedRelation cached = relationCache.get(relationPath);
+        if (cached == null) return null;
+        if (cached.length != length || cached.lastModified != lastModified) {
+            evictRelation(relationPath);
+            return null;
+        }
+        return cached.rows;
+    }
+
+    /**
+     * Adds the decoded rows of a relation file to the cache, evicting the least recently used relations
+     * until the cache fits in its budget. Relations larger than the whole budget are not cached.
+     *
+     * @param relationPath the path of the relation file.
+     * @param length the length of the file when it was read.
+     * @param lastModified the modification time of the file when it was read.
+     * @param rows the decoded rows of the relation.
+     * @param estimatedBytes the estimated memory used by the rows.
+     */
+    public synchronized void cacheRelation(String relationPath, long length, long lastModified, List<long[]> rows,
+                                           long estimatedBytes) {
+        if (estimatedBytes > cacheBudget) return;
+        evictRelation(relationPath);
+        relationCache.put(relationPath, new CachedRelation(Collections.unmodifiableList(rows), length, lastModified, estimatedBytes));
+        cacheSize += estimatedBytes;
+        evictToBudget();
+    }
+
+    /**
+     * Returns the size budget of the relation cache.
+     *
+     * @return the budget in bytes.
+     */
+    public long getCacheBudget() {
+        return cacheBudget;
+    }
+
+    /**
+     * Sets the size budget of the relation cache, evicting relations that no longer fit.
+     *
+     * @param cacheBudget the budget in bytes; 0 disables the cache.
+     */
+    public synchronized void setCacheBudget(long cacheBudget) {
+        this.cacheBudget = cacheBudget;
+        evictToBudget();
+    }
+
+    /**
+     * Removes a relation file from the cache.
+     *
+     * @param relationPath the path of the relation file.
+     */
+    private synchronized void evictRelation(String relationPath) {
+        CachedRelation cached = relationCache.remove(relationPath);
+        if (cached != null) cacheSize -= cached.estimatedBytes;
+    }
+
+    /**
+     * Evicts the least recently used relations until the cache fits in its budget.
+     */
+    private void evictToBudget() {
+        Iterator<CachedRelation> iterator = relationCache.values().iterator();
+        while (cacheSize > cacheBudget && iterator.hasNext()) {
+            cacheSize -= iterator.next().estimatedBytes;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Estimates the memory used by a decoded row: the slot array and a reference to it.
+     * String values are held once by the StringDictionary and are not counted.
+     *
+     * @param values the slots of the row.
+     * @return the estimated size in bytes.
+     */
+    public static long estimateRowSize(long[] values) {
+        return 24 + 8L * values.length;
+    }
+
+    /**
+     * An entry of the relation cache.
+     */
+    private static class CachedRelation {
+        private final List<long[]> rows;
+        private final long length;
+        private final long lastModified;
+        private final long estimatedBytes;
+
+        private CachedRelation(List<long[]> rows, long length, long lastModified, long estimatedBytes) {
+            this.rows = rows;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.estimatedBytes = estimatedBytes;
+        }
+    }
 }
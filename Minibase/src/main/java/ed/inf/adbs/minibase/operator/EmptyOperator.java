@@ -0,0 +1,40 @@
+/**
+ * The EmptyOperator class represents a relation known to have no tuples, such as the body of a query whose comparisons
+ * contradict each other. It has the columns of the relation it stands for, so that the operators above it are built as
+ * usual, but reads nothing.
+ */
+
+package ed.inf.adbs.minibase.operator;
+
+import java.util.List;
+
+public class EmptyOperator extends Operator {
+
+    /**
+     * Constructs an EmptyOperator with the given columns.
+     *
+     * @param varsName the variable names of the columns
+     * @param varsType the types of the columns
+     */
+    public EmptyOperator(List<String> varsName, List<String> varsType) {
+        this.varsName = varsName;
+        this.varsType = varsType;
+    }
+
+    /**
+     * Does nothing, since there is no tuple to rewind to.
+     */
+    @Override
+    public void reset() {
+    }
+
+    /**
+     * Returns no tuple.
+     *
+     * @return null
+     */
+    @Override
+    public Tuple getNextTuple() {
+        return null;
+    }
+}
@@ -0,0 +1,177 @@
+/**
+ * The ExchangeOperator class gathers the output of the workers of a morsel-driven parallel plan.
+ * Every worker runs its own copy of the probe pipeline over the morsels of the first relation, probing the join
+ * build sides shared by all workers, which are read in parallel before the probe pipelines start.
+ * The rows of every morsel are buffered until all earlier morsels have been returned, so the output does not depend on
+ * the scheduling of the workers; with hash joins only, it follows the order of the serial plan. Workers wait when they get too far ahead of
+ * the consumer, which bounds the number of buffered morsels.
+ */
+
+package ed.inf.adbs.minibase.operator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+public class ExchangeOperator extends Operator {
+    private final MorselSource source;
+    private final MorselScanOperator[] scans;
+    private final Operator[] pipelines;
+    private final List<SharedBuild> builds;
+    private final int window;
+    private Future<?>[] workers = null;
+    // The rows of the finished morsels that have not been returned yet, guarded by this
+    private final Map<Integer, List<long[]>> finished = new HashMap<>();
+    private int nextMorsel = 0;
+    private boolean cancelled = false;
+    private Throwable failure = null;
+    private List<long[]> current = null;
+    private int currentIndex = 0;
+    private Batch output = null;
+
+    /**
+     * Constructs an ExchangeOperator over the pipelines of parallel workers.
+     *
+     * @param source the morsel source of the first relation of the pipelines
+     * @param scans the scan of the pipeline of every worker
+     * @param pipelines the root of the pipeline of every worker
+     * @param builds the build sides shared by the pipelines
+     */
+    public ExchangeOperator(MorselSource source, MorselScanOperator[] scans, Operator[] pipelines, List<SharedBuild> builds) {
+        this.source = source;
+        this.scans = scans;
+        this.pipelines = pipelines;
+        this.builds = builds;
+        this.window = 4 * pipelines.length;
+        this.varsName = pipelines[0].getVarsName();
+        this.varsType = pipelines[0].getVarsType();
+    }
+
+    /**
+     * Stops the workers and restarts from the first morsel on the next call. The shared build sides are kept.
+     */
+    @Override
+    public void reset() {
+        if (this.workers != null) {
+            synchronized (this) {
+                this.cancelled = true;
+                notifyAll();
+            }
+            try {
+                ParallelExecution.await(this.workers);
+            } catch (RuntimeException e) {
+                // The output of the cancelled run is discarded with its failures
+            }
+        }
+        this.workers = null;
+        this.finished.clear();
+        this.nextMorsel = 0;
+        this.cancelled = false;
+        this.failure = null;
+        this.current = null;
+        this.currentIndex = 0;
+        resetTupleBatch();
+    }
+
+    /**
+     * Returns the next tuple gathered from the workers, or null if there are no more tuples.
+     *
+     * @return the next tuple, or null if there are no more tuples
+     */
+    @Override
+    public Tuple getNextTuple() {
+        return nextTupleFromBatches();
+    }
+
+    /**
+     * Returns the next batch of tuples gathered from the workers, or null if there are no more tuples.
+     * The first call reads the shared build sides and starts the workers.
+     *
+     * @return the next batch of tuples, or null if there are no more tuples
+     */
+    @Override
+    public Batch getNextBatch() {
+        if (this.workers == null) start();
+        if (this.output == null) this.output = new Batch(this.varsType.size());
+        this.output.clear();
+        while (!this.output.isFull()) {
+            if (this.current != null && this.currentIndex < this.current.size()) {
+                this.output.addRow(this.current.get(this.currentIndex++));
+                continue;
+            }
+            if (this.nextMorsel == this.source.getMorselCount()) break;
+            this.current = takeMorsel();
+            this.currentIndex = 0;
+        }
+        return this.output.getSize() == 0 ? null : this.output;
+    }
+
+    /**
+     * Reads the shared build sides and starts one worker per pipeline.
+     */
+    private void start() {
+        for (SharedBuild build : this.builds) build.build();
+        this.source.open();
+        this.source.reset();
+        this.workers = ParallelExecution.start(this.source, this.scans, this.pipelines, (worker, morsel, pipeline) -> {
+            try {
+                if (!awaitWindow(morsel)) return;
+                List<long[]> rows = new ArrayList<>();
+                ParallelExecution.drain(pipeline, rows);
+                synchronized (this) {
+                    this.finished.put(morsel, rows);
+                    notifyAll();
+                }
+            } catch (Throwable e) {
+                synchronized (this) {
+                    if (this.failure == null) this.failure = e;
+                    notifyAll();
+                }
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * Waits until a morsel is close enough to the next morsel to return.
+     *
+     * @param morsel the morsel claimed by a worker
+     * @return false if the exchange was reset while waiting
+     * @throws InterruptedException if the worker is interrupted
+     */
+    private synchronized boolean awaitWindow(int morsel) throws InterruptedException {
+        while (!this.cancelled && morsel >= this.nextMorsel + this.window) wait();
+        return !this.cancelled;
+    }
+
+    /**
+     * Waits for the rows of the next morsel and removes them from the buffer.
+     * If a worker failed, the other workers are released from awaitWindow before the failure is rethrown,
+     * so none of them stays parked waiting for a consumer that has stopped.
+     *
+     * @return the rows of the next morsel
+     */
+    private synchronized List<long[]> takeMorsel() {
+        while (!this.finished.containsKey(this.nextMorsel)) {
+            if (this.failure != null) {
+                this.cancelled = true;
+                notifyAll();
+                throw this.failure instanceof RuntimeException
+                        ? (RuntimeException) this.failure : new RuntimeException(this.failure);
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                this.cancelled = true;
+                notifyAll();
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+        List<long[]> rows = this.finished.remove(this.nextMorsel++);
+        notifyAll();
+        return rows;
+    }
+}
@@ -0,0 +1,235 @@
+/**
+ * The ExternalSortOperator class sorts the tuples of its child operator on a list of columns, by increasing slot value:
+ * numeric order for integer columns and StringDictionary code order for string columns, which groups equal values
+ * together as a join on them requires. Tuples are collected in memory up to a size budget; when the child produces
+ * more, every full buffer is sorted and written to a temporary run file, and the runs are then merged k ways with a
+ * priority queue, in several passes if there are more runs than the merge fan-in.
+ * The sorted runs are kept across resets, since the child operator produces the same tuples after a reset.
+ */
+
+package ed.inf.adbs.minibase.operator;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+public class ExternalSortOperator extends Operator {
+    // The default memory budget for the tuples being sorted, configurable with -Dminibase.sort.maxBytes
+    public static final long DEFAULT_MEMORY_BUDGET = Long.getLong("minibase.sort.maxBytes", 64L * 1024 * 1024);
+    // The largest number of runs merged at once
+    private static final int MERGE_FAN_IN = 64;
+
+    private final Operator childOperator;
+    private final int[] sortColumns;
+    private final long memoryBudget;
+    private final Comparator<long[]> rowOrder;
+    private boolean sorted = false;
+    // The sorted tuples when they fit in memory, otherwise the sorted runs
+    private List<long[]> memoryRows = null;
+    private int memoryIndex = 0;
+    private List<SpillFile> runs = null;
+    private PriorityQueue<RunHead> heads = null;
+
+    /**
+     * Constructs an ExternalSortOperator with the default memory budget.
+     *
+     * @param childOperator the child operator
+     * @param sortColumns the indices of the columns to sort on, most significant first
+     */
+    public ExternalSortOperator(Operator childOperator, int[] sortColumns) {
+        this(childOperator, sortColumns, DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     * Constructs an ExternalSortOperator.
+     *
+     * @param childOperator the child operator
+     * @param sortColumns the indices of the columns to sort on, most significant first
+     * @param memoryBudget the estimated memory allowed for the tuples held in memory, in bytes
+     */
+    public ExternalSortOperator(Operator childOperator, int[] sortColumns, long memoryBudget) {
+        this.childOperator = childOperator;
+        this.sortColumns = sortColumns;
+        this.memoryBudget = memoryBudget;
+        this.varsName = childOperator.getVarsName();
+        this.varsType = childOperator.getVarsType();
+        this.rowOrder = (a, b) -> {
+            for (int column : sortColumns) {
+                int comparison = Long.compare(a[column], b[column]);
+                if (comparison != 0) return comparison;
+            }
+            return 0;
+        };
+    }
+
+    /**
+     * Rewinds to the first sorted tuple. The sorted tuples are kept.
+     */
+    @Override
+    public void reset() {
+        this.memoryIndex = 0;
+        closeHeads();
+    }
+
+    /**
+     * Returns the next tuple in sorted order. The child operator is fully consumed by the first call.
+     *
+     * @return the next tuple in sorted order, or null if there are no more tuples
+     */
+    @Override
+    public Tuple getNextTuple() {
+        if (!this.sorted) sort();
+        if (this.memoryRows != null) {
+            return this.memoryIndex < this.memoryRows.size() ? new Tuple(this.memoryRows.get(this.memoryIndex++)) : null;
+        }
+        try {
+            if (this.heads == null) this.heads = openHeads(this.runs);
+            RunHead head = this.heads.poll();
+            if (head == null) return null;
+            long[] row = head.row;
+            head.row = head.reader.read();
+            if (head.row != null) this.heads.add(head);
+            else head.reader.close();
+            return new Tuple(row);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the sort columns, on which the output is sorted.
+     *
+     * @return the indices of the sort columns, most significant first
+     */
+    @Override
+    public int[] getSortOrder() {
+        return this.sortColumns;
+    }
+
+    /**
+     * Reads the child operator, sorting in memory if it fits in the budget, and otherwise writing sorted runs
+     * and merging them until at most MERGE_FAN_IN runs are left.
+     */
+    private void sort() {
+        this.sorted = true;
+        List<long[]> buffer = new ArrayList<>();
+        long bufferBytes = 0;
+        List<SpillFile> spilled = new ArrayList<>();
+        try {
+            for (Batch batch = this.childOperator.getNextBatch(); batch != null; batch = this.childOperator.getNextBatch()) {
+                for (int i = 0; i < batch.getCount(); i++) {
+                    long[] row = batch.getRow(batch.rowAt(i));
+                    buffer.add(row);
+                    bufferBytes += DatabaseCatalog.estimateRowSize(row);
+                    if (bufferBytes > this.memoryBudget) {
+                        spilled.add(writeRun(buffer));
+                        buffer = new ArrayList<>();
+                        bufferBytes = 0;
+                    }
+                }
+            }
+            if (spilled.isEmpty()) {
+                buffer.sort(this.rowOrder);
+                this.memoryRows = buffer;
+                return;
+            }
+            if (!buffer.isEmpty()) spilled.add(writeRun(buffer));
+            while (spilled.size() > MERGE_FAN_IN) {
+                List<SpillFile> merged = new ArrayList<>();
+                for (int start = 0; start < spilled.size(); start += MERGE_FAN_IN) {
+                    merged.add(mergeRuns(spilled.subList(start, Math.min(spilled.size(), start + MERGE_FAN_IN))));
+                }
+                spilled = merged;
+            }
+            this.runs = spilled;
+        } catch (IOException e) {
+            for (SpillFile run : spilled) run.delete();
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Sorts a buffer of tuples and writes it to a new run.
+     *
+     * @param buffer the tuples to write
+     * @return the run file
+     * @throws IOException if the run cannot be written
+     */
+    private SpillFile writeRun(List<long[]> buffer) throws IOException {
+        buffer.sort(this.rowOrder);
+        SpillFile run = new SpillFile();
+        for (long[] row : buffer) run.write(row);
+        run.finishWriting();
+        return run;
+    }
+
+    /**
+     * Merges runs into a single new run and deletes them.
+     *
+     * @param inputs the runs to merge
+     * @return the merged run
+     * @throws IOException if a run cannot be read or written
+     */
+    private SpillFile mergeRuns(List<SpillFile> inputs) throws IOException {
+        SpillFile merged = new SpillFile();
+        PriorityQueue<RunHead> queue = openHeads(inputs);
+        while (!queue.isEmpty()) {
+            RunHead head = queue.poll();
+            merged.write(head.row);
+            head.row = head.reader.read();
+            if (head.row != null) queue.add(head);
+            else head.reader.close();
+        }
+        merged.finishWriting();
+        for (SpillFile input : inputs) input.delete();
+        return merged;
+    }
+
+    /**
+     * Opens a reader on every run and orders the runs by their first tuple.
+     *
+     * @param inputs the runs to read
+     * @return the queue of the non-empty runs
+     * @throws IOException if a run cannot be read
+     */
+    private PriorityQueue<RunHead> openHeads(List<SpillFile> inputs) throws IOException {
+        PriorityQueue<RunHead> queue = new PriorityQueue<>(Math.max(1, inputs.size()), (a, b) -> this.rowOrder.compare(a.row, b.row));
+        for (SpillFile input : inputs) {
+            RunHead head = new RunHead(input.openReader());
+            head.row = head.reader.read();
+            if (head.row != null) queue.add(head);
+            else head.reader.close();
+        }
+        return queue;
+    }
+
+    /**
+     * Closes the readers of the runs being merged.
+     */
+    private void closeHeads() {
+        if (this.heads == null) return;
+        for (RunHead head : this.heads) {
+            try {
+                head.reader.close();
+            } catch (IOException e) {
+                // The run is read again from the start after the reset
+            }
+        }
+        this.heads = null;
+    }
+
+    /**
+     * The reader of a run and its next tuple, ordered in the merge by that tuple.
+     */
+    private static class RunHead {
+        private final SpillFile.Reader reader;
+        private long[] row;
+
+        private RunHead(SpillFile.Reader reader) {
+            this.reader = reader;
+        }
+    }
+}
@@ -0,0 +1,295 @@
+/**
+ * The FactorizedJoinOperator class represents the join of the atoms of an acyclic query, below a projection, as a
+ * factorized representation over a join forest of the atoms: the tuples of every atom are grouped by the variables it
+ * shares with its parent, in a hash table chaining the tuples of a group, so a joined tuple is a choice of one tuple
+ * per atom within the group selected by its parent, and the values of a parent are stored once however many tuples of
+ * its children they join with.
+ * The atoms must be fully reduced by semi-joins, so that every group selected by a parent is non-empty; the joined
+ * tuples are then enumerated with constant expected delay, by advancing the choice of the deepest atom that has a next
+ * tuple and taking the first tuple of the groups of the atoms after it.
+ * Since the projection eliminates duplicates, the representation only holds the output variables: every tree of the
+ * forest is rooted at an atom holding an output variable, the subtrees without output variables are dropped, as every
+ * tuple of their parents extends into them, and the tuples of the other atoms are restricted to their output variables
+ * and the variables they share with the kept atoms, without duplicates.
+ * The representation is built on the first call and kept across resets.
+ */
+
+package ed.inf.adbs.minibase.operator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class FactorizedJoinOperator extends Operator {
+    // Projections over acyclic joins are computed over the flat join instead when -Dminibase.join.flat is set
+    public static final boolean ENABLED = !Boolean.getBoolean("minibase.join.flat");
+
+    private final List<Operator> atomOperators;
+    // The kept atoms, ordered so that every parent comes before its children
+    private final List<Integer> order = new ArrayList<>();
+    // The variables bound by the kept atoms, and the position of every output variable among them
+    private final List<String> boundVars = new ArrayList<>();
+    private final int[] outputPositions;
+    // For every kept atom, in order: the columns of its stored tuples, the first ones shared with its parent, the
+    // positions of the bound variables they hold, those of its shared ones, and the position of its parent in the order
+    // or -1 for the roots
+    private final List<int[]> storedColumns = new ArrayList<>();
+    private final int[] sharedCount;
+    private final List<int[]> boundPositions = new ArrayList<>();
+    private final List<int[]> probePositions = new ArrayList<>();
+    private final int[] parentOf;
+    private boolean built = false;
+    private boolean empty = false;
+    // For every kept atom: its stored tuples, indexed by the variables shared with its parent
+    private JoinHashTable[] tables;
+    // The enumeration state: the current and next tuple of every kept atom in its group, and the values of the bound
+    // variables
+    private int[] cursor;
+    private int[] successor;
+    private long[] binding;
+    private boolean started = false;
+    private boolean finished = false;
+    private Batch output = null;
+
+    /**
+     * Constructs a FactorizedJoinOperator over the reduced atoms of an acyclic query.
+     *
+     * @param atomOperators the operators producing the reduced tuples of the atoms
+     * @param parent the index of the parent of every atom in a join forest of the atoms, or -1 for the roots
+     * @param outputVars the variables of the output tuples, held by the atoms
+     */
+    public FactorizedJoinOperator(List<Operator> atomOperators, int[] parent, List<String> outputVars) {
+        this.atomOperators = atomOperators;
+        int n = atomOperators.size();
+        boolean[] holdsOutput = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            for (String var : outputVars) holdsOutput[i] |= atomOperators.get(i).getVarsName().contains(var);
+        }
+
+        // Root every tree at its first atom holding an output variable, and order its atoms from that root
+        List<List<Integer>> neighbours = new ArrayList<>();
+        for (int i = 0; i < n; i++) neighbours.add(new ArrayList<>());
+        for (int i = 0; i < n; i++) {
+            if (parent[i] < 0) continue;
+            neighbours.get(i).add(parent[i]);
+            neighbours.get(parent[i]).add(i);
+        }
+        int[] rooted = new int[n];
+        Arrays.fill(rooted, -2);
+        List<Integer> topDown = new ArrayList<>();
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < n; i++) {
+                if (rooted[i] != -2 || (pass == 0 && !holdsOutput[i])) continue;
+                rooted[i] = -1;
+                int from = topDown.size();
+                topDown.add(i);
+                for (int k = from; k < topDown.size(); k++) {
+                    for (int next : neighbours.get(topDown.get(k))) {
+                        if (rooted[next] != -2) continue;
+                        rooted[next] = topDown.get(k);
+                        topDown.add(next);
+                    }
+                }
+            }
+        }
+
+        // Keep the atoms whose subtree holds an output variable
+        boolean[] kept = new boolean[n];
+        for (int k = n - 1; k >= 0; k--) {
+            int atom = topDown.get(k);
+            kept[atom] |= holdsOutput[atom];
+            if (kept[atom] && rooted[atom] >= 0) kept[rooted[atom]] = true;
+        }
+        for (int atom : topDown) {
+            if (kept[atom]) this.order.add(atom);
+        }
+
+        // Every kept atom stores its variables shared with its parent, then its output variables and its variables
+        // shared with its kept children that are not bound yet
+        int m = this.order.size();
+        this.sharedCount = new int[m];
+        this.parentOf = new int[m];
+        for (int k = 0; k < m; k++) {
+            int atom = this.order.get(k);
+            List<String> atomVars = atomOperators.get(atom).getVarsName();
+            this.parentOf[k] = rooted[atom] < 0 ? -1 : this.order.indexOf(rooted[atom]);
+            List<String> parentVars = rooted[atom] < 0 ? new ArrayList<>() : atomOperators.get(rooted[atom]).getVarsName();
+            List<String> stored = new ArrayList<>();
+            for (String var : atomVars) {
+                if (var != null && !stored.contains(var) && parentVars.contains(var)) stored.add(var);
+            }
+            this.sharedCount[k] = stored.size();
+            for (String var : atomVars) {
+                if (var == null || stored.contains(var)) continue;
+                boolean needed = outputVars.contains(var);
+                for (int child = 0; child < n && !needed; child++) {
+                    needed = kept[child] && rooted[child] == atom && atomOperators.get(child).getVarsName().contains(var);
+                }
+                if (needed) stored.add(var);
+            }
+            int[] columns = new int[stored.size()];
+            int[] positions = new int[stored.size()];
+            for (int j = 0; j < stored.size(); j++) {
+                columns[j] = atomVars.indexOf(stored.get(j));
+                if (!this.boundVars.contains(stored.get(j))) this.boundVars.add(stored.get(j));
+                positions[j] = this.boundVars.indexOf(stored.get(j));
+            }
+            this.storedColumns.add(columns);
+            this.boundPositions.add(positions);
+            this.probePositions.add(Arrays.copyOf(positions, this.sharedCount[k]));
+        }
+
+        this.outputPositions = new int[outputVars.size()];
+        for (int j = 0; j < outputVars.size(); j++) {
+            String var = outputVars.get(j);
+            this.outputPositions[j] = this.boundVars.indexOf(var);
+            this.varsName.add(var);
+            for (Operator atomOperator : atomOperators) {
+                int column = atomOperator.getVarsName().indexOf(var);
+                if (column < 0) continue;
+                this.varsType.add(atomOperator.getVarsType().get(column));
+                break;
+            }
+        }
+    }
+
+    /**
+     * Checks whether the representation leaves out some atoms, whose subtrees hold no output variable.
+     *
+     * @return true if fewer atoms are enumerated than joined
+     */
+    public boolean dropsAtoms() {
+        return this.order.size() < this.atomOperators.size();
+    }
+
+    /**
+     * Rewinds to the first joined tuple. The representation is kept.
+     */
+    @Override
+    public void reset() {
+        this.started = false;
+        this.finished = false;
+        resetTupleBatch();
+    }
+
+    /**
+     * Returns the next joined tuple, restricted to the output variables.
+     *
+     * @return the next tuple, or null if there are no more tuples
+     */
+    @Override
+    public Tuple getNextTuple() {
+        return nextTupleFromBatches();
+    }
+
+    /**
+     * Returns the next batch of joined tuples, restricted to the output variables.
+     *
+     * @return the next batch, or null if there are no more tuples
+     */
+    @Override
+    public Batch getNextBatch() {
+        if (!this.built) build();
+        if (this.output == null) this.output = new Batch(this.outputPositions.length);
+        this.output.clear();
+        int size = 0;
+        while (size < this.output.getCapacity() && advance()) {
+            for (int j = 0; j < this.outputPositions.length; j++) {
+                this.output.getColumn(j)[size] = this.binding[this.outputPositions[j]];
+            }
+            size++;
+        }
+        this.output.setSize(size);
+        return size == 0 ? null : this.output;
+    }
+
+    /**
+     * Moves to the next joined tuple, by advancing the deepest kept atom that has a next tuple in its group and
+     * selecting the first tuple of the groups of the atoms after it.
+     *
+     * @return true if there is a next tuple, bound in the bound variables
+     */
+    private boolean advance() {
+        if (this.finished || this.empty) return false;
+        if (!this.started) {
+            this.started = true;
+            openFrom(0);
+            return true;
+        }
+        int k = this.order.size() - 1;
+        while (k >= 0 && this.successor[k] < 0) k--;
+        // Without kept atoms, the join has a single empty tuple
+        if (k < 0) {
+            this.finished = true;
+            return false;
+        }
+        select(k, this.successor[k]);
+        openFrom(k + 1);
+        return true;
+    }
+
+    /**
+     * Selects the first tuple of the group of every kept atom from a position of the order on, given the tuples
+     * selected before it.
+     *
+     * @param from the position of the first atom
+     */
+    private void openFrom(int from) {
+        for (int k = from; k < this.order.size(); k++) select(k, this.tables[k].first(this.binding, this.probePositions.get(k)));
+    }
+
+    /**
+     * Selects a tuple of a kept atom, writes its values into the bound variables and finds the next tuple of its group.
+     *
+     * @param k the position of the atom in the order
+     * @param row the number of the tuple in the table of the atom
+     */
+    private void select(int k, int row) {
+        long[] values = this.tables[k].getRow(row);
+        int[] positions = this.boundPositions.get(k);
+        for (int j = this.sharedCount[k]; j < positions.length; j++) this.binding[positions[j]] = values[j];
+        this.cursor[k] = row;
+        this.successor[k] = this.tables[k].next(row, this.binding, this.probePositions.get(k));
+    }
+
+    /**
+     * Reads the kept atoms into their groups, and checks that no dropped atom is empty.
+     */
+    private void build() {
+        this.built = true;
+        int m = this.order.size();
+        for (int atom = 0; atom < this.atomOperators.size(); atom++) {
+            if (this.order.contains(atom)) continue;
+            Batch batch = this.atomOperators.get(atom).getNextBatch();
+            if (batch == null) this.empty = true;
+        }
+        this.tables = new JoinHashTable[m];
+        for (int k = 0; k < m; k++) {
+            Operator atomOperator = this.atomOperators.get(this.order.get(k));
+            int[] columns = this.storedColumns.get(k);
+            int[] keyColumns = new int[this.sharedCount[k]];
+            for (int j = 0; j < keyColumns.length; j++) keyColumns[j] = j;
+            this.tables[k] = new JoinHashTable(keyColumns);
+            // Tuples restricted to fewer columns than the atom has may repeat, and are only stored once
+            GroupByHashTable distinct = columns.length < atomOperator.getVarsName().size() ? new GroupByHashTable() : null;
+            long[] values = new long[atomOperator.getVarsName().size()];
+            for (Batch batch = atomOperator.getNextBatch(); batch != null; batch = atomOperator.getNextBatch()) {
+                for (int i = 0; i < batch.getCount(); i++) {
+                    batch.copyRow(batch.rowAt(i), values);
+                    long[] row = new long[columns.length];
+                    for (int j = 0; j < columns.length; j++) row[j] = values[columns[j]];
+                    if (distinct == null) this.tables[k].add(row);
+                    else distinct.add(row, 0);
+                }
+            }
+            if (distinct != null) {
+                for (int g = 0; g < distinct.size(); g++) this.tables[k].add(distinct.getKey(g));
+            }
+            if (this.tables[k].size() == 0) this.empty = true;
+            this.tables[k].build();
+        }
+        this.cursor = new int[m];
+        this.successor = new int[m];
+        this.binding = new long[this.boundVars.size()];
+    }
+}
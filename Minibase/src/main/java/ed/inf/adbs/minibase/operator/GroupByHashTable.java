@@ -0,0 +1,147 @@
+/**
+ * The GroupByHashTable class accumulates a long sum per group of tuple slots.
+ * Groups are numbered in the order in which they are first seen; their keys and sums are stored in dense arrays
+ * indexed by group number, and an open-addressing table with linear probing maps the hash of a key to its group.
+ * The hash code of every group is kept next to its key, so probing compares the slots only when the hash codes match,
+ * and growing the table never recomputes a hash code.
+ * Every group also records an order, the smallest order given with its values, which parallel aggregation uses to
+ * return the merged groups in the order of the first row of each group.
+ */
+
+package ed.inf.adbs.minibase.operator;
+
+import java.util.Arrays;
+
+public class GroupByHashTable {
+    private static final int INITIAL_CAPACITY = 16;
+
+    // slots[i] holds the group number plus one, 0 for an empty slot
+    private int[] slots = new int[INITIAL_CAPACITY];
+    private int mask = INITIAL_CAPACITY - 1;
+    private long[][] keys = new long[INITIAL_CAPACITY / 2][];
+    private int[] hashes = new int[INITIAL_CAPACITY / 2];
+    private long[] sums = new long[INITIAL_CAPACITY / 2];
+    private long[] orders = new long[INITIAL_CAPACITY / 2];
+    private int groupCount = 0;
+
+    /**
+     * Adds a value to the sum of a group, creating the group with a zero sum if it does not exist.
+     * The key is copied when a group is created, so callers can reuse the same array for every row.
+     *
+     * @param key the slots identifying the group
+     * @param value the value to add
+     */
+    public void add(long[] key, long value) {
+        add(key, value, groupCount);
+    }
+
+    /**
+     * Adds a value to the sum of a group, creating the group with a zero sum if it does not exist,
+     * and lowers the order of the group to the given order if it is smaller.
+     *
+     * @param key the slots identifying the group
+     * @param value the value to add
+     * @param order the order of the value
+     */
+    public void add(long[] key, long value, long order) {
+        int hash = Arrays.hashCode(key);
+        int slot = mix(hash) & mask;
+        while (slots[slot] != 0) {
+            int group = slots[slot] - 1;
+            if (hashes[group] == hash && Arrays.equals(keys[group], key)) {
+                sums[group] += value;
+                if (order < orders[group]) orders[group] = order;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (groupCount == keys.length) {
+            grow();
+            slot = mix(hash) & mask;
+            while (slots[slot] != 0) slot = (slot + 1) & mask;
+        }
+        keys[groupCount] = key.clone();
+        hashes[groupCount] = hash;
+        sums[groupCount] = value;
+        orders[groupCount] = order;
+        slots[slot] = ++groupCount;
+    }
+
+    /**
+     * Returns the number of groups.
+     *
+     * @return the group count
+     */
+    public int size() {
+        return groupCount;
+    }
+
+    /**
+     * Returns the slots of a group.
+     *
+     * @param group the group number, in the order in which groups were first seen
+     * @return the slots identifying the group
+     */
+    public long[] getKey(int group) {
+        return keys[group];
+    }
+
+    /**
+     * Returns the sum of a group.
+     *
+     * @param group the group number, in the order in which groups were first seen
+     * @return the sum of the values added to the group
+     */
+    public long getSum(int group) {
+        return sums[group];
+    }
+
+    /**
+     * Returns the order of a group.
+     *
+     * @param group the group number, in the order in which groups were first seen
+     * @return the smallest order given with the values of the group
+     */
+    public long getOrder(int group) {
+        return orders[group];
+    }
+
+    /**
+     * Returns the hash code of the key of a group.
+     *
+     * @param group the group number, in the order in which groups were first seen
+     * @return the hash code of the slots identifying the group
+     */
+    public int getHash(int group) {
+        return hashes[group];
+    }
+
+    /**
+     * Doubles the capacity of the table, keeping it at most half full.
+     */
+    private void grow() {
+        keys = Arrays.copyOf(keys, keys.length * 2);
+        hashes = Arrays.copyOf(hashes, hashes.length * 2);
+        sums = Arrays.copyOf(sums, sums.length * 2);
+        orders = Arrays.copyOf(orders, orders.length * 2);
+        slots = new int[slots.length * 2];
+        mask = slots.length - 1;
+        for (int group = 0; group < groupCount; group++) {
+            int slot = mix(hashes[group]) & mask;
+            while (slots[slot] != 0) slot = (slot + 1) & mask;
+            slots[slot] = group + 1;
+        }
+    }
+
+    /**
+     * Spreads the bits of a hash code, so that keys whose hash codes differ only in their high bits
+     * do not fall in the same slot.
+     *
+     * @param hash the hash code
+     * @return the mixed hash code
+     */
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * The HashIndex class is a persistent hash index over a column of a relation file, for equality lookups.
+ * After the header, the file holds the number of buckets, a power of two, then the index of the first entry of every
+ * bucket, then the keys and the row offsets of the entries, grouped by bucket and in file order within a bucket.
+ * A lookup reads the entries of one bucket straight from the mapped file.
+ */
+
+package ed.inf.adbs.minibase.operator;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+public class HashIndex extends RelationIndex {
+    public static final String KIND = "hash";
+
+    private final int bucketCount;
+    private final int bucketsPosition;
+    private final int keysPosition;
+    private final int offsetsPosition;
+
+    /**
+     * Opens a hash index file.
+     *
+     * @param path the path of the index file
+     * @throws IOException if the file cannot be read or is not a hash index
+     */
+    public HashIndex(String path) throws IOException {
+        super(path, KIND);
+        this.bucketCount = this.buffer.getInt(HEADER_SIZE);
+        this.bucketsPosition = HEADER_SIZE + 4;
+        this.keysPosition = this.bucketsPosition + 4 * (this.bucketCount + 1);
+        this.offsetsPosition = this.keysPosition + 8 * this.entryCount;
+    }
+
+    /**
+     * Writes the buckets and entries of a hash index, after the header.
+     *
+     * @param out the stream of the index file
+     * @param keys the key of every row
+     * @param offsets the offset of every row
+     * @param count the number of rows
+     * @throws IOException if the file cannot be written
+     */
+    static void writeEntries(DataOutputStream out, long[] keys, long[] offsets, int count) throws IOException {
+        int bucketCount = Integer.highestOneBit(Math.max(1, count) * 2 - 1);
+        // Count the entries of every bucket, then place them with a stable counting sort
+        int[] starts = new int[bucketCount + 1];
+        for (int i = 0; i < count; i++) starts[bucket(keys[i], bucketCount) + 1]++;
+        for (int b = 0; b < bucketCount; b++) starts[b + 1] += starts[b];
+        int[] next = Arrays.copyOf(starts, bucketCount);
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) order[next[bucket(keys[i], bucketCount)]++] = i;
+
+        out.writeInt(bucketCount);
+        for (int start : starts) out.writeInt(start);
+        for (int i : order) out.writeLong(keys[i]);
+        for (int i : order) out.writeLong(offsets[i]);
+    }
+
+    /**
+     * Returns false, since a hash index only supports equality lookups.
+     *
+     * @return false
+     */
+    @Override
+    public boolean supportsRanges() {
+        return false;
+    }
+
+    /**
+     * Returns the offsets of the rows with the given key.
+     *
+     * @param low the key
+     * @param high the same key
+     * @return the offsets of the matching rows, in file order
+     */
+    @Override
+    public long[] lookup(long low, long high) {
+        if (low != high) throw new IllegalArgumentException("Hash indexes only support equality lookups");
+        int b = bucket(low, this.bucketCount);
+        int start = this.buffer.getInt(this.bucketsPosition + 4 * b);
+        int end = this.buffer.getInt(this.bucketsPosition + 4 * (b + 1));
+        long[] offsets = new long[end - start];
+        int count = 0;
+        for (int entry = start; entry < end; entry++) {
+            if (this.buffer.getLong(this.keysPosition + 8 * entry) == low)
+                offsets[count++] = this.buffer.getLong(this.offsetsPosition + 8 * entry);
+        }
+        return Arrays.copyOf(offsets, count);
+    }
+
+    /**
+     * Returns the bucket of a key.
+     *
+     * @param key the key
+     * @param bucketCount the number of buckets, a power of two
+     * @return the bucket number
+     */
+    private static int bucket(long key, int bucketCount) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & (bucketCount - 1);
+    }
+}
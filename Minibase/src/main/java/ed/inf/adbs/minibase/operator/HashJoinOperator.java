@@ -0,0 +1,151 @@
+/**
+ * The HashJoinOperator class represents an equi-join on the variables shared by its two children.
+ * The right child is read once into a hash table keyed by the shared-variable columns and is then probed
+ * with every tuple of the left child, so each child is scanned exactly once.
+ * Both children are read a batch at a time, and the joined rows are written to an output batch.
+ * In a parallel plan, the right child is replaced by a SharedBuild whose hash table is built once and probed by the
+ * join operators of every worker.
+ * It inherits the JoinOperator class, which computes the output variables and the remaining join conditions.
+ */
+
+package ed.inf.adbs.minibase.operator;
+
+import ed.inf.adbs.minibase.base.*;
+
+import java.util.List;
+import java.util.Map;
+
+public class HashJoinOperator extends JoinOperator {
+    // The memory the planner lets a hash table take before preferring joins that spill, configurable with -Dminibase.join.maxBytes
+    public static final long DEFAULT_MEMORY_BUDGET = Long.getLong("minibase.join.maxBytes", 256L * 1024 * 1024);
+
+    private final int[] leftKeyIndices;
+    private final int[] rightKeyIndices;
+    private JoinHashTable hashTable = null;
+    private Batch output = null;
+    private Batch probeBatch = null;
+    private int probeIndex = 0;
+    private final long[] probeRow;
+    private int match = -1;
+    private final SharedBuild sharedBuild;
+
+    /**
+     * Constructs a HashJoinOperator object that joins the tuples of the left and right child operators
+     * on their shared variables.
+     *
+     * @param leftChildOperator the left child operator, used to probe the hash table
+     * @param rightChildOperator the right child operator, used to build the hash table
+     * @param comparisonAtoms the list of comparison atoms for the join condition
+     */
+    public HashJoinOperator(Operator leftChildOperator, Operator rightChildOperator, List<ComparisonAtom> comparisonAtoms) {
+        this(leftChildOperator, rightChildOperator, comparisonAtoms, null);
+    }
+
+    /**
+     * Constructs a HashJoinOperator object that probes the hash table of a build side shared by parallel workers.
+     *
+     * @param leftChildOperator the left child operator, used to probe the hash table
+     * @param sharedBuild the shared build side
+     * @param comparisonAtoms the list of comparison atoms for the join condition
+     */
+    public HashJoinOperator(Operator leftChildOperator, SharedBuild sharedBuild, List<ComparisonAtom> comparisonAtoms) {
+        this(leftChildOperator, sharedBuild.getTemplate(), comparisonAtoms, sharedBuild);
+    }
+
+    private HashJoinOperator(Operator leftChildOperator, Operator rightChildOperator, List<ComparisonAtom> comparisonAtoms,
+                             SharedBuild sharedBuild) {
+        super(leftChildOperator, rightChildOperator, comparisonAtoms);
+        this.sharedBuild = sharedBuild;
+        this.leftKeyIndices = new int[this.joinConditionIndices.size()];
+        this.rightKeyIndices = new int[this.joinConditionIndices.size()];
+        int k = 0;
+        for (Map.Entry<Integer, Integer> entry : this.joinConditionIndices.entrySet()) {
+            this.leftKeyIndices[k] = entry.getKey();
+            this.rightKeyIndices[k++] = entry.getValue();
+        }
+        this.probeRow = new long[leftChildOperator.getVarsType().size()];
+    }
+
+    /**
+     * Resets the left child operator and the probe state. The hash table built from the right child is kept,
+     * since the right child produces the same tuples after a reset.
+     */
+    @Override
+    public void reset() {
+        this.leftChildOperator.reset();
+        this.probeBatch = null;
+        this.probeIndex = 0;
+        this.match = -1;
+        resetTupleBatch();
+    }
+
+    /**
+     * Returns the next tuple produced by probing the hash table with the tuples of the left child operator.
+     *
+     * @return the next joined tuple, or null if there are no more tuples
+     */
+    @Override
+    public Tuple getNextTuple() {
+        return nextTupleFromBatches();
+    }
+
+    /**
+     * Returns the sort order of the left child operator, which the join keeps, since the left child is read once
+     * in order and the right columns are appended after the left ones.
+     *
+     * @return the indices of the columns the tuples are sorted on
+     */
+    @Override
+    public int[] getSortOrder() {
+        return this.leftChildOperator.getSortOrder();
+    }
+
+    /**
+     * Returns the next batch of joined tuples, probing the hash table with the batches of the left child operator.
+     *
+     * @return the next batch of joined tuples, or null if there are no more tuples
+     */
+    @Override
+    public Batch getNextBatch() {
+        if (this.hashTable == null) build();
+        if (this.output == null) this.output = new Batch(this.varsType.size());
+        this.output.clear();
+
+        while (!this.output.isFull()) {
+            // Emit the remaining matches of the current probe row
+            if (this.match >= 0) {
+                long[] rightRow = this.hashTable.getRow(this.match);
+                if (valid(this.probeRow, rightRow)) this.output.addJoinedRow(this.probeRow, rightRow, this.rightOutputColumns);
+                this.match = this.hashTable.next(this.match, this.probeRow, this.leftKeyIndices);
+                continue;
+            }
+            if (this.probeBatch == null || this.probeIndex >= this.probeBatch.getCount()) {
+                this.probeBatch = this.leftChildOperator.getNextBatch();
+                this.probeIndex = 0;
+                if (this.probeBatch == null) break;
+            }
+            this.probeBatch.copyRow(this.probeBatch.rowAt(this.probeIndex++), this.probeRow);
+            this.match = this.hashTable.first(this.probeRow, this.leftKeyIndices);
+        }
+        return this.output.getSize() == 0 ? null : this.output;
+    }
+
+    /**
+     * Reads every tuple of the right child operator into the hash table, or takes the table of the shared build side.
+     */
+    private void build() {
+        if (this.sharedBuild != null) {
+            this.hashTable = this.sharedBuild.getHashTable(this.rightKeyIndices);
+            return;
+        }
+        this.hashTable = new JoinHashTable(this.rightKeyIndices);
+        Batch batch = this.rightChildOperator.getNextBatch();
+        while (batch != null) {
+            for (int i = 0; i < batch.getCount(); i++) {
+                this.hashTable.add(batch.getRow(batch.rowAt(i)));
+            }
+            batch = this.rightChildOperator.getNextBatch();
+        }
+        this.hashTable.build();
+    }
+}
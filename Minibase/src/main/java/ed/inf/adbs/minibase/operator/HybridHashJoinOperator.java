@@ -0,0 +1,378 @@
+/**
+ * The HybridHashJoinOperator class represents an equi-join on the variables shared by its two children, computed by
+ * a hybrid hash join that stays within a memory budget. The tuples of the right child are split into partitions by
+ * the hash of their join columns. While the resident partitions fit in the budget they are kept in memory; beyond it,
+ * the largest resident partition is written to a temporary file, along with its later tuples. The left child is then
+ * read once: tuples of resident partitions probe an in-memory hash table, and the others are written to the file of
+ * their partition. Every spilled pair of partitions is joined afterwards by the same algorithm with a different hash,
+ * so partitions that are still too large are split again, down to a maximum depth where they are joined in memory.
+ * The partitions of the right child are kept across resets, since the right child produces the same tuples after a reset.
+ * It inherits the JoinOperator class, which computes the output variables and the remaining join conditions.
+ */
+
+package ed.inf.adbs.minibase.operator;
+
+import ed.inf.adbs.minibase.base.ComparisonAtom;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+public class HybridHashJoinOperator extends JoinOperator {
+    // The number of partitions the tuples of a pass are split into
+    private static final int PARTITION_BITS = 5;
+    private static final int PARTITIONS = 1 << PARTITION_BITS;
+    // The deepest pass; its partitions are joined in memory whatever their size, since equal keys cannot be split
+    private static final int MAX_LEVEL = 4;
+
+    private final int[] leftKeyIndices;
+    private final int[] rightKeyIndices;
+    private final long memoryBudget;
+    private final long[] childRow;
+    private long[] probeRow;
+    private Batch output = null;
+    private Batch probeBatch = null;
+    private int probeIndex = 0;
+    private int match = -1;
+    // The partitions of the right child, and the pass being probed
+    private Pass rootPass = null;
+    private Pass pass = null;
+    // The spilled partitions being probed, or null while the left child is probed
+    private SpillFile probeFile = null;
+    private SpillFile.Reader probeReader = null;
+    private final Deque<PartitionPair> pending = new ArrayDeque<>();
+    private boolean finished = false;
+
+    /**
+     * Constructs a HybridHashJoinOperator with the default memory budget of hash joins.
+     *
+     * @param leftChildOperator the left (probe) child operator
+     * @param rightChildOperator the right (build) child operator
+     * @param comparisonAtoms the list of comparison atoms for the join condition
+     */
+    public HybridHashJoinOperator(Operator leftChildOperator, Operator rightChildOperator, List<ComparisonAtom> comparisonAtoms) {
+        this(leftChildOperator, rightChildOperator, comparisonAtoms, HashJoinOperator.DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     * Constructs a HybridHashJoinOperator.
+     *
+     * @param leftChildOperator the left (probe) child operator
+     * @param rightChildOperator the right (build) child operator
+     * @param comparisonAtoms the list of comparison atoms for the join condition
+     * @param memoryBudget the estimated memory allowed for the resident tuples of the right child, in bytes
+     */
+    public HybridHashJoinOperator(Operator leftChildOperator, Operator rightChildOperator, List<ComparisonAtom> comparisonAtoms,
+                                  long memoryBudget) {
+        super(leftChildOperator, rightChildOperator, comparisonAtoms);
+        this.leftKeyIndices = new int[this.joinConditionIndices.size()];
+        this.rightKeyIndices = new int[this.joinConditionIndices.size()];
+        int k = 0;
+        for (Map.Entry<Integer, Integer> entry : this.joinConditionIndices.entrySet()) {
+            this.leftKeyIndices[k] = entry.getKey();
+            this.rightKeyIndices[k++] = entry.getValue();
+        }
+        this.memoryBudget = memoryBudget;
+        this.childRow = new long[leftChildOperator.getVarsType().size()];
+    }
+
+    /**
+     * Resets the left child operator and deletes the spilled tuples of the left child.
+     * The partitions of the right child are kept.
+     */
+    @Override
+    public void reset() {
+        this.leftChildOperator.reset();
+        closeProbeFile();
+        for (PartitionPair pair : this.pending) pair.delete();
+        this.pending.clear();
+        if (this.pass != null && this.pass != this.rootPass) this.pass.delete();
+        if (this.rootPass != null) this.rootPass.deleteProbeSpills();
+        this.pass = this.rootPass;
+        this.probeBatch = null;
+        this.probeIndex = 0;
+        this.match = -1;
+        this.finished = false;
+        resetTupleBatch();
+    }
+
+    /**
+     * Returns the next tuple produced by the hybrid hash join.
+     *
+     * @return the next joined tuple, or null if there are no more tuples
+     */
+    @Override
+    public Tuple getNextTuple() {
+        return nextTupleFromBatches();
+    }
+
+    /**
+     * Returns the next batch of joined tuples, probing the resident partitions with the left child first,
+     * and then joining the spilled partitions one pair at a time.
+     *
+     * @return the next batch of joined tuples, or null if there are no more tuples
+     */
+    @Override
+    public Batch getNextBatch() {
+        if (this.finished) return null;
+        if (this.output == null) this.output = new Batch(this.varsType.size());
+        this.output.clear();
+        try {
+            if (this.rootPass == null) {
+                this.rootPass = partition(this.rightChildOperator, null, 0);
+                this.pass = this.rootPass;
+            }
+            while (!this.output.isFull()) {
+                // Emit the remaining matches of the current probe row
+                if (this.match >= 0) {
+                    long[] rightRow = this.pass.table.getRow(this.match);
+                    if (valid(this.probeRow, rightRow)) this.output.addJoinedRow(this.probeRow, rightRow, this.rightOutputColumns);
+                    this.match = this.pass.table.next(this.match, this.probeRow, this.leftKeyIndices);
+                    continue;
+                }
+                if (nextProbeRow()) {
+                    this.match = this.pass.probe(this.probeRow);
+                    continue;
+                }
+                // The pass is over: join the next pair of spilled partitions
+                this.pass.finishProbe();
+                PartitionPair pair = this.pending.poll();
+                if (pair == null) {
+                    this.pass = this.rootPass;
+                    this.finished = true;
+                    break;
+                }
+                this.pass = partition(null, pair.build, pair.level);
+                if (pair.level > 1) pair.build.delete();
+                this.probeFile = pair.probe;
+                this.probeReader = pair.probe.openReader();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this.output.getSize() == 0 ? null : this.output;
+    }
+
+    /**
+     * Reads the next probe row of the current pass, from the left child or from a spilled partition.
+     *
+     * @return true if a row was read into probeRow, false if the probe side of the pass is exhausted
+     * @throws IOException if a spilled partition cannot be read
+     */
+    private boolean nextProbeRow() throws IOException {
+        if (this.probeReader != null) {
+            this.probeRow = this.probeReader.read();
+            if (this.probeRow != null) return true;
+            closeProbeFile();
+            return false;
+        }
+        if (this.pass != this.rootPass) return false;
+        while (this.probeBatch == null || this.probeIndex >= this.probeBatch.getCount()) {
+            this.probeBatch = this.leftChildOperator.getNextBatch();
+            this.probeIndex = 0;
+            if (this.probeBatch == null) return false;
+        }
+        this.probeBatch.copyRow(this.probeBatch.rowAt(this.probeIndex++), this.childRow);
+        this.probeRow = this.childRow;
+        return true;
+    }
+
+    /**
+     * Closes and deletes the spilled partition being probed.
+     */
+    private void closeProbeFile() {
+        if (this.probeReader == null) return;
+        try {
+            this.probeReader.close();
+        } catch (IOException e) {
+            // The file is deleted anyway
+        }
+        this.probeFile.delete();
+        this.probeReader = null;
+        this.probeFile = null;
+    }
+
+    /**
+     * Reads the build side of a pass into partitions, spilling the largest ones while the resident ones exceed the budget.
+     *
+     * @param child the right child operator for the first pass, or null
+     * @param file the spilled build partition for the later passes, or null
+     * @param level the depth of the pass, 0 for the first pass
+     * @return the pass, ready to be probed
+     * @throws IOException if a partition cannot be read or written
+     */
+    private Pass partition(Operator child, SpillFile file, int level) throws IOException {
+        Pass newPass = new Pass(level);
+        if (file != null) {
+            SpillFile.Reader reader = file.openReader();
+            for (long[] row = reader.read(); row != null; row = reader.read()) newPass.addBuildRow(row);
+            reader.close();
+        } else {
+            for (Batch batch = child.getNextBatch(); batch != null; batch = child.getNextBatch()) {
+                for (int i = 0; i < batch.getCount(); i++) newPass.addBuildRow(batch.getRow(batch.rowAt(i)));
+            }
+        }
+        newPass.finishBuild();
+        return newPass;
+    }
+
+    /**
+     * Returns the partition of a row in a pass, from the high bits of a hash of its join columns salted by the depth
+     * of the pass, so that every pass splits the partition of the previous one differently.
+     *
+     * @param row the slots of the row
+     * @param keyColumns the indices of the join columns in the row
+     * @param level the depth of the pass
+     * @return the partition number
+     */
+    private static int partitionOf(long[] row, int[] keyColumns, int level) {
+        long hash = (JoinHashTable.hash(row, keyColumns) + ((long) level << 32)) * 0xC2B2AE3D27D4EB4FL;
+        return (int) (hash >>> (64 - PARTITION_BITS));
+    }
+
+    /**
+     * One partitioning pass of the join: the hash table of its resident build partitions,
+     * and the files of its spilled build and probe partitions.
+     */
+    private class Pass {
+        private final int level;
+        private final List<List<long[]>> resident = new ArrayList<>(PARTITIONS);
+        private final long[] residentBytes = new long[PARTITIONS];
+        private long totalBytes = 0;
+        private final SpillFile[] buildSpills = new SpillFile[PARTITIONS];
+        private SpillFile[] probeSpills = new SpillFile[PARTITIONS];
+        private JoinHashTable table;
+
+        private Pass(int level) {
+            this.level = level;
+            for (int p = 0; p < PARTITIONS; p++) this.resident.add(new ArrayList<>());
+        }
+
+        /**
+         * Adds a row of the build side to its partition, spilling partitions while the resident ones exceed the budget.
+         */
+        private void addBuildRow(long[] row) throws IOException {
+            int p = partitionOf(row, rightKeyIndices, this.level);
+            if (this.buildSpills[p] != null) {
+                this.buildSpills[p].write(row);
+                return;
+            }
+            this.resident.get(p).add(row);
+            long size = DatabaseCatalog.estimateRowSize(row);
+            this.residentBytes[p] += size;
+            this.totalBytes += size;
+            while (this.totalBytes > memoryBudget && this.level < MAX_LEVEL) {
+                if (!spillLargest()) break;
+            }
+        }
+
+        /**
+         * Writes the largest resident partition to a new file.
+         *
+         * @return false if there was no resident row to spill
+         */
+        private boolean spillLargest() throws IOException {
+            int largest = 0;
+            for (int p = 1; p < PARTITIONS; p++) {
+                if (this.residentBytes[p] > this.residentBytes[largest]) largest = p;
+            }
+            if (this.residentBytes[largest] == 0) return false;
+            SpillFile spill = new SpillFile();
+            for (long[] row : this.resident.get(largest)) spill.write(row);
+            this.buildSpills[largest] = spill;
+            this.resident.set(largest, new ArrayList<>());
+            this.totalBytes -= this.residentBytes[largest];
+            this.residentBytes[largest] = 0;
+            return true;
+        }
+
+        /**
+         * Builds the hash table of the resident partitions and closes the spilled ones.
+         */
+        private void finishBuild() throws IOException {
+            this.table = new JoinHashTable(rightKeyIndices);
+            for (int p = 0; p < PARTITIONS; p++) {
+                if (this.buildSpills[p] != null) this.buildSpills[p].finishWriting();
+                for (long[] row : this.resident.get(p)) this.table.add(row);
+            }
+            this.resident.clear();
+            this.table.build();
+        }
+
+        /**
+         * Probes the pass with a row of the probe side, writing it to its partition file if the partition was spilled.
+         *
+         * @return the number of the first matching row of the hash table, or -1 if there is none
+         */
+        private int probe(long[] row) throws IOException {
+            int p = partitionOf(row, leftKeyIndices, this.level);
+            if (this.buildSpills[p] == null) return this.table.first(row, leftKeyIndices);
+            if (this.probeSpills[p] == null) this.probeSpills[p] = new SpillFile();
+            this.probeSpills[p].write(row);
+            return -1;
+        }
+
+        /**
+         * Queues the spilled pairs of partitions that have tuples on both sides for the next passes. Below the first
+         * pass, the build partitions without probe tuples are deleted.
+         */
+        private void finishProbe() throws IOException {
+            for (int p = 0; p < PARTITIONS; p++) {
+                if (this.probeSpills[p] != null) {
+                    this.probeSpills[p].finishWriting();
+                    pending.add(new PartitionPair(this.buildSpills[p], this.probeSpills[p], this.level + 1));
+                } else if (this.buildSpills[p] != null && this.level > 0) {
+                    this.buildSpills[p].delete();
+                }
+            }
+            this.probeSpills = new SpillFile[PARTITIONS];
+        }
+
+        /**
+         * Deletes the probe partitions written so far.
+         */
+        private void deleteProbeSpills() {
+            for (int p = 0; p < PARTITIONS; p++) {
+                if (this.probeSpills[p] != null) this.probeSpills[p].delete();
+            }
+            this.probeSpills = new SpillFile[PARTITIONS];
+        }
+
+        /**
+         * Deletes all files of a pass below the first one that has not finished probing.
+         */
+        private void delete() {
+            deleteProbeSpills();
+            for (int p = 0; p < PARTITIONS; p++) {
+                if (this.buildSpills[p] != null && this.level > 0) this.buildSpills[p].delete();
+            }
+        }
+    }
+
+    /**
+     * A pair of spilled partitions waiting to be joined by a pass of the given depth.
+     */
+    private static class PartitionPair {
+        private final SpillFile build;
+        private final SpillFile probe;
+        private final int level;
+
+        private PartitionPair(SpillFile build, SpillFile probe, int level) {
+            this.build = build;
+            this.probe = probe;
+            this.level = level;
+        }
+
+        /**
+         * Deletes the files of the pair, except build partitions of the first pass, which are kept across resets.
+         */
+        private void delete() {
+            this.probe.delete();
+            if (this.level > 1) this.build.delete();
+        }
+    }
+}
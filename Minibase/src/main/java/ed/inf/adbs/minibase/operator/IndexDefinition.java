@@ -0,0 +1,86 @@
+/**
+ * The IndexDefinition class describes an index registered in the catalog: the indexed relation and column,
+ * and the kind of index. Definitions are stored one per line in the indexes.txt file of the database,
+ * as the relation name, the column index and the kind separated by spaces.
+ */
+
+package ed.inf.adbs.minibase.operator;
+
+public class IndexDefinition {
+    private final String relationName;
+    private final int column;
+    private final String kind;
+
+    /**
+     * Constructs an index definition.
+     *
+     * @param relationName the name of the indexed relation
+     * @param column the index of the indexed column
+     * @param kind the kind of index, "hash" or "btree"
+     */
+    public IndexDefinition(String relationName, int column, String kind) {
+        this.relationName = relationName;
+        this.column = column;
+        this.kind = kind;
+    }
+
+    /**
+     * Parses a line of the indexes file.
+     *
+     * @param line the line, holding the relation name, the column index and the kind
+     * @return the index definition
+     */
+    public static IndexDefinition parse(String line) {
+        String[] fields = line.trim().split("\\s+");
+        if (fields.length != 3) throw new IllegalArgumentException("Malformed index definition: " + line);
+        return new IndexDefinition(fields[0], Integer.parseInt(fields[1]), fields[2]);
+    }
+
+    /**
+     * Returns the line of the indexes file describing the index.
+     *
+     * @return the relation name, the column index and the kind separated by spaces
+     */
+    public String toLine() {
+        return relationName + " " + column + " " + kind;
+    }
+
+    /**
+     * Returns the name of the indexed relation.
+     *
+     * @return the relation name
+     */
+    public String getRelationName() {
+        return relationName;
+    }
+
+    /**
+     * Returns the index of the indexed column.
+     *
+     * @return the column index
+     */
+    public int getColumn() {
+        return column;
+    }
+
+    /**
+     * Returns the kind of index.
+     *
+     * @return "hash" or "btree"
+     */
+    public String getKind() {
+        return kind;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof IndexDefinition)) return false;
+        IndexDefinition other = (IndexDefinition) obj;
+        return relationName.equals(other.relationName) && column == other.column && kind.equals(other.kind);
+    }
+
+    @Override
+    public int hashCode() {
+        return toLine().hashCode();
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * The IndexNestedLoopJoinOperator class represents an equi-join that looks up the inner relation through an index.
+ * For every tuple of the left child, the key of its join column is set as the range of the IndexScanOperator below
+ * the right child, which is then reset and read, so only the inner rows that share the key are fetched. Each pair is
+ * checked against all shared variables and comparison atoms, since the index only matches one of them and may return
+ * false matches on string columns.
+ * It inherits the JoinOperator class, which computes the output variables and the join conditions.
+ */
+
+package ed.inf.adbs.minibase.operator;
+
+import ed.inf.adbs.minibase.base.ComparisonAtom;
+
+import java.util.List;
+
+public class IndexNestedLoopJoinOperator extends JoinOperator {
+    private final IndexScanOperator indexScan;
+    private final int leftKeyColumn;
+    private final RelationIndex index;
+
+    /**
+     * Constructs an IndexNestedLoopJoinOperator object.
+     *
+     * @param leftChildOperator the left (outer) child operator
+     * @param rightChildOperator the right (inner) child operator, reading its rows from indexScan
+     * @param indexScan the index scan of the inner relation
+     * @param comparisonAtoms the list of comparison atoms for the join condition
+     */
+    public IndexNestedLoopJoinOperator(Operator leftChildOperator, Operator rightChildOperator, IndexScanOperator indexScan,
+                                       List<ComparisonAtom> comparisonAtoms) {
+        super(leftChildOperator, rightChildOperator, comparisonAtoms);
+        this.indexScan = indexScan;
+        this.index = indexScan.getIndex();
+        String keyVar = indexScan.getVarsName().get(this.index.getColumn());
+        this.leftKeyColumn = this.leftVarsName.indexOf(keyVar);
+        if (this.leftKeyColumn < 0) throw new IllegalArgumentException("The indexed variable is not a join variable: " + keyVar);
+    }
+
+    /**
+     * Resets the outer child operator and the current outer tuple.
+     */
+    @Override
+    public void reset() {
+        this.leftChildOperator.reset();
+        this.leftTuple = null;
+    }
+
+    /**
+     * Returns the next tuple produced by joining an outer tuple with the inner rows found through the index.
+     *
+     * @return the next joined tuple, or null if there are no more tuples
+     */
+    @Override
+    public Tuple getNextTuple() {
+        while (true) {
+            if (this.leftTuple == null) {
+                this.leftTuple = this.leftChildOperator.getNextTuple();
+                if (this.leftTuple == null) return null;
+                long key = this.index.key(this.leftTuple.getValues()[this.leftKeyColumn]);
+                this.indexScan.setRange(key, key);
+                this.rightChildOperator.reset();
+            }
+            Tuple rightTuple = this.rightChildOperator.getNextTuple();
+            if (rightTuple == null) {
+                this.leftTuple = null;
+                continue;
+            }
+            if (satisfiesJoinCondition(this.leftTuple, rightTuple)) return joinTuples(this.leftTuple, rightTuple);
+        }
+    }
+
+    /**
+     * Returns the sort order of the left child operator, which the join keeps, since the left child is read once
+     * in order and the right columns are appended after the left ones.
+     *
+     * @return the indices of the columns the tuples are sorted on
+     */
+    @Override
+    public int[] getSortOrder() {
+        return this.leftChildOperator.getSortOrder();
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * This class represents a Scan Operator that reads only the rows of a relation located through a secondary index,
+ * those whose indexed column has a key within a range. Rows are read from the relation file at the offsets returned
+ * by the index, in increasing order of key, and have the same columns as the rows of a ScanOperator.
+ * The key range can be changed between resets, which lets an IndexNestedLoopJoinOperator look up the rows matching
+ * each outer tuple. The index may return rows that do not satisfy the predicates it was chosen for, such as string
+ * values with the same hash code, so a SelectOperator is always applied to its output.
+ */
+
+package ed.inf.adbs.minibase.operator;
+
+import ed.inf.adbs.minibase.base.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+public class IndexScanOperator extends Operator {
+    private final String relationName;
+    private final List<String> schema;
+    private final RelationIndex index;
+    private CsvRelationReader reader = null;
+    private long low;
+    private long high;
+    private long[] offsets = null;
+    private int nextOffset = 0;
+
+    /**
+     * Constructs an IndexScanOperator reading the rows whose key lies in a range.
+     *
+     * @param atom the RelationalAtom to scan.
+     * @param index the index of a column of the relation.
+     * @param low the smallest key, inclusive.
+     * @param high the largest key, inclusive.
+     */
+    public IndexScanOperator(RelationalAtom atom, RelationIndex index, long low, long high) {
+        for (Term term : atom.getTerms()) {
+            if (term instanceof Variable) this.varsName.add(((Variable) term).getName());
+            else this.varsName.add(null);
+        }
+        this.relationName = atom.getName();
+        this.schema = DatabaseCatalog.getInstance().getSchema(this.relationName);
+        this.varsType.addAll(this.schema);
+        this.index = index;
+        this.low = low;
+        this.high = high;
+    }
+
+    /**
+     * Returns the index read by the scan.
+     *
+     * @return the index of a column of the relation.
+     */
+    public RelationIndex getIndex() {
+        return this.index;
+    }
+
+    /**
+     * Sets the range of keys returned after the next reset.
+     *
+     * @param low the smallest key, inclusive.
+     * @param high the largest key, inclusive.
+     */
+    public void setRange(long low, long high) {
+        this.low = low;
+        this.high = high;
+    }
+
+    /**
+     * Returns the indexed column when the index returns rows in increasing order of value, that is, when it is
+     * a B+tree on an integer column; string keys are hash codes, whose order is not the order of the slots.
+     *
+     * @return the indices of the columns the tuples are sorted on
+     */
+    @Override
+    public int[] getSortOrder() {
+        int column = this.index.getColumn();
+        if (this.index.supportsRanges() && this.schema.get(column).equals("int")) return new int[]{column};
+        return new int[0];
+    }
+
+    /**
+     * Resets the operator to the first row of its key range. The index is looked up when the next tuple is requested.
+     */
+    @Override
+    public void reset() {
+        this.offsets = null;
+        this.nextOffset = 0;
+    }
+
+    /**
+     * Returns the next row of the key range, or null if there are no more tuples.
+     *
+     * @return the next tuple of the key range, or null if there are no more tuples.
+     */
+    @Override
+    public Tuple getNextTuple() {
+        if (this.offsets == null) this.offsets = this.index.lookup(this.low, this.high);
+        if (this.nextOffset >= this.offsets.length) return null;
+        try {
+            if (this.reader == null) {
+                this.reader = new CsvRelationReader(DatabaseCatalog.getInstance().getRelationPath(this.relationName), this.schema);
+            }
+            this.reader.seek(this.offsets[this.nextOffset++]);
+            return new Tuple(this.reader.nextRow());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * The IntFilterKernel class evaluates comparisons on int columns over whole batches without branches.
+ * For two int values a and b, the sign bits of a - b and b - a tell whether a < b and whether a > b, and every
+ * comparison operator is a fixed linear combination of these two bits. A kernel first computes a match mask for all
+ * rows of a batch in one loop with the same arithmetic for every operator and row, which the JIT compiler can unroll
+ * and compile to SIMD instructions, and then compacts the matching rows into the selection vector.
+ * The operands must be in the int range, which holds for int columns and constants, so the subtractions never overflow.
+ * The kernels are used by the compiled int predicates unless -Dminibase.filter.scalar is set, in which case the
+ * predicates evaluate each row with a comparison and a branch.
+ */
+
+package ed.inf.adbs.minibase.operator;
+
+import ed.inf.adbs.minibase.base.ComparisonOperator;
+
+public final class IntFilterKernel {
+    public static final boolean ENABLED = !Boolean.getBoolean("minibase.filter.scalar");
+
+    private IntFilterKernel() {
+    }
+
+    /**
+     * Keeps the rows of a batch whose column value v satisfies "v op constant".
+     *
+     * @param batch the batch to filter
+     * @param op the comparison operator
+     * @param column the index of the int column
+     * @param constant the int constant
+     * @param mask a scratch array with at least as many entries as the batch capacity
+     */
+    public static void filterConstant(Batch batch, ComparisonOperator op, int column, long constant, int[] mask) {
+        long[] values = batch.getColumn(column);
+        int base = base(op), lessFactor = lessFactor(op), greaterFactor = greaterFactor(op);
+        int[] selection = batch.getSelection();
+        int count = batch.getCount();
+        if (batch.isAllSelected()) {
+            for (int i = 0; i < count; i++) {
+                long difference = values[i] - constant;
+                mask[i] = base + lessFactor * (int) (difference >>> 63) + greaterFactor * (int) (-difference >>> 63);
+            }
+            batch.select(compact(mask, count, selection));
+        } else {
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                int row = selection[i];
+                long difference = values[row] - constant;
+                selection[kept] = row;
+                kept += base + lessFactor * (int) (difference >>> 63) + greaterFactor * (int) (-difference >>> 63);
+            }
+            batch.select(kept);
+        }
+    }
+
+    /**
+     * Keeps the rows of a batch whose column values v1 and v2 satisfy "v1 op v2".
+     *
+     * @param batch the batch to filter
+     * @param op the comparison operator
+     * @param column1 the index of the first int column
+     * @param column2 the index of the second int column
+     * @param mask a scratch array with at least as many entries as the batch capacity
+     */
+    public static void filterColumns(Batch batch, ComparisonOperator op, int column1, int column2, int[] mask) {
+        long[] values1 = batch.getColumn(column1);
+        long[] values2 = batch.getColumn(column2);
+        int base = base(op), lessFactor = lessFactor(op), greaterFactor = greaterFactor(op);
+        int[] selection = batch.getSelection();
+        int count = batch.getCount();
+        if (batch.isAllSelected()) {
+            for (int i = 0; i < count; i++) {
+                long difference = values1[i] - values2[i];
+                mask[i] = base + lessFactor * (int) (difference >>> 63) + greaterFactor * (int) (-difference >>> 63);
+            }
+            batch.select(compact(mask, count, selection));
+        } else {
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                int row = selection[i];
+                long difference = values1[row] - values2[row];
+                selection[kept] = row;
+                kept += base + lessFactor * (int) (difference >>> 63) + greaterFactor * (int) (-difference >>> 63);
+            }
+            batch.select(kept);
+        }
+    }
+
+    /**
+     * Writes the indices of the rows whose mask is 1 to the selection vector, without branches.
+     *
+     * @param mask the match mask, 0 or 1 per row
+     * @param count the number of rows
+     * @param selection the selection vector
+     * @return the number of matching rows
+     */
+    private static int compact(int[] mask, int count, int[] selection) {
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            selection[kept] = i;
+            kept += mask[i];
+        }
+        return kept;
+    }
+
+    /**
+     * Returns the mask of a comparison when its operands are equal.
+     */
+    private static int base(ComparisonOperator op) {
+        return op == ComparisonOperator.EQ || op == ComparisonOperator.LEQ || op == ComparisonOperator.GEQ ? 1 : 0;
+    }
+
+    /**
+     * Returns how the mask of a comparison changes from the equal case when the first operand is smaller.
+     */
+    private static int lessFactor(ComparisonOperator op) {
+        switch (op) {
+            case LT:
+            case NEQ:
+                return 1;
+            case GEQ:
+            case EQ:
+                return -1;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Returns how the mask of a comparison changes from the equal case when the first operand is greater.
+     */
+    private static int greaterFactor(ComparisonOperator op) {
+        switch (op) {
+            case GT:
+            case NEQ:
+                return 1;
+            case LEQ:
+            case EQ:
+                return -1;
+            default:
+                return 0;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * The JoinHashTable class indexes rows by the slots of their join columns, for hash joins.
+ * Rows are stored in an array and chained by bucket through an array of row numbers, so the table holds
+ * no per-row objects other than the rows themselves, and probing hashes the key slots without building a key object.
+ * Rows are added first and the table is then built once with a bucket count fitted to the number of rows.
+ */
+
+package ed.inf.adbs.minibase.operator;
+
+import java.util.Arrays;
+
+public class JoinHashTable {
+    private final int[] keyColumns;
+    private long[][] rows = new long[16][];
+    private int rowCount = 0;
+    private int[] heads = null;
+    private int[] next = null;
+    private int mask = 0;
+
+    /**
+     * Creates an empty table.
+     *
+     * @param keyColumns the indices of the join columns in the rows added to the table
+     */
+    public JoinHashTable(int[] keyColumns) {
+        this.keyColumns = keyColumns;
+    }
+
+    /**
+     * Adds a row to the table. Rows can only be added before the table is built.
+     *
+     * @param row the slots of the row
+     */
+    public void add(long[] row) {
+        if (rowCount == rows.length) rows = Arrays.copyOf(rows, rowCount * 2);
+        rows[rowCount++] = row;
+    }
+
+    /**
+     * Builds the buckets of the table from the rows added so far.
+     */
+    public void build() {
+        int buckets = Integer.highestOneBit(Math.max(1, rowCount) * 2 - 1) << 1;
+        heads = new int[buckets];
+        Arrays.fill(heads, -1);
+        next = new int[rowCount];
+        mask = buckets - 1;
+        for (int i = rowCount - 1; i >= 0; i--) {
+            int bucket = hash(rows[i], keyColumns) & mask;
+            next[i] = heads[bucket];
+            heads[bucket] = i;
+        }
+    }
+
+    /**
+     * Returns the number of rows in the table.
+     *
+     * @return the row count
+     */
+    public int size() {
+        return rowCount;
+    }
+
+    /**
+     * Returns a row of the table.
+     *
+     * @param row the row number returned by first or next
+     * @return the slots of the row
+     */
+    public long[] getRow(int row) {
+        return rows[row];
+    }
+
+    /**
+     * Finds the first row whose join columns equal the given columns of a probe row.
+     *
+     * @param probe the slots of the probe row
+     * @param probeColumns the indices of the join columns in the probe row, in the order of the table's key columns
+     * @return the number of the first matching row, or -1 if there is none
+     */
+    public int first(long[] probe, int[] probeColumns) {
+        return match(heads[hash(probe, probeColumns) & mask], probe, probeColumns);
+    }
+
+    /**
+     * Finds the next row matching a probe row after a previous match.
+     *
+     * @param row the number of the previous matching row
+     * @param probe the slots of the probe row
+     * @param probeColumns the indices of the join columns in the probe row, in the order of the table's key columns
+     * @return the number of the next matching row, or -1 if there is none
+     */
+    public int next(int row, long[] probe, int[] probeColumns) {
+        return match(next[row], probe, probeColumns);
+    }
+
+    /**
+     * Follows a bucket chain from a row to the first row whose key equals the probe key.
+     *
+     * @param row the first row to check, or -1
+     * @param probe the slots of the probe row
+     * @param probeColumns the indices of the join columns in the probe row
+     * @return the number of the matching row, or -1 if there is none
+     */
+    private int match(int row, long[] probe, int[] probeColumns) {
+        while (row >= 0) {
+            long[] candidate = rows[row];
+            boolean equal = true;
+            for (int k = 0; k < keyColumns.length && equal; k++) {
+                equal = candidate[keyColumns[k]] == probe[probeColumns[k]];
+            }
+            if (equal) return row;
+            row = next[row];
+        }
+        return -1;
+    }
+
+    /**
+     * Hashes the slots of the join columns of a row.
+     *
+     * @param row the slots of the row
+     * @param columns the indices of the join columns
+     * @return the hash code
+     */
+    public static int hash(long[] row, int[] columns) {
+        long hash = 0;
+        for (int column : columns) {
+            hash = (hash + row[column]) * 0x9E3779B97F4A7C15L;
+        }
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
@@ -8,18 +8,24 @@ package ed.inf.adbs.minibase.operator;
 import ed.inf.adbs.minibase.base.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class JoinOperator extends Operator {
-    private final Operator leftChildOperator;
-    private final Operator rightChildOperator;
-    private final HashMap<Integer, Integer> joinConditionIndices = new HashMap<>();
-    private final List<Integer> duplicateColumns = new ArrayList<>();
-    private Tuple leftTuple = null;
-    private final List<ComparisonAtom> comparisonAtomList;
-    private final List<String> leftVarsName;
-    private final List<String> rightVarsName;
+    protected final Operator leftChildOperator;
+    protected final Operator rightChildOperator;
+    protected final HashMap<Integer, Integer> joinConditionIndices = new HashMap<>();
+    protected final List<Integer> duplicateColumns = new ArrayList<>();
+    // The columns of the right child copied to the output, that is, all but the duplicate columns
+    protected final int[] rightOutputColumns;
+    protected Tuple leftTuple = null;
+    protected final List<ComparisonAtom> comparisonAtomList;
+    protected final TuplePredicate[] keyPredicates;
+    protected final TuplePredicate[] comparisonPredicates;
+    protected final List<String> leftVarsName;
+    protected final List<String> rightVarsName;
 
     /**
      * Constructs a JoinOperator object that performs a join on the tuples returned by the left and right child operators.
@@ -34,23 +40,39 @@ public class JoinOperator extends Operator {
         this.rightChildOperator = rightChildOperator;
         rightVarsName = rightChildOperator.getVarsName();
         // Add variables from left child operator to varsName
+        this.varsType.addAll(leftChildOperator.getVarsType());
         for (String leftVar : leftVarsName) {
             this.varsName.add(leftVar);
             // Add join condition indices and duplicate columns
-            if (rightVarsName.contains(leftVar)) {
+            if (leftVar != null && rightVarsName.contains(leftVar)) {
                 this.joinConditionIndices.put(leftVarsName.indexOf(leftVar), rightVarsName.indexOf(leftVar));
                 this.duplicateColumns.add(rightVarsName.indexOf(leftVar));
             }
         }
-        // Add variables from right child operator to varsName
-        for (String rightVar : rightVarsName) {
-            if (rightVar == null) {
-                this.varsName.add(null);
-            } else {
-                if (!this.varsName.contains(rightVar)) this.varsName.add(rightVar);
-            }
+        // Add variables from right child operator to varsName, one per column copied to the output
+        for (int i = 0; i < rightVarsName.size(); i++) {
+            if (this.duplicateColumns.contains(i)) continue;
+            this.varsName.add(rightVarsName.get(i));
+            this.varsType.add(rightChildOperator.getVarsType().get(i));
         }
         this.comparisonAtomList = comparisonAtoms;
+        this.rightOutputColumns = new int[rightVarsName.size() - this.duplicateColumns.size()];
+        for (int i = 0, k = 0; i < rightVarsName.size(); i++) {
+            if (!this.duplicateColumns.contains(i)) this.rightOutputColumns[k++] = i;
+        }
+
+        // Compile the equalities of the shared variables and the comparison atoms against the columns of both children
+        this.keyPredicates = new TuplePredicate[this.joinConditionIndices.size()];
+        int k = 0;
+        for (Map.Entry<Integer, Integer> entry : this.joinConditionIndices.entrySet()) {
+            this.keyPredicates[k++] = TuplePredicate.columnsEqual(entry.getKey(), entry.getValue(),
+                    leftChildOperator.getVarsType().get(entry.getKey()));
+        }
+        this.comparisonPredicates = new TuplePredicate[comparisonAtoms.size()];
+        for (int i = 0; i < comparisonAtoms.size(); i++) {
+            this.comparisonPredicates[i] = TuplePredicate.compile(comparisonAtoms.get(i), leftVarsName,
+                    leftChildOperator.getVarsType(), rightVarsName, rightChildOperator.getVarsType());
+        }
     }
 
     /**
@@ -77,29 +99,9 @@ public class JoinOperator extends Operator {
             Tuple rightTuple = this.rightChildOperator.getNextTuple();
 
             while (rightTuple != null) {
-                boolean valid = true;
-                for (Integer leftIndex : this.joinConditionIndices.keySet()) {
-                    int rightIndex = this.joinConditionIndices.get(leftIndex);
-                    if (!this.leftTuple.getTerms().get(leftIndex).toString().equals(rightTuple.getTerms().get(rightIndex).toString())) {
-                        valid = false;
-                        break;
-                    }
-                }
-                // Check join condition
-                if (valid) {
-                    if (!valid(this.leftTuple, rightTuple)) {
-                        valid = false;
-                    }
-                }
                 // If tuple is valid, create a new tuple with joined terms
-                if (valid) {
-                    List<Term> joinTerms = new ArrayList<>(this.leftTuple.getTerms());
-                    for (int i = 0; i < rightTuple.getTerms().size(); i++) {
-                        if (!this.duplicateColumns.contains(i)) {
-                            joinTerms.add(rightTuple.getTerms().get(i));
-                        }
-                    }
-                    return new Tuple("Join", joinTerms);
+                if (satisfiesJoinCondition(this.leftTuple, rightTuple)) {
+                    return joinTuples(this.leftTuple, rightTuple);
                 }
                 rightTuple = this.rightChildOperator.getNextTuple();
             }
@@ -109,6 +111,37 @@ public class JoinOperator extends Operator {
         return null;
     }
 
+    /**
+     * Checks whether a pair of tuples agrees on the shared variables and satisfies the comparison atoms.
+     *
+     * @param leftTuple the tuple from the left child
+     * @param rightTuple the tuple from the right child
+     * @return true if the pair should be joined, false otherwise
+     */
+    protected boolean satisfiesJoinCondition(Tuple leftTuple, Tuple rightTuple) {
+        for (TuplePredicate predicate : this.keyPredicates) {
+            if (!predicate.test(leftTuple.getValues(), rightTuple.getValues())) return false;
+        }
+        return valid(leftTuple, rightTuple);
+    }
+
+    /**
+     * Creates the output tuple for a matching pair, dropping the right columns that duplicate join variables.
+     *
+     * @param leftTuple the tuple from the left child
+     * @param rightTuple the tuple from the right child
+     * @return the joined tuple
+     */
+    protected Tuple joinTuples(Tuple leftTuple, Tuple rightTuple) {
+        long[] left = leftTuple.getValues();
+        long[] right = rightTuple.getValues();
+        long[] joined = Arrays.copyOf(left, left.length + this.rightOutputColumns.length);
+        for (int i = 0; i < this.rightOutputColumns.length; i++) {
+            joined[left.length + i] = right[this.rightOutputColumns[i]];
+        }
+        return new Tuple(joined);
+    }
+
     /**
      * Check if two tuples satisfy the comparison atoms in the list.
      *
@@ -117,67 +150,20 @@ public class JoinOperator extends Operator {
      @return true if both tuples satisfy all comparison atoms, false otherwise
      */
     public boolean valid(Tuple leftTuple, Tuple rightTuple) {
-        // Loop through all comparison atoms in the list
-        for (ComparisonAtom compAtom : this.comparisonAtomList) {
-            // Get the operator from the comparison atom
-            String op = compAtom.getOp().toString();
-            int operand1Index;
-            int operand2Index;
-            boolean reverse = false;
-            // Determine which operand is from the left tuple and which is from the right tuple
-            if ( leftVarsName.contains(((Variable) compAtom.getTerm1()).getName()) ) {
-                operand1Index = leftVarsName.indexOf(((Variable) compAtom.getTerm1()).getName());
-                operand2Index = rightVarsName.indexOf(((Variable) compAtom.getTerm2()).getName());
-            } else {
-                reverse = true;
-                operand1Index = rightVarsName.indexOf(((Variable) compAtom.getTerm1()).getName());
-                operand2Index = leftVarsName.indexOf(((Variable) compAtom.getTerm2()).getName());
-            }
-
-            // Get the operands for the current comparison atom based on which tuple they come from
-            Term operand1;
-            Term operand2;
-            if (!reverse) {
-                operand1 = leftTuple.getTerms().get(operand1Index);
-                operand2 = rightTuple.getTerms().get(operand2Index);
-            } else {
-                operand1 = rightTuple.getTerms().get(operand1Index);
-                operand2 = leftTuple.getTerms().get(operand2Index);
-            }
+        return valid(leftTuple.getValues(), rightTuple.getValues());
+    }
 
-            // Determine if the comparison is valid based on the operator
-            boolean valid;
-            boolean equals = operand1.toString().equals(operand2.toString());
-            switch (op) {
-                case "=":
-                    valid = equals;
-                    break;
-                case "!=":
-                    valid = !equals;
-                    break;
-                case ">":
-                    if (operand1 instanceof IntegerConstant) valid = ((IntegerConstant) operand1).getValue() > ((IntegerConstant) operand2).getValue();
-                    else valid = ((StringConstant) operand1).getValue().compareTo(((StringConstant) operand2).getValue()) > 0;
-                    break;
-                case ">=":
-                    if (operand1 instanceof IntegerConstant) valid = ((IntegerConstant) operand1).getValue() >= ((IntegerConstant) operand2).getValue();
-                    else valid = ((StringConstant) operand1).getValue().compareTo(((StringConstant) operand2).getValue()) >= 0;
-                    break;
-                case "<":
-                    if (operand1 instanceof IntegerConstant) valid = ((IntegerConstant) operand1).getValue() < ((IntegerConstant) operand2).getValue();
-                    else valid = ((StringConstant) operand1).getValue().compareTo(((StringConstant) operand2).getValue()) < 0;
-                    break;
-                case "<=":
-                    if (operand1 instanceof IntegerConstant) valid = ((IntegerConstant) operand1).getValue() <= ((IntegerConstant) operand2).getValue();
-                    else valid = ((StringConstant) operand1).getValue().compareTo(((StringConstant) operand2).getValue()) <= 0;
-                    break;
-                default:
-                    valid = false;
-                    break;
-            }
-            // If the comparison is not valid, return false immediately
-            if (!valid) return false;
+    /**
+     * Check if the slots of two rows satisfy the comparison atoms in the list.
+     *
+     * @param left the slots of the row from the left child
+     * @param right the slots of the row from the right child
+     * @return true if both rows satisfy all comparison atoms, false otherwise
+     */
+    protected boolean valid(long[] left, long[] right) {
+        for (TuplePredicate predicate : this.comparisonPredicates) {
+            if (!predicate.test(left, right)) return false;
         }
         return true;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,326 @@
+/**
+ * The JoinTreeSumOperator class computes a SUM aggregate over the join of the atoms of an acyclic query without
+ * building the join, by passing partial sums up a join forest of the atoms, as in variable elimination.
+ * Every factor of the product is taken from one atom holding its variable, so that the product over a joined tuple is
+ * the product of per-atom weights. Each atom, from the leaves up, sends its parent a message: the sum, over the joined
+ * tuples of its subtree, of the product of their weights, grouped by the variables it shares with its parent and by the
+ * group-by variables of its subtree. An atom tuple multiplies its weight with the messages of its children matching it
+ * on their shared variables, so every atom is read once and its cost is linear in its size and in its messages.
+ * The messages of the roots of the forest are combined into the groups of the query, which are returned as by
+ * a SumOperator, in the order in which they are first produced at the roots.
+ * Only comparisons local to an atom are supported; they are applied by the operators of the atoms.
+ */
+
+package ed.inf.adbs.minibase.operator;
+
+import ed.inf.adbs.minibase.base.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class JoinTreeSumOperator extends SumOperator {
+    // Aggregates are computed over the flat join instead when -Dminibase.aggregate.flat is set
+    public static final boolean ENABLED = !Boolean.getBoolean("minibase.aggregate.flat");
+
+    private final List<Operator> atomOperators;
+    private final int[] parent;
+    private final List<List<Integer>> children = new ArrayList<>();
+    // The atoms ordered so that every parent comes before its children
+    private final List<Integer> topDown = new ArrayList<>();
+    // For every atom: the columns multiplied into its weight, and the pairs of columns holding the same variable
+    private final List<int[]> weightColumns = new ArrayList<>();
+    private final List<int[][]> repeatedColumns = new ArrayList<>();
+    // For every atom: the variables of its message, the first ones shared with its parent, and the columns of its
+    // tuples holding the shared variables
+    private final List<List<String>> messageVars = new ArrayList<>();
+    private final int[] sharedCount;
+    private final List<int[]> parentProbeColumns = new ArrayList<>();
+    // For every atom: where every variable of its message comes from, a column of its tuples if non-negative,
+    // or else -1 - k for the k-th value taken from the messages of its children
+    private final List<int[]> messageSources = new ArrayList<>();
+    private final int[] extraCount;
+
+    /**
+     * Constructs a JoinTreeSumOperator over the operators of the atoms of an acyclic query.
+     *
+     * @param atomOperators the operators producing the selected tuples of the atoms
+     * @param parent the index of the parent of every atom in a join forest of the atoms, or -1 for the roots
+     * @param queryHead the query head whose last term is the sum aggregate
+     */
+    public JoinTreeSumOperator(List<Operator> atomOperators, int[] parent, RelationalAtom queryHead) {
+        super(queryHead, allVars(atomOperators), allTypes(atomOperators));
+        this.atomOperators = atomOperators;
+        this.parent = parent;
+        int n = atomOperators.size();
+        List<String> vars = allVars(atomOperators);
+        List<String> groupVars = new ArrayList<>();
+        for (int index : this.groupIndices) groupVars.add(vars.get(index));
+
+        for (int i = 0; i < n; i++) this.children.add(new ArrayList<>());
+        for (int i = 0; i < n; i++) {
+            if (parent[i] < 0) this.topDown.add(i);
+            else this.children.get(parent[i]).add(i);
+        }
+        for (int k = 0; k < this.topDown.size(); k++) this.topDown.addAll(this.children.get(this.topDown.get(k)));
+
+        // Take every variable factor from the first atom holding its variable
+        List<List<Integer>> weights = new ArrayList<>();
+        for (int i = 0; i < n; i++) weights.add(new ArrayList<>());
+        for (int index : this.factorIndices) {
+            if (index < 0) continue;
+            for (int i = 0; i < n; i++) {
+                int column = atomOperators.get(i).getVarsName().indexOf(vars.get(index));
+                if (column < 0) continue;
+                weights.get(i).add(column);
+                break;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            this.weightColumns.add(weights.get(i).stream().mapToInt(Integer::intValue).toArray());
+            List<String> atomVars = atomOperators.get(i).getVarsName();
+            List<int[]> repeated = new ArrayList<>();
+            for (int column = 0; column < atomVars.size(); column++) {
+                int first = atomVars.get(column) == null ? column : atomVars.indexOf(atomVars.get(column));
+                if (first != column) repeated.add(new int[]{first, column});
+            }
+            this.repeatedColumns.add(repeated.toArray(new int[0][]));
+        }
+
+        // Compute the variables of the messages from the leaves up
+        this.sharedCount = new int[n];
+        this.extraCount = new int[n];
+        for (int i = 0; i < n; i++) {
+            this.messageVars.add(null);
+            this.parentProbeColumns.add(null);
+            this.messageSources.add(null);
+        }
+        for (int k = n - 1; k >= 0; k--) {
+            int atom = this.topDown.get(k);
+            List<String> atomVars = atomOperators.get(atom).getVarsName();
+            List<String> parentVars = parent[atom] < 0 ? new ArrayList<>() : atomOperators.get(parent[atom]).getVarsName();
+            List<String> message = new ArrayList<>();
+            List<Integer> sources = new ArrayList<>();
+            List<Integer> probe = new ArrayList<>();
+            for (String var : atomVars) {
+                if (var == null || message.contains(var) || !parentVars.contains(var)) continue;
+                message.add(var);
+                sources.add(atomVars.indexOf(var));
+                probe.add(parentVars.indexOf(var));
+            }
+            this.sharedCount[atom] = message.size();
+            for (String var : groupVars) {
+                if (atomVars.contains(var) && !message.contains(var)) {
+                    message.add(var);
+                    sources.add(atomVars.indexOf(var));
+                }
+            }
+            // The group-by variables of the subtrees of the children that the atom does not hold
+            int extras = 0;
+            for (int child : this.children.get(atom)) {
+                List<String> childMessage = this.messageVars.get(child);
+                for (int j = this.sharedCount[child]; j < childMessage.size(); j++) {
+                    message.add(childMessage.get(j));
+                    sources.add(-1 - extras++);
+                }
+            }
+            this.messageVars.set(atom, message);
+            this.messageSources.set(atom, sources.stream().mapToInt(Integer::intValue).toArray());
+            this.parentProbeColumns.set(atom, probe.stream().mapToInt(Integer::intValue).toArray());
+            this.extraCount[atom] = extras;
+        }
+    }
+
+    /**
+     * Resets the operators of the atoms and discards the groups.
+     */
+    @Override
+    public void reset() {
+        for (Operator atomOperator : this.atomOperators) atomOperator.reset();
+        super.reset();
+    }
+
+    /**
+     * Computes the messages of the atoms from the leaves up and combines the messages of the roots into the groups.
+     */
+    @Override
+    protected void aggregate() {
+        int n = this.atomOperators.size();
+        GroupByHashTable[] messages = new GroupByHashTable[n];
+        JoinHashTable[] tables = new JoinHashTable[n];
+        for (int k = n - 1; k >= 0; k--) {
+            int atom = this.topDown.get(k);
+            messages[atom] = computeMessage(atom, tables);
+            if (this.parent[atom] >= 0) tables[atom] = toTable(messages[atom], this.sharedCount[atom]);
+        }
+
+        // Combine the roots, whose messages only hold group-by variables, by a product of their groups
+        List<String> rootVars = new ArrayList<>();
+        List<long[]> combined = new ArrayList<>();
+        combined.add(new long[]{1});
+        for (int root : this.topDown) {
+            if (this.parent[root] >= 0) continue;
+            rootVars.addAll(this.messageVars.get(root));
+            List<long[]> next = new ArrayList<>();
+            for (long[] partial : combined) {
+                for (int g = 0; g < messages[root].size(); g++) {
+                    long[] key = messages[root].getKey(g);
+                    long[] entry = new long[partial.length + key.length];
+                    System.arraycopy(partial, 1, entry, 1, partial.length - 1);
+                    System.arraycopy(key, 0, entry, partial.length, key.length);
+                    entry[0] = partial[0] * messages[root].getSum(g);
+                    next.add(entry);
+                }
+            }
+            combined = next;
+        }
+
+        List<String> vars = allVars(this.atomOperators);
+        int[] groupPositions = new int[this.groupIndices.length];
+        for (int g = 0; g < groupPositions.length; g++) groupPositions[g] = 1 + rootVars.indexOf(vars.get(this.groupIndices[g]));
+        this.groups = new GroupByHashTable();
+        long[] key = new long[groupPositions.length];
+        if (key.length == 0) this.groups.add(key, 0);
+        for (long[] entry : combined) {
+            for (int g = 0; g < key.length; g++) key[g] = entry[groupPositions[g]];
+            this.groups.add(key, entry[0] * this.constantFactor);
+        }
+    }
+
+    /**
+     * Computes the message of an atom from its tuples and the messages of its children.
+     *
+     * @param atom the index of the atom
+     * @param tables the messages of the children, indexed by the variables they share with the atom
+     * @return the sums of the products of the weights, grouped by the variables of the message of the atom
+     */
+    private GroupByHashTable computeMessage(int atom, JoinHashTable[] tables) {
+        GroupByHashTable message = new GroupByHashTable();
+        Operator atomOperator = this.atomOperators.get(atom);
+        int[] weights = this.weightColumns.get(atom);
+        int[][] repeated = this.repeatedColumns.get(atom);
+        int[] sources = this.messageSources.get(atom);
+        List<Integer> atomChildren = this.children.get(atom);
+        long[] row = new long[atomOperator.getVarsName().size()];
+        long[] key = new long[sources.length];
+        for (Batch batch = atomOperator.getNextBatch(); batch != null; batch = atomOperator.getNextBatch()) {
+            for (int i = 0; i < batch.getCount(); i++) {
+                batch.copyRow(batch.rowAt(i), row);
+                boolean consistent = true;
+                for (int[] pair : repeated) consistent &= row[pair[0]] == row[pair[1]];
+                if (!consistent) continue;
+                long weight = 1;
+                for (int column : weights) weight *= row[column];
+                if (this.extraCount[atom] == 0) {
+                    // Without group-by values from the children, every child has at most one group per shared key
+                    boolean matched = true;
+                    for (int c = 0; c < atomChildren.size() && matched; c++) {
+                        int child = atomChildren.get(c);
+                        int match = tables[child].first(row, this.parentProbeColumns.get(child));
+                        matched = match >= 0;
+                        if (matched) weight *= tables[child].getRow(match)[this.sharedCount[child]];
+                    }
+                    if (!matched) continue;
+                    for (int j = 0; j < sources.length; j++) key[j] = row[sources[j]];
+                    message.add(key, weight);
+                    continue;
+                }
+
+                // Multiply the weight by the matching messages of the children, keeping their group-by values apart
+                List<long[]> partials = new ArrayList<>();
+                long[] first = new long[1 + this.extraCount[atom]];
+                first[0] = weight;
+                partials.add(first);
+                int offset = 1;
+                for (int child : atomChildren) {
+                    JoinHashTable table = tables[child];
+                    int[] probe = this.parentProbeColumns.get(child);
+                    int width = this.messageVars.get(child).size();
+                    int extras = width - this.sharedCount[child];
+                    List<long[]> next = new ArrayList<>();
+                    for (int match = table.first(row, probe); match >= 0; match = table.next(match, row, probe)) {
+                        long[] childRow = table.getRow(match);
+                        for (long[] partial : partials) {
+                            long[] extended = extras == 0 ? partial : partial.clone();
+                            System.arraycopy(childRow, this.sharedCount[child], extended, offset, extras);
+                            if (extras == 0) extended[0] *= childRow[width];
+                            else extended[0] = partial[0] * childRow[width];
+                            next.add(extended);
+                        }
+                    }
+                    if (extras == 0) {
+                        // Without group-by values, the child has at most one group per shared key
+                        if (next.isEmpty()) partials.clear();
+                    } else {
+                        partials = next;
+                    }
+                    offset += extras;
+                    if (partials.isEmpty()) break;
+                }
+                for (long[] partial : partials) {
+                    for (int j = 0; j < sources.length; j++) key[j] = sources[j] >= 0 ? row[sources[j]] : partial[-sources[j]];
+                    message.add(key, partial[0]);
+                }
+            }
+        }
+        return message;
+    }
+
+    /**
+     * Turns the message of an atom into a hash table of rows holding its variables followed by its sum,
+     * indexed by the variables shared with the parent.
+     *
+     * @param message the message of the atom
+     * @param shared the number of leading variables of the message shared with the parent
+     * @return the hash table of the message
+     */
+    private static JoinHashTable toTable(GroupByHashTable message, int shared) {
+        int[] keyColumns = new int[shared];
+        for (int j = 0; j < shared; j++) keyColumns[j] = j;
+        JoinHashTable table = new JoinHashTable(keyColumns);
+        for (int g = 0; g < message.size(); g++) {
+            long[] key = message.getKey(g);
+            long[] row = new long[key.length + 1];
+            System.arraycopy(key, 0, row, 0, key.length);
+            row[key.length] = message.getSum(g);
+            table.add(row);
+        }
+        table.build();
+        return table;
+    }
+
+    /**
+     * Lists the distinct variables of the atoms, in the order of the atoms.
+     *
+     * @param atomOperators the operators of the atoms
+     * @return the variable names
+     */
+    private static List<String> allVars(List<Operator> atomOperators) {
+        List<String> vars = new ArrayList<>();
+        for (Operator atomOperator : atomOperators) {
+            for (String var : atomOperator.getVarsName()) {
+                if (var != null && !vars.contains(var)) vars.add(var);
+            }
+        }
+        return vars;
+    }
+
+    /**
+     * Lists the types of the distinct variables of the atoms, in the order of allVars.
+     *
+     * @param atomOperators the operators of the atoms
+     * @return the types of the variables
+     */
+    private static List<String> allTypes(List<Operator> atomOperators) {
+        List<String> vars = new ArrayList<>();
+        List<String> types = new ArrayList<>();
+        for (Operator atomOperator : atomOperators) {
+            for (int i = 0; i < atomOperator.getVarsName().size(); i++) {
+                String var = atomOperator.getVarsName().get(i);
+                if (var == null || vars.contains(var)) continue;
+                vars.add(var);
+                types.add(atomOperator.getVarsType().get(i));
+            }
+        }
+        return types;
+    }
+}
@@ -0,0 +1,302 @@
+/**
+ * The LeapfrogTriejoinOperator class represents a worst-case optimal join of any number of children, for cyclic queries
+ * where pairwise joins build intermediate results larger than the output. Variables are bound one at a time, in a given
+ * variable order: the tuples of every child are sorted into a trie whose levels are its variables in that order, and the
+ * values of a variable are found by leapfrogging, where the tries of the children holding the variable repeatedly seek
+ * each other's current value until they agree. Its running time is within a logarithmic factor of the AGM bound.
+ * The output has one column per variable, in the variable order. Every combination of child tuples is produced, as by
+ * pairwise joins, so that aggregates see the same multiplicities; a child repeating a variable keeps only its tuples
+ * with equal values in those columns. The comparison atoms are checked as soon as their variables are bound.
+ * The tries are built on the first call and kept across resets.
+ */
+
+package ed.inf.adbs.minibase.operator;
+
+import ed.inf.adbs.minibase.base.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class LeapfrogTriejoinOperator extends Operator {
+    private final List<Operator> childOperators;
+    // For every child: the columns of its trie levels, and its columns holding a variable already taken by another column
+    private final List<int[]> trieColumns = new ArrayList<>();
+    private final List<int[][]> repeatedColumns = new ArrayList<>();
+    // For every variable: the children holding it, and the comparisons checked once it is bound
+    private final int[][] childrenOfVar;
+    private final List<List<TuplePredicate>> predicatesOfVar = new ArrayList<>();
+    // The number of combinations of the tuples of the children without variables
+    private long constantMultiplicity = 1;
+    private TrieIterator[] tries = null;
+    // The leapfrog state of every depth: its iterators sorted by key, the current one, and whether it is exhausted
+    private TrieIterator[][] frogs;
+    private int[] frogIndex;
+    private boolean[] exhausted;
+    private long[] binding;
+    private int depth = -1;
+    private long remaining = 0;
+    private boolean finished = false;
+
+    /**
+     * Constructs a LeapfrogTriejoinOperator joining children on their shared variables.
+     *
+     * @param childOperators the operators producing the selected tuples of the atoms
+     * @param variableOrder the order in which variables are bound; variables no child holds are ignored
+     * @param comparisonAtoms the comparison atoms to check on the joined tuples
+     */
+    public LeapfrogTriejoinOperator(List<Operator> childOperators, List<String> variableOrder, List<ComparisonAtom> comparisonAtoms) {
+        this.childOperators = childOperators;
+        for (String var : variableOrder) {
+            for (Operator child : childOperators) {
+                int column = child.getVarsName().indexOf(var);
+                if (column >= 0 && !this.varsName.contains(var)) {
+                    this.varsName.add(var);
+                    this.varsType.add(child.getVarsType().get(column));
+                }
+            }
+        }
+
+        // Every child reads its variables in the variable order
+        int width = this.varsName.size();
+        List<List<Integer>> children = new ArrayList<>();
+        for (int d = 0; d < width; d++) children.add(new ArrayList<>());
+        for (int c = 0; c < childOperators.size(); c++) {
+            List<String> childVars = childOperators.get(c).getVarsName();
+            List<Integer> columns = new ArrayList<>();
+            for (int d = 0; d < width; d++) {
+                int column = childVars.indexOf(this.varsName.get(d));
+                if (column < 0) continue;
+                columns.add(column);
+                children.get(d).add(c);
+            }
+            List<int[]> repeated = new ArrayList<>();
+            for (int column = 0; column < childVars.size(); column++) {
+                int first = childVars.get(column) == null ? column : childVars.indexOf(childVars.get(column));
+                if (first != column) repeated.add(new int[]{first, column});
+            }
+            this.trieColumns.add(columns.stream().mapToInt(Integer::intValue).toArray());
+            this.repeatedColumns.add(repeated.toArray(new int[0][]));
+        }
+        this.childrenOfVar = new int[width][];
+        for (int d = 0; d < width; d++) {
+            this.childrenOfVar[d] = children.get(d).stream().mapToInt(Integer::intValue).toArray();
+            this.predicatesOfVar.add(new ArrayList<>());
+        }
+
+        // A comparison is checked at the depth of its last variable
+        for (ComparisonAtom comparison : comparisonAtoms) {
+            int last = 0;
+            for (Term term : new Term[]{comparison.getTerm1(), comparison.getTerm2()}) {
+                if (term instanceof Variable) last = Math.max(last, this.varsName.indexOf(((Variable) term).getName()));
+            }
+            if (width > 0) this.predicatesOfVar.get(last).add(TuplePredicate.compile(comparison, this.varsName, this.varsType));
+        }
+    }
+
+    /**
+     * Rewinds to the first joined tuple. The tries are kept.
+     */
+    @Override
+    public void reset() {
+        if (this.tries != null) {
+            for (TrieIterator trie : this.tries) {
+                while (trie.getDepth() >= 0) trie.up();
+            }
+        }
+        this.depth = -1;
+        this.remaining = 0;
+        this.finished = false;
+    }
+
+    /**
+     * Returns the next joined tuple.
+     *
+     * @return the next joined tuple, or null if there are no more tuples
+     */
+    @Override
+    public Tuple getNextTuple() {
+        if (this.tries == null) buildTries();
+        if (this.remaining > 0) {
+            this.remaining--;
+            return new Tuple(this.binding.clone());
+        }
+        if (this.finished) return null;
+        int width = this.varsName.size();
+        if (this.depth < 0) {
+            if (this.constantMultiplicity == 0) {
+                this.finished = true;
+                return null;
+            }
+            if (width == 0) {
+                this.finished = true;
+                this.remaining = this.constantMultiplicity - 1;
+                return new Tuple(this.binding.clone());
+            }
+            this.depth = 0;
+            open(0);
+        } else {
+            leapfrogNext(this.depth);
+        }
+
+        while (true) {
+            if (this.exhausted[this.depth]) {
+                for (int c : this.childrenOfVar[this.depth]) this.tries[c].up();
+                if (this.depth == 0) {
+                    this.depth = -1;
+                    this.finished = true;
+                    return null;
+                }
+                this.depth--;
+                leapfrogNext(this.depth);
+                continue;
+            }
+            this.binding[this.depth] = this.frogs[this.depth][this.frogIndex[this.depth]].key();
+            if (!satisfiesComparisons(this.depth)) {
+                leapfrogNext(this.depth);
+                continue;
+            }
+            if (this.depth < width - 1) {
+                this.depth++;
+                open(this.depth);
+                continue;
+            }
+            // Every child is at its last level: the product of the rows below their nodes is the multiplicity
+            long multiplicity = this.constantMultiplicity;
+            for (TrieIterator trie : this.tries) {
+                if (trie.getDepth() >= 0) multiplicity *= trie.count();
+            }
+            this.remaining = multiplicity - 1;
+            return new Tuple(this.binding.clone());
+        }
+    }
+
+    /**
+     * Reads every child into a trie sorted on its variables in the variable order, dropping the tuples whose repeated
+     * variables have different values.
+     */
+    private void buildTries() {
+        int width = this.varsName.size();
+        this.tries = new TrieIterator[this.childOperators.size()];
+        for (int c = 0; c < this.childOperators.size(); c++) {
+            int[] columns = this.trieColumns.get(c);
+            int[][] repeated = this.repeatedColumns.get(c);
+            List<long[]> rows = new ArrayList<>();
+            long[] values = new long[this.childOperators.get(c).getVarsName().size()];
+            Operator child = this.childOperators.get(c);
+            for (Batch batch = child.getNextBatch(); batch != null; batch = child.getNextBatch()) {
+                for (int i = 0; i < batch.getCount(); i++) {
+                    batch.copyRow(batch.rowAt(i), values);
+                    boolean consistent = true;
+                    for (int[] pair : repeated) consistent &= values[pair[0]] == values[pair[1]];
+                    if (!consistent) continue;
+                    long[] row = new long[columns.length];
+                    for (int k = 0; k < columns.length; k++) row[k] = values[columns[k]];
+                    rows.add(row);
+                }
+            }
+            long[][] sorted = rows.toArray(new long[0][]);
+            Arrays.sort(sorted, (a, b) -> {
+                for (int k = 0; k < a.length; k++) {
+                    int comparison = Long.compare(a[k], b[k]);
+                    if (comparison != 0) return comparison;
+                }
+                return 0;
+            });
+            this.tries[c] = new TrieIterator(sorted, columns.length);
+            if (columns.length == 0) this.constantMultiplicity *= sorted.length;
+        }
+        this.frogs = new TrieIterator[width][];
+        for (int d = 0; d < width; d++) {
+            this.frogs[d] = new TrieIterator[this.childrenOfVar[d].length];
+        }
+        this.frogIndex = new int[width];
+        this.exhausted = new boolean[width];
+        this.binding = new long[width];
+    }
+
+    /**
+     * Opens the level of a variable in the tries of the children holding it and finds their first common value.
+     *
+     * @param d the depth of the variable
+     */
+    private void open(int d) {
+        TrieIterator[] iterators = this.frogs[d];
+        this.exhausted[d] = false;
+        for (int k = 0; k < iterators.length; k++) {
+            iterators[k] = this.tries[this.childrenOfVar[d][k]];
+            iterators[k].open();
+            if (iterators[k].atEnd()) this.exhausted[d] = true;
+        }
+        if (this.exhausted[d]) return;
+        // Sort the iterators by their current value, by insertion since there are few of them
+        for (int k = 1; k < iterators.length; k++) {
+            TrieIterator iterator = iterators[k];
+            int j = k - 1;
+            while (j >= 0 && iterators[j].key() > iterator.key()) {
+                iterators[j + 1] = iterators[j];
+                j--;
+            }
+            iterators[j + 1] = iterator;
+        }
+        this.frogIndex[d] = 0;
+        leapfrogSearch(d);
+    }
+
+    /**
+     * Moves the iterators of a variable past its current value and finds their next common value.
+     *
+     * @param d the depth of the variable
+     */
+    private void leapfrogNext(int d) {
+        TrieIterator iterator = this.frogs[d][this.frogIndex[d]];
+        iterator.next();
+        if (iterator.atEnd()) {
+            this.exhausted[d] = true;
+            return;
+        }
+        this.frogIndex[d] = (this.frogIndex[d] + 1) % this.frogs[d].length;
+        leapfrogSearch(d);
+    }
+
+    /**
+     * Makes every iterator of a variable seek the largest current value among them until they all agree,
+     * leaving the current iterator on the common value.
+     *
+     * @param d the depth of the variable
+     */
+    private void leapfrogSearch(int d) {
+        TrieIterator[] iterators = this.frogs[d];
+        int k = iterators.length;
+        int p = this.frogIndex[d];
+        long largest = iterators[(p + k - 1) % k].key();
+        while (true) {
+            long value = iterators[p].key();
+            if (value == largest) {
+                this.frogIndex[d] = p;
+                return;
+            }
+            iterators[p].seek(largest);
+            if (iterators[p].atEnd()) {
+                this.exhausted[d] = true;
+                this.frogIndex[d] = p;
+                return;
+            }
+            largest = iterators[p].key();
+            p = (p + 1) % k;
+        }
+    }
+
+    /**
+     * Checks the comparisons whose last variable is bound at a depth.
+     *
+     * @param d the depth of the variable
+     * @return true if the bound values satisfy the comparisons
+     */
+    private boolean satisfiesComparisons(int d) {
+        for (TuplePredicate predicate : this.predicatesOfVar.get(d)) {
+            if (!predicate.test(this.binding, this.binding)) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * This class represents the scan operator of a parallel worker. It returns the rows of the morsel assigned to it by
+ * ParallelExecution, and resetting it rewinds to the start of that morsel, so a worker runs its whole pipeline once
+ * per morsel by assigning the morsel and resetting the root of the pipeline.
+ * When the morsels are chunks of a CSV file, the scan parses its chunk with its own CsvRelationReader.
+ */
+package ed.inf.adbs.minibase.operator;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class MorselScanOperator extends Operator {
+    private final MorselSource source;
+    private int start = 0;
+    private int end = 0;
+    private int position = 0;
+    private Batch batch = null;
+    private int morsel = -1;
+    private CsvRelationReader reader = null;
+    private List<long[]> chunk = null;
+    private long chunkBytes = 0;
+
+    /**
+     * Constructs a MorselScanOperator reading from a shared morsel source.
+     *
+     * @param source the morsel source shared by the workers
+     */
+    public MorselScanOperator(MorselSource source) {
+        this.source = source;
+        this.varsName = source.getVarsName();
+        this.varsType = source.getVarsType();
+    }
+
+    /**
+     * Assigns a morsel to the scan. The scan returns its rows after the next reset.
+     *
+     * @param morsel the morsel number
+     */
+    public void setMorsel(int morsel) {
+        this.morsel = morsel;
+        this.reader = null;
+        if (this.source.isChunked()) return;
+        this.start = this.source.getMorselStart(morsel);
+        this.end = this.source.getMorselEnd(morsel);
+        this.position = this.end;
+    }
+
+    /**
+     * Rewinds the scan to the first row of its morsel.
+     */
+    @Override
+    public void reset() {
+        this.position = this.start;
+        if (this.morsel >= 0 && this.source.isChunked()) {
+            this.reader = this.source.openChunk(this.morsel);
+            this.chunk = new ArrayList<>();
+            this.chunkBytes = 0;
+        }
+        resetTupleBatch();
+    }
+
+    /**
+     * Returns the next tuple of the morsel, or null if there are no more tuples.
+     *
+     * @return the next tuple of the morsel, or null if there are no more tuples.
+     */
+    @Override
+    public Tuple getNextTuple() {
+        return nextTupleFromBatches();
+    }
+
+    /**
+     * Returns the next batch of tuples of the morsel, or null if there are no more tuples.
+     *
+     * @return the next batch of tuples of the morsel, or null if there are no more tuples.
+     */
+    @Override
+    public Batch getNextBatch() {
+        if (this.batch == null) this.batch = new Batch(this.varsType.size());
+        if (this.reader != null) return readChunk();
+        if (this.position >= this.end) return null;
+        int count = Math.min(this.batch.getCapacity(), this.end - this.position);
+        this.source.fill(this.batch, this.position, count);
+        this.position += count;
+        return this.batch;
+    }
+
+    /**
+     * Parses the next rows of the chunk into the batch, handing the decoded chunk to the source at its end.
+     *
+     * @return the next batch of tuples of the chunk, or null if there are no more tuples.
+     */
+    private Batch readChunk() {
+        this.batch.clear();
+        try {
+            while (!this.batch.isFull()) {
+                long[] row = this.reader.nextRow();
+                if (row == null) {
+                    this.reader = null;
+                    this.source.chunkRead(this.morsel, this.chunk, this.chunkBytes);
+                    this.chunk = null;
+                    break;
+                }
+                this.batch.addRow(row);
+                this.chunk.add(row);
+                this.chunkBytes += DatabaseCatalog.estimateRowSize(row);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this.batch.getSize() == 0 ? null : this.batch;
+    }
+}
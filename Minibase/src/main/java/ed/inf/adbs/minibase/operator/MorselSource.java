@@ -0,0 +1,270 @@
+/**
+ * The MorselSource class splits the rows of a relation into morsels, contiguous ranges of rows that parallel workers
+ * claim one at a time. Morsels are claimed in increasing order, so concatenating their results by morsel number gives
+ * the same order as a serial scan. The rows come from the binary columnar file when the relation has one, reading only
+ * the required columns, and otherwise from the decoded rows of the CSV file, shared with the DatabaseCatalog cache.
+ */
+
+package ed.inf.adbs.minibase.operator;
+
+import ed.inf.adbs.minibase.base.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MorselSource {
+    // The number of rows per morsel, configurable with -Dminibase.parallel.morselSize
+    public static final int DEFAULT_MORSEL_SIZE = Integer.getInteger("minibase.parallel.morselSize", 16384);
+    // The number of bytes per chunk of a CSV file, configurable with -Dminibase.parallel.chunkSize
+    public static final long DEFAULT_CHUNK_SIZE = Long.getLong("minibase.parallel.chunkSize", 4L * 1024 * 1024);
+
+    private final String relationName;
+    private final List<String> varsName = new ArrayList<>();
+    private final List<String> varsType = new ArrayList<>();
+    private final List<Integer> columns = new ArrayList<>();
+    private final boolean columnar;
+    private final int morselSize;
+    private final AtomicInteger nextMorsel = new AtomicInteger();
+    private volatile boolean opened = false;
+    private int rowCount;
+    private List<long[]> rows;
+    private IntBuffer[] values;
+    private int[][] dictionaries;
+    private String path;
+    private long length;
+    private long lastModified;
+    // The offsets of the chunks of an uncached CSV file, or null when the rows are read from the cache or a columnar file
+    private long[] chunkBounds = null;
+    // The decoded rows of every chunk, collected for the cache until they exceed its budget
+    private List<List<long[]>> chunkRows = null;
+    private long chunkBytes = 0;
+    private int chunksRead = 0;
+
+    /**
+     * Creates a morsel source over the relation of an atom.
+     *
+     * @param atom the relational atom to scan
+     * @param requiredVariables the names of the variables used outside of the atom; a columnar relation returns only
+     *                          their columns, as the ColumnarScanOperator does
+     */
+    public MorselSource(RelationalAtom atom, Collection<String> requiredVariables) {
+        this(atom, requiredVariables, DEFAULT_MORSEL_SIZE);
+    }
+
+    /**
+     * Creates a morsel source over the relation of an atom.
+     *
+     * @param atom the relational atom to scan
+     * @param requiredVariables the names of the variables used outside of the atom
+     * @param morselSize the number of rows per morsel
+     */
+    public MorselSource(RelationalAtom atom, Collection<String> requiredVariables, int morselSize) {
+        DatabaseCatalog dbCat = DatabaseCatalog.getInstance();
+        this.relationName = atom.getName();
+        this.columnar = dbCat.hasColumnarRelation(relationName);
+        this.morselSize = morselSize;
+        List<String> schema = dbCat.getSchema(relationName);
+        for (int i = 0; i < atom.getTerms().size(); i++) {
+            Term term = atom.getTerms().get(i);
+            String name = term instanceof Variable ? ((Variable) term).getName() : null;
+            if (this.columnar && (name == null || !requiredVariables.contains(name))) continue;
+            this.varsName.add(name);
+            this.varsType.add(schema.get(i));
+            this.columns.add(i);
+        }
+    }
+
+    /**
+     * Returns the variable names of the columns returned for each row.
+     *
+     * @return a list of variable names
+     */
+    public List<String> getVarsName() {
+        return varsName;
+    }
+
+    /**
+     * Returns the types of the columns returned for each row.
+     *
+     * @return a list of column types
+     */
+    public List<String> getVarsType() {
+        return varsType;
+    }
+
+    /**
+     * Reads the relation, mapping the columnar file or decoding the CSV file, if this has not been done yet.
+     */
+    public synchronized void open() {
+        if (opened) return;
+        DatabaseCatalog dbCat = DatabaseCatalog.getInstance();
+        try {
+            if (columnar) {
+                ColumnarRelationFile relationFile = new ColumnarRelationFile(dbCat.getColumnarRelationPath(relationName));
+                rowCount = relationFile.getRowCount();
+                values = new IntBuffer[columns.size()];
+                dictionaries = new int[columns.size()][];
+                for (int i = 0; i < columns.size(); i++) {
+                    int column = columns.get(i);
+                    values[i] = relationFile.mapValues(column);
+                    if (relationFile.isIntColumn(column)) continue;
+                    String[] dictionary = relationFile.readDictionary(column);
+                    dictionaries[i] = new int[dictionary.length];
+                    for (int code = 0; code < dictionary.length; code++) {
+                        dictionaries[i][code] = StringDictionary.encode(dictionary[code]);
+                    }
+                }
+            } else {
+                path = dbCat.getRelationPath(relationName);
+                File csvFile = new File(path);
+                length = csvFile.length();
+                lastModified = csvFile.lastModified();
+                rows = dbCat.getCachedRelation(path, length, lastModified);
+                if (rows != null) {
+                    rowCount = rows.size();
+                } else {
+                    chunkBounds = CsvRelationReader.splitLines(path, DEFAULT_CHUNK_SIZE);
+                    chunkRows = new ArrayList<>(Collections.nCopies(chunkBounds.length - 1, null));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        opened = true;
+    }
+
+    /**
+     * Returns the number of morsels of the relation. The source must be open.
+     *
+     * @return the morsel count
+     */
+    public int getMorselCount() {
+        if (chunkBounds != null) return chunkBounds.length - 1;
+        return (rowCount + morselSize - 1) / morselSize;
+    }
+
+    /**
+     * Claims the next morsel that no worker has claimed yet. The source must be open.
+     *
+     * @return the number of the claimed morsel, or -1 if all morsels have been claimed
+     */
+    public int claim() {
+        int morsel = nextMorsel.getAndIncrement();
+        return morsel < getMorselCount() ? morsel : -1;
+    }
+
+    /**
+     * Makes all morsels available again.
+     */
+    public void reset() {
+        nextMorsel.set(0);
+    }
+
+    /**
+     * Checks whether the morsels are chunks of a CSV file rather than ranges of rows. The source must be open.
+     *
+     * @return true if the morsels are read with openChunk
+     */
+    public boolean isChunked() {
+        return chunkBounds != null;
+    }
+
+    /**
+     * Opens a reader over a chunk of the CSV file.
+     *
+     * @param morsel the morsel number of the chunk
+     * @return a reader over the rows of the chunk
+     */
+    public CsvRelationReader openChunk(int morsel) {
+        try {
+            return new CsvRelationReader(path, DatabaseCatalog.getInstance().getSchema(relationName),
+                    chunkBounds[morsel], chunkBounds[morsel + 1]);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Records the decoded rows of a chunk that has been read completely. Once every chunk has been read,
+     * their rows are handed to the DatabaseCatalog cache, unless they exceed its budget.
+     *
+     * @param morsel the morsel number of the chunk
+     * @param chunk the rows of the chunk
+     * @param bytes the estimated memory used by the rows
+     */
+    public synchronized void chunkRead(int morsel, List<long[]> chunk, long bytes) {
+        if (chunkRows == null || chunkRows.get(morsel) != null) return;
+        DatabaseCatalog dbCat = DatabaseCatalog.getInstance();
+        chunkBytes += bytes;
+        if (chunkBytes > dbCat.getCacheBudget()) {
+            chunkRows = null;
+            return;
+        }
+        chunkRows.set(morsel, chunk);
+        if (++chunksRead < chunkRows.size()) return;
+        List<long[]> relation = new ArrayList<>();
+        for (List<long[]> rows : chunkRows) relation.addAll(rows);
+        dbCat.cacheRelation(path, length, lastModified, relation, chunkBytes);
+        chunkRows = null;
+    }
+
+    /**
+     * Returns the index of the first row of a morsel.
+     *
+     * @param morsel the morsel number
+     * @return the index of its first row
+     */
+    public int getMorselStart(int morsel) {
+        return morsel * morselSize;
+    }
+
+    /**
+     * Returns the index after the last row of a morsel.
+     *
+     * @param morsel the morsel number
+     * @return the index after its last row
+     */
+    public int getMorselEnd(int morsel) {
+        return (int) Math.min(rowCount, (long) (morsel + 1) * morselSize);
+    }
+
+    /**
+     * Fills a batch with consecutive rows of the relation.
+     *
+     * @param batch the batch to fill, with one column per returned column
+     * @param start the index of the first row
+     * @param count the number of rows, at most the capacity of the batch
+     */
+    public void fill(Batch batch, int start, int count) {
+        if (!columnar) {
+            batch.clear();
+            for (int i = 0; i < count; i++) {
+                long[] row = rows.get(start + i);
+                for (int c = 0; c < columns.size(); c++) batch.getColumn(c)[i] = row[columns.get(c)];
+            }
+            batch.setSize(count);
+            return;
+        }
+        int[] buffer = new int[count];
+        for (int c = 0; c < columns.size(); c++) {
+            IntBuffer columnValues = values[c].duplicate();
+            columnValues.position(start);
+            columnValues.get(buffer, 0, count);
+            long[] column = batch.getColumn(c);
+            int[] dictionary = dictionaries[c];
+            if (dictionary == null) {
+                for (int i = 0; i < count; i++) column[i] = buffer[i];
+            } else {
+                for (int i = 0; i < count; i++) column[i] = dictionary[buffer[i]];
+            }
+        }
+        batch.setSize(count);
+    }
+}
@@ -1,5 +1,10 @@
 /**
  * The Operator class represents a relational operator, which can be used to manipulate and process tuples.
+ * The types of its columns, listed by getVarsType, are used to decode the slots of its tuples.
+ * Tuples can be read one at a time with getNextTuple, or a batch at a time with getNextBatch. Operators that only
+ * implement getNextTuple are adapted to the batch interface by filling batches from their tuples; operators that
+ * implement getNextBatch natively can serve getNextTuple from their batches with nextTupleFromBatches.
+ * A consumer must use a single one of the two interfaces between two resets of an operator.
  */
 
 package ed.inf.adbs.minibase.operator;
@@ -11,6 +16,13 @@ import java.util.List;
 public abstract class Operator {
      // A list of variable names used in this operator.
     protected List<String> varsName = new ArrayList<>();
+     // The types ("int" or "string") of the columns, in the same order as varsName.
+    protected List<String> varsType = new ArrayList<>();
+    // The batch filled from getNextTuple by the default getNextBatch
+    private Batch adapterBatch = null;
+    // The batch read by nextTupleFromBatches and the position of its next row
+    private Batch tupleBatch = null;
+    private int tupleBatchIndex = 0;
 
     /**
      * Dumps the tuples generated by this operator to a file or standard output.
@@ -25,16 +37,21 @@ public abstract class Operator {
             }
 
             boolean isFirstLine = true;
-            Tuple nextTuple = this.getNextTuple();
-            while (nextTuple != null) {
-                if (isFirstLine) {
-                    assert writer != null;
-                    writer.print(nextTuple);
-                    isFirstLine = false;
-                } else {
-                    writer.print("\n" + nextTuple);
+            long[] values = new long[this.varsType.size()];
+            Batch batch = this.getNextBatch();
+            while (batch != null) {
+                for (int i = 0; i < batch.getCount(); i++) {
+                    batch.copyRow(batch.rowAt(i), values);
+                    String line = new Tuple(values).toString(this.varsType);
+                    if (isFirstLine) {
+                        assert writer != null;
+                        writer.print(line);
+                        isFirstLine = false;
+                    } else {
+                        writer.print("\n" + line);
+                    }
                 }
-                nextTuple = this.getNextTuple();
+                batch = this.getNextBatch();
             }
             if (writer!=null)
                 writer.close();
@@ -57,6 +74,55 @@ public abstract class Operator {
      */
     public abstract Tuple getNextTuple();
 
+    /**
+     * Retrieves the next batch of tuples generated by this operator. The default implementation fills a batch
+     * with the tuples returned by getNextTuple.
+     *
+     * @return the next batch, holding at least one selected row, or null if there are no more tuples
+     */
+    public Batch getNextBatch() {
+        if (this.adapterBatch == null) this.adapterBatch = new Batch(this.varsType.size());
+        this.adapterBatch.clear();
+        while (!this.adapterBatch.isFull()) {
+            Tuple tuple = this.getNextTuple();
+            if (tuple == null) break;
+            this.adapterBatch.addRow(tuple.getValues());
+        }
+        return this.adapterBatch.getSize() == 0 ? null : this.adapterBatch;
+    }
+
+    /**
+     * Returns the next tuple of the batches returned by getNextBatch, for operators that produce batches natively.
+     *
+     * @return the next tuple, or null if there are no more tuples
+     */
+    protected Tuple nextTupleFromBatches() {
+        while (this.tupleBatch == null || this.tupleBatchIndex >= this.tupleBatch.getCount()) {
+            this.tupleBatch = this.getNextBatch();
+            this.tupleBatchIndex = 0;
+            if (this.tupleBatch == null) return null;
+        }
+        return new Tuple(this.tupleBatch.getRow(this.tupleBatch.rowAt(this.tupleBatchIndex++)));
+    }
+
+    /**
+     * Discards the batch read by nextTupleFromBatches, when the operator is reset.
+     */
+    protected void resetTupleBatch() {
+        this.tupleBatch = null;
+        this.tupleBatchIndex = 0;
+    }
+
+    /**
+     * Returns the columns on which the tuples of this operator are sorted, by increasing slot value: numeric order
+     * for integer columns and StringDictionary code order for string columns. The default is no known order.
+     *
+     * @return the indices of the columns the tuples are sorted on, most significant first
+     */
+    public int[] getSortOrder() {
+        return new int[0];
+    }
+
     /**
      * Returns the list of variable names used in this operator.
      *
@@ -65,4 +131,13 @@ public abstract class Operator {
     public List<String> getVarsName() {
         return this.varsName;
     }
+
+    /**
+     * Returns the list of column types of this operator, in the same order as the variable names.
+     *
+     * @return a list of column types
+     */
+    public List<String> getVarsType() {
+        return this.varsType;
+    }
 }
@@ -0,0 +1,148 @@
+/**
+ * The ParallelExecution class runs the workers of morsel-driven parallel plans. Every worker owns its own copy of a
+ * pipeline whose leaf is a MorselScanOperator; it repeatedly claims a morsel from the shared MorselSource, assigns it
+ * to its scan, resets the pipeline and hands it to a MorselTask that consumes the rows of that morsel.
+ * Workers run on a shared pool of daemon threads. The degree of parallelism is configurable with
+ * -Dminibase.parallelism and defaults to the number of available processors.
+ */
+
+package ed.inf.adbs.minibase.operator;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public final class ParallelExecution {
+    // The number of workers of a parallel plan, configurable with -Dminibase.parallelism
+    public static final int DEFAULT_PARALLELISM = Integer.getInteger("minibase.parallelism",
+            Runtime.getRuntime().availableProcessors());
+
+    private static final ExecutorService POOL = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "minibase-worker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The work done by a worker on the rows of one morsel.
+     */
+    public interface MorselTask {
+        /**
+         * Consumes the rows of a morsel.
+         *
+         * @param worker the index of the worker
+         * @param morsel the number of the morsel
+         * @param pipeline the pipeline of the worker, reset to the start of the morsel
+         * @throws Exception if the rows cannot be consumed
+         */
+        void run(int worker, int morsel, Operator pipeline) throws Exception;
+    }
+
+    /**
+     * A task run once for every index of a range, such as the partitions of a parallel merge.
+     */
+    public interface IndexedTask {
+        /**
+         * Runs the task for one index.
+         *
+         * @param index the index
+         * @throws Exception if the task fails
+         */
+        void run(int index) throws Exception;
+    }
+
+    private ParallelExecution() {
+    }
+
+    /**
+     * Starts one worker per pipeline. The workers stop when every morsel of the source has been claimed.
+     *
+     * @param source the morsel source shared by the workers, already open
+     * @param scans the scan of the pipeline of every worker
+     * @param pipelines the root of the pipeline of every worker
+     * @param task the work done on every morsel
+     * @return the futures of the workers
+     */
+    public static Future<?>[] start(MorselSource source, MorselScanOperator[] scans, Operator[] pipelines, MorselTask task) {
+        Future<?>[] workers = new Future<?>[pipelines.length];
+        for (int w = 0; w < pipelines.length; w++) {
+            int worker = w;
+            workers[w] = POOL.submit(() -> {
+                for (int morsel = source.claim(); morsel >= 0; morsel = source.claim()) {
+                    scans[worker].setMorsel(morsel);
+                    pipelines[worker].reset();
+                    task.run(worker, morsel, pipelines[worker]);
+                }
+                return null;
+            });
+        }
+        return workers;
+    }
+
+    /**
+     * Runs one worker per pipeline and waits until all of them have finished.
+     *
+     * @param source the morsel source shared by the workers, already open
+     * @param scans the scan of the pipeline of every worker
+     * @param pipelines the root of the pipeline of every worker
+     * @param task the work done on every morsel
+     */
+    public static void run(MorselSource source, MorselScanOperator[] scans, Operator[] pipelines, MorselTask task) {
+        await(start(source, scans, pipelines, task));
+    }
+
+    /**
+     * Runs a task for every index from 0 to count - 1 in parallel and waits until all of them have finished.
+     *
+     * @param count the number of indices
+     * @param task the task
+     */
+    public static void run(int count, IndexedTask task) {
+        Future<?>[] tasks = new Future<?>[count];
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            tasks[i] = POOL.submit(() -> {
+                task.run(index);
+                return null;
+            });
+        }
+        await(tasks);
+    }
+
+    /**
+     * Waits until all workers have finished, rethrowing the first failure of a worker.
+     *
+     * @param workers the futures of the workers
+     */
+    public static void await(Future<?>[] workers) {
+        RuntimeException failure = null;
+        for (Future<?> worker : workers) {
+            try {
+                worker.get();
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof RuntimeException
+                            ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    /**
+     * Reads every row of a pipeline.
+     *
+     * @param pipeline the root of the pipeline
+     * @param rows the list receiving a copy of the slots of every row
+     */
+    public static void drain(Operator pipeline, List<long[]> rows) {
+        for (Batch batch = pipeline.getNextBatch(); batch != null; batch = pipeline.getNextBatch()) {
+            for (int i = 0; i < batch.getCount(); i++) rows.add(batch.getRow(batch.rowAt(i)));
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * The ParallelSumOperator class computes a SUM aggregate over the output of the workers of a morsel-driven parallel
+ * plan. Every worker aggregates the rows of its morsels into its own GroupByHashTable. The partial tables are then
+ * split into partitions by the hash of the group keys, and the partitions are merged in parallel, each into its own
+ * table. Every row is ordered by its morsel and its position in the output of the morsel, so the merged groups are
+ * returned in the order of their first row; with hash joins only, this is the order of the SumOperator over the
+ * serial plan.
+ */
+
+package ed.inf.adbs.minibase.operator;
+
+import ed.inf.adbs.minibase.base.RelationalAtom;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+public class ParallelSumOperator extends SumOperator {
+    private final MorselSource source;
+    private final MorselScanOperator[] scans;
+    private final Operator[] pipelines;
+    private final List<SharedBuild> builds;
+
+    /**
+     * Constructs a ParallelSumOperator over the pipelines of parallel workers.
+     *
+     * @param source the morsel source of the first relation of the pipelines
+     * @param scans the scan of the pipeline of every worker
+     * @param pipelines the root of the pipeline of every worker
+     * @param builds the build sides shared by the pipelines
+     * @param queryHead the query head whose last term is the sum aggregate
+     */
+    public ParallelSumOperator(MorselSource source, MorselScanOperator[] scans, Operator[] pipelines,
+                               List<SharedBuild> builds, RelationalAtom queryHead) {
+        super(pipelines[0], queryHead);
+        this.source = source;
+        this.scans = scans;
+        this.pipelines = pipelines;
+        this.builds = builds;
+    }
+
+    /**
+     * Aggregates the morsels in parallel into one table per worker, then merges the tables partition by partition.
+     */
+    @Override
+    protected void aggregate() {
+        for (SharedBuild build : this.builds) build.build();
+        this.source.open();
+        this.source.reset();
+        int workers = this.pipelines.length;
+        GroupByHashTable[] partials = new GroupByHashTable[workers];
+        for (int w = 0; w < workers; w++) partials[w] = new GroupByHashTable();
+        ParallelExecution.run(this.source, this.scans, this.pipelines,
+                (worker, morsel, pipeline) -> accumulate(pipeline, partials[worker], (long) morsel << 32));
+
+        GroupByHashTable[] merged = new GroupByHashTable[workers];
+        ParallelExecution.run(workers, partition -> {
+            GroupByHashTable table = new GroupByHashTable();
+            for (GroupByHashTable partial : partials) {
+                for (int group = 0; group < partial.size(); group++) {
+                    if (Math.floorMod(partial.getHash(group), workers) != partition) continue;
+                    table.add(partial.getKey(group), partial.getSum(group), partial.getOrder(group));
+                }
+            }
+            merged[partition] = table;
+        });
+
+        // Return the groups in the order of their first row
+        List<long[]> groupRefs = new ArrayList<>();
+        for (int partition = 0; partition < workers; partition++) {
+            for (int group = 0; group < merged[partition].size(); group++) {
+                groupRefs.add(new long[]{merged[partition].getOrder(group), partition, group});
+            }
+        }
+        groupRefs.sort(Comparator.comparingLong(ref -> ref[0]));
+        this.groups = new GroupByHashTable();
+        for (long[] ref : groupRefs) {
+            GroupByHashTable table = merged[(int) ref[1]];
+            this.groups.add(table.getKey((int) ref[2]), table.getSum((int) ref[2]), ref[0]);
+        }
+        // An aggregate without group-by variables has a single group, even over no tuple
+        if (this.groupIndices.length == 0 && this.groups.size() == 0) this.groups.add(new long[0], 0);
+    }
+}
@@ -1,19 +1,44 @@
 /**
- * ProjectOperator class represents the operator to perform projection on the child operator
+ * ProjectOperator class represents the operator to perform projection on the child operator.
+ * Duplicates are eliminated with a hash set of the projected tuples, so every tuple is returned as soon as it is
+ * first seen. When the set grows beyond the memory budget, the tuples not seen yet are written to hash-partitioned
+ * spill files instead, and each partition is deduplicated the same way once the child operator is exhausted.
+ * Since equal tuples always fall in the same partition, a partition never holds a tuple returned by another one.
+ * The child operator is read a batch at a time, and the distinct tuples can be returned one at a time or in batches.
  */
 
 package ed.inf.adbs.minibase.operator;
 
 import ed.inf.adbs.minibase.base.*;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
 
 public class ProjectOperator extends Operator {
+    // The memory budget of the duplicate elimination set, configurable with -Dminibase.project.maxBytes
+    public static final long DEFAULT_MEMORY_BUDGET = Long.getLong("minibase.project.maxBytes", 64L * 1024 * 1024);
+    private static final int SPILL_PARTITIONS = 16;
+    // Partitions are not split again beyond this depth, in case all of their tuples have the same hash code
+    private static final int MAX_SPILL_LEVEL = 6;
+
     private final Operator childOperator;
     private final String projectionName;
-    private final List<Integer> projectIndices = new ArrayList<>();
-    private List<String> buffer = new ArrayList<>();
+    private final int[] projectIndices;
+    private final long memoryBudget;
+
+    private Set<Tuple> seen = new HashSet<>();
+    private long seenBytes = 0;
+    private int level = 0;
+    private boolean childExhausted = false;
+    private Batch childBatch = null;
+    private int childIndex = 0;
+    private Batch output = null;
+    private SpillFile.Reader spillReader = null;
+    private SpillFile currentSpill = null;
+    private SpillFile[] partitions = null;
+    private final Deque<SpillFile> pendingSpills = new ArrayDeque<>();
+    private final Deque<Integer> pendingLevels = new ArrayDeque<>();
 
     /**
      * Creates a new ProjectOperator instance.
@@ -22,24 +47,53 @@ public class ProjectOperator extends Operator {
      * @param queryHead the relational atom representing the projection
      */
     public ProjectOperator(Operator childOperator, RelationalAtom queryHead) {
+        this(childOperator, queryHead, DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     * Creates a new ProjectOperator instance with the given memory budget for duplicate elimination.
+     *
+     * @param childOperator the child operator to be projected
+     * @param queryHead the relational atom representing the projection
+     * @param memoryBudget the estimated number of bytes the set of seen tuples may hold before spilling to disk
+     */
+    public ProjectOperator(Operator childOperator, RelationalAtom queryHead, long memoryBudget) {
         this.childOperator = childOperator;
+        this.memoryBudget = memoryBudget;
         List<String> childVariableMask = childOperator.getVarsName(); // the variableMask before projection
         this.projectionName = queryHead.getName();
+        this.projectIndices = new int[queryHead.getTerms().size()];
         for (int i = 0; i < queryHead.getTerms().size(); i++) {
             String varName = ((Variable) queryHead.getTerms().get(i)).getName();
             int idx = childVariableMask.indexOf(varName);
-            this.projectIndices.add(idx);
+            this.projectIndices[i] = idx;
             this.varsName.add(varName);
+            this.varsType.add(childOperator.getVarsType().get(idx));
         }
     }
 
     /**
-     * Resets the operator to its initial state.
+     * Resets the operator to its initial state and deletes its spill files.
      */
     @Override
     public void reset() {
         this.childOperator.reset();
-        this.buffer = new ArrayList<>();
+        closeSource();
+        if (this.partitions != null) {
+            for (SpillFile partition : this.partitions) {
+                if (partition != null) partition.delete();
+            }
+            this.partitions = null;
+        }
+        for (SpillFile spill : this.pendingSpills) spill.delete();
+        this.pendingSpills.clear();
+        this.pendingLevels.clear();
+        this.seen = new HashSet<>();
+        this.seenBytes = 0;
+        this.level = 0;
+        this.childExhausted = false;
+        this.childBatch = null;
+        this.childIndex = 0;
     }
 
     /**
@@ -49,19 +103,139 @@ public class ProjectOperator extends Operator {
      */
     @Override
     public Tuple getNextTuple() {
-        Tuple nextTuple = this.childOperator.getNextTuple();
-        while (nextTuple != null) {
-            List<Term> terms = new ArrayList<>();
-            for (int index : this.projectIndices) {
-                terms.add(nextTuple.getTerms().get(index));
+        try {
+            while (true) {
+                Tuple tuple = nextFromSource();
+                if (tuple == null) {
+                    if (!nextSource()) return null;
+                    continue;
+                }
+                if (this.seen.contains(tuple)) continue;
+                if (this.seenBytes < this.memoryBudget || this.level >= MAX_SPILL_LEVEL) {
+                    this.seen.add(tuple);
+                    // The set entry, the tuple and its slots
+                    this.seenBytes += 48 + DatabaseCatalog.estimateRowSize(tuple.getValues());
+                    return tuple;
+                }
+                spill(tuple);
             }
-            Tuple newTuple = new Tuple(this.projectionName, terms);
-            if (!this.buffer.contains(newTuple.toString())) {
-                this.buffer.add(newTuple.toString());
-                return newTuple;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the next batch of projected tuples.
+     *
+     * @return the next batch of distinct projected tuples, or null if there is no more tuple to project
+     */
+    @Override
+    public Batch getNextBatch() {
+        if (this.output == null) this.output = new Batch(this.projectIndices.length);
+        this.output.clear();
+        while (!this.output.isFull()) {
+            Tuple tuple = getNextTuple();
+            if (tuple == null) break;
+            this.output.addRow(tuple.getValues());
+        }
+        return this.output.getSize() == 0 ? null : this.output;
+    }
+
+    /**
+     * Returns the next projected tuple of the current source: the child operator at level 0, a spill file afterwards.
+     *
+     * @return the projected tuple, or null if the current source is exhausted
+     * @throws IOException if a spill file cannot be read
+     */
+    private Tuple nextFromSource() throws IOException {
+        if (this.spillReader != null) {
+            long[] values = this.spillReader.read();
+            return values == null ? null : new Tuple(values);
+        }
+        if (this.childExhausted) return null;
+        if (this.childBatch == null || this.childIndex >= this.childBatch.getCount()) {
+            this.childBatch = this.childOperator.getNextBatch();
+            this.childIndex = 0;
+            if (this.childBatch == null) return null;
+        }
+        int row = this.childBatch.rowAt(this.childIndex++);
+        long[] values = new long[this.projectIndices.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = this.childBatch.getColumn(this.projectIndices[i])[row];
+        }
+        return new Tuple(values);
+    }
+
+    /**
+     * Writes a tuple that did not fit in memory to the spill partition of its hash code.
+     *
+     * @param tuple the projected tuple
+     * @throws IOException if the spill file cannot be written
+     */
+    private void spill(Tuple tuple) throws IOException {
+        if (this.partitions == null) this.partitions = new SpillFile[SPILL_PARTITIONS];
+        // Each level uses different bits of the hash code, so that a partition is split again when it is spilled
+        int partition = (mix(tuple.hashCode()) >>> (4 * this.level)) & (SPILL_PARTITIONS - 1);
+        if (this.partitions[partition] == null) this.partitions[partition] = new SpillFile();
+        this.partitions[partition].write(tuple.getValues());
+    }
+
+    /**
+     * Finishes the current source and moves on to the next pending spill file, with an empty set of seen tuples.
+     *
+     * @return true if there is a spill file left to deduplicate, false if all tuples have been returned
+     * @throws IOException if a spill file cannot be written or opened
+     */
+    private boolean nextSource() throws IOException {
+        closeSource();
+        this.childExhausted = true;
+        if (this.partitions != null) {
+            for (SpillFile partition : this.partitions) {
+                if (partition == null) continue;
+                partition.finishWriting();
+                this.pendingSpills.push(partition);
+                this.pendingLevels.push(this.level + 1);
             }
-            nextTuple = this.childOperator.getNextTuple();
+            this.partitions = null;
         }
-        return null;
+        if (this.pendingSpills.isEmpty()) return false;
+        this.seen = new HashSet<>();
+        this.seenBytes = 0;
+        this.currentSpill = this.pendingSpills.pop();
+        this.level = this.pendingLevels.pop();
+        this.spillReader = this.currentSpill.openReader();
+        return true;
+    }
+
+    /**
+     * Closes and deletes the spill file being read, if any.
+     */
+    private void closeSource() {
+        if (this.spillReader != null) {
+            try {
+                this.spillReader.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            this.spillReader = null;
+        }
+        if (this.currentSpill != null) {
+            this.currentSpill.delete();
+            this.currentSpill = null;
+        }
+    }
+
+    /**
+     * Spreads the bits of a hash code, so that the partitions of every level receive a similar number of tuples.
+     *
+     * @param hash the hash code
+     * @return the mixed hash code
+     */
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        hash *= 0xC2B2AE35;
+        return hash ^ (hash >>> 16);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,209 @@
+/**
+ * The RelationIndex class is the base of the persistent secondary indexes over one column of a CSV relation file.
+ * An index maps the key of every row to the byte offset of the row in the file, so the matching rows can be read
+ * without scanning the file. Integer values are their own keys; string values are keyed by their hash code, so a
+ * lookup on a string column may return rows with a different value, which the operators above the index scan filter
+ * out like any other row.
+ * Every index file starts with a header recording the indexed column and the length and modification time of the
+ * relation file, so an index is only used while the relation file is unchanged.
+ */
+
+package ed.inf.adbs.minibase.operator;
+
+import ed.inf.adbs.minibase.base.Constant;
+import ed.inf.adbs.minibase.base.IntegerConstant;
+import ed.inf.adbs.minibase.base.StringConstant;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+public abstract class RelationIndex {
+    public static final int MAGIC = 0x4D424958;
+    public static final int VERSION = 1;
+    protected static final int HEADER_SIZE = 48;
+
+    protected final String path;
+    protected final MappedByteBuffer buffer;
+    private final int column;
+    private final boolean intColumn;
+    private final long sourceLength;
+    private final long sourceLastModified;
+    protected final int entryCount;
+
+    /**
+     * Opens an index file and reads its header.
+     *
+     * @param path the path of the index file
+     * @param kind the kind of index expected in the file
+     * @throws IOException if the file cannot be read or is not an index of that kind
+     */
+    protected RelationIndex(String path, String kind) throws IOException {
+        this.path = path;
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (this.buffer.limit() < HEADER_SIZE || this.buffer.getInt(0) != MAGIC || this.buffer.getInt(4) != VERSION)
+            throw new IOException("Not an index file: " + path);
+        if (this.buffer.get(8) != kindCode(kind)) throw new IOException("Not a " + kind + " index: " + path);
+        this.intColumn = this.buffer.get(9) == 0;
+        this.column = this.buffer.getInt(12);
+        this.sourceLength = this.buffer.getLong(16);
+        this.sourceLastModified = this.buffer.getLong(24);
+        this.entryCount = this.buffer.getInt(32);
+    }
+
+    /**
+     * Opens an index file of the given kind.
+     *
+     * @param path the path of the index file
+     * @param kind the kind of index, "hash" or "btree"
+     * @return the opened index
+     * @throws IOException if the file cannot be read or is not an index of that kind
+     */
+    public static RelationIndex open(String path, String kind) throws IOException {
+        if (kind.equals(HashIndex.KIND)) return new HashIndex(path);
+        if (kind.equals(BTreeIndex.KIND)) return new BTreeIndex(path);
+        throw new IllegalArgumentException("Unknown index kind: " + kind);
+    }
+
+    /**
+     * Builds an index file of the given kind over a column of a relation file.
+     *
+     * @param csvPath the path of the relation file
+     * @param schema the column types of the relation
+     * @param column the index of the indexed column
+     * @param kind the kind of index, "hash" or "btree"
+     * @param indexPath the path of the index file to write
+     * @return the number of indexed rows
+     * @throws IOException if a file cannot be read or written
+     */
+    public static int build(String csvPath, List<String> schema, int column, String kind, String indexPath) throws IOException {
+        if (column < 0 || column >= schema.size())
+            throw new IllegalArgumentException("Column " + column + " is out of range");
+        if (kind.equals(BTreeIndex.KIND) && !schema.get(column).equals("int"))
+            throw new IllegalArgumentException("B+tree indexes are only supported on int columns");
+        if (!kind.equals(HashIndex.KIND) && !kind.equals(BTreeIndex.KIND))
+            throw new IllegalArgumentException("Unknown index kind: " + kind);
+
+        File csvFile = new File(csvPath);
+        long sourceLength = csvFile.length();
+        long sourceLastModified = csvFile.lastModified();
+        CsvRelationReader reader = new CsvRelationReader(csvPath, schema);
+        boolean intColumn = schema.get(column).equals("int");
+        long[] keys = new long[1024];
+        long[] offsets = new long[1024];
+        int count = 0;
+        for (long offset = reader.nextRowOffset(); offset >= 0; offset = reader.nextRowOffset()) {
+            long[] row = reader.nextRow();
+            if (count == keys.length) {
+                keys = Arrays.copyOf(keys, 2 * count);
+                offsets = Arrays.copyOf(offsets, 2 * count);
+            }
+            keys[count] = intColumn ? row[column] : StringDictionary.decode(row[column]).hashCode();
+            offsets[count++] = offset;
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexPath)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeByte(kindCode(kind));
+            out.writeByte(intColumn ? 0 : 1);
+            out.writeShort(0);
+            out.writeInt(column);
+            out.writeLong(sourceLength);
+            out.writeLong(sourceLastModified);
+            out.writeInt(count);
+            out.write(new byte[HEADER_SIZE - 36]);
+            if (kind.equals(HashIndex.KIND)) HashIndex.writeEntries(out, keys, offsets, count);
+            else BTreeIndex.writeEntries(out, keys, offsets, count);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the index of the indexed column.
+     *
+     * @return the column index
+     */
+    public int getColumn() {
+        return column;
+    }
+
+    /**
+     * Returns the number of indexed rows.
+     *
+     * @return the entry count
+     */
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Checks whether the index still describes a relation file, that is, whether the file has the length
+     * and modification time it had when the index was built.
+     *
+     * @param csvPath the path of the relation file
+     * @return true if the index is up to date
+     */
+    public boolean isUpToDate(String csvPath) {
+        File csvFile = new File(csvPath);
+        return csvFile.length() == sourceLength && csvFile.lastModified() == sourceLastModified;
+    }
+
+    /**
+     * Checks whether the index supports range lookups.
+     *
+     * @return true if lookup accepts a range of keys, false if it only accepts single keys
+     */
+    public abstract boolean supportsRanges();
+
+    /**
+     * Returns the offsets of the rows whose key lies in a range, in increasing order of key and offset.
+     *
+     * @param low the smallest key, inclusive
+     * @param high the largest key, inclusive; equal to low for indexes without range support
+     * @return the offsets of the matching rows
+     */
+    public abstract long[] lookup(long low, long high);
+
+    /**
+     * Returns the key of a value of the indexed column.
+     *
+     * @param value the slot of the value
+     * @return the key of the value in the index
+     */
+    public long key(long value) {
+        return intColumn ? value : StringDictionary.decode(value).hashCode();
+    }
+
+    /**
+     * Returns the key of a constant compared with the indexed column.
+     *
+     * @param constant the constant
+     * @return the key of the constant, or null if it cannot match a value of the column
+     */
+    public Long key(Constant constant) {
+        if (intColumn && constant instanceof IntegerConstant) return (long) ((IntegerConstant) constant).getValue();
+        if (!intColumn && constant instanceof StringConstant) return (long) ((StringConstant) constant).getValue().hashCode();
+        return null;
+    }
+
+    /**
+     * Returns the code of an index kind in the header of its files.
+     *
+     * @param kind the kind of index
+     * @return the code of the kind
+     */
+    private static byte kindCode(String kind) {
+        return (byte) (kind.equals(HashIndex.KIND) ? 0 : 1);
+    }
+}
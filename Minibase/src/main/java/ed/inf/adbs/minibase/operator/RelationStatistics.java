@@ -0,0 +1,156 @@
+/**
+ * The RelationStatistics class holds the statistics of a relation collected by the Analyzer:
+ * its number of rows and the statistics of each of its columns.
+ * Statistics are stored in the stats.txt file of the database directory, with a line "R rows" per relation
+ * followed by a line "R column distinct min max bound..." per column, all fields separated by tabs.
+ */
+
+package ed.inf.adbs.minibase.operator;
+
+import ed.inf.adbs.minibase.base.*;
+
+import java.util.*;
+
+public class RelationStatistics {
+    // The number of rows sampled to build the histograms
+    private static final int SAMPLE_SIZE = 100000;
+
+    private final long rowCount;
+    private final List<ColumnStatistics> columns;
+
+    /**
+     * Constructs the statistics of a relation.
+     *
+     * @param rowCount the number of rows
+     * @param columns the statistics of each column
+     */
+    public RelationStatistics(long rowCount, List<ColumnStatistics> columns) {
+        this.rowCount = rowCount;
+        this.columns = columns;
+    }
+
+    /**
+     * Returns the number of rows of the relation.
+     *
+     * @return the row count
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Returns the statistics of a column of the relation.
+     *
+     * @param column the index of the column
+     * @return the statistics of the column, or null if the index is out of range
+     */
+    public ColumnStatistics getColumn(int column) {
+        return column >= 0 && column < columns.size() ? columns.get(column) : null;
+    }
+
+    /**
+     * Computes the statistics of a relation by reading all of its tuples. Distinct counts are exact,
+     * while the histograms are built from a uniform sample of rows.
+     *
+     * @param scan the operator producing the tuples of the relation
+     * @param columnCount the number of columns of the relation
+     * @param buckets the number of histogram buckets per column
+     * @return the statistics of the relation
+     */
+    public static RelationStatistics collect(Operator scan, int columnCount, int buckets) {
+        List<Set<Long>> distinct = new ArrayList<>();
+        List<List<Long>> samples = new ArrayList<>();
+        for (int i = 0; i < columnCount; i++) {
+            distinct.add(new HashSet<>());
+            samples.add(new ArrayList<>());
+        }
+        Random random = new Random(0);
+        long rows = 0;
+        Tuple tuple = scan.getNextTuple();
+        while (tuple != null) {
+            rows++;
+            // Reservoir sampling keeps every row in the sample with the same probability
+            int slot = rows <= SAMPLE_SIZE ? -1 : (int) (random.nextDouble() * rows);
+            for (int i = 0; i < columnCount; i++) {
+                long value = tuple.getValues()[i];
+                distinct.get(i).add(value);
+                if (slot < 0) samples.get(i).add(value);
+                else if (slot < SAMPLE_SIZE) samples.get(i).set(slot, value);
+            }
+            tuple = scan.getNextTuple();
+        }
+
+        List<ColumnStatistics> columns = new ArrayList<>();
+        for (int i = 0; i < columnCount; i++) {
+            // Decode the sampled slots, since string codes do not follow the order of the strings
+            List<Constant> sample = new ArrayList<>(samples.get(i).size());
+            for (long value : samples.get(i)) sample.add(Tuple.decode(value, scan.getVarsType().get(i)));
+            Collections.sort(sample);
+            columns.add(ColumnStatistics.fromSortedSample(distinct.get(i).size(), sample, buckets));
+        }
+        return new RelationStatistics(rows, columns);
+    }
+
+    /**
+     * Formats the statistics of a relation as lines of the statistics file.
+     *
+     * @param relationName the name of the relation
+     * @return the lines describing the relation
+     */
+    public List<String> toLines(String relationName) {
+        List<String> lines = new ArrayList<>();
+        lines.add(relationName + "\t" + rowCount);
+        for (int i = 0; i < columns.size(); i++) {
+            ColumnStatistics column = columns.get(i);
+            StringBuilder line = new StringBuilder(relationName + "\t" + i + "\t" + column.getDistinctValues());
+            if (column.getMin() != null) {
+                line.append("\t").append(column.getMin()).append("\t").append(column.getMax());
+                for (Constant bound : column.getHistogram()) line.append("\t").append(bound);
+            }
+            lines.add(line.toString());
+        }
+        return lines;
+    }
+
+    /**
+     * Parses the statistics file into the statistics of each relation.
+     *
+     * @param lines the lines of the statistics file
+     * @return the statistics by relation name
+     */
+    public static Map<String, RelationStatistics> parse(List<String> lines) {
+        Map<String, Long> rowCounts = new LinkedHashMap<>();
+        Map<String, List<ColumnStatistics>> columns = new HashMap<>();
+        for (String line : lines) {
+            if (line.trim().isEmpty()) continue;
+            String[] fields = line.split("\t");
+            if (fields.length == 2) {
+                rowCounts.put(fields[0], Long.parseLong(fields[1]));
+                columns.put(fields[0], new ArrayList<>());
+                continue;
+            }
+            long distinctValues = Long.parseLong(fields[2]);
+            Constant min = fields.length > 3 ? parseValue(fields[3]) : null;
+            Constant max = fields.length > 4 ? parseValue(fields[4]) : null;
+            List<Constant> histogram = new ArrayList<>();
+            for (int i = 5; i < fields.length; i++) histogram.add(parseValue(fields[i]));
+            columns.get(fields[0]).add(Integer.parseInt(fields[1]), new ColumnStatistics(distinctValues, min, max, histogram));
+        }
+        Map<String, RelationStatistics> statistics = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> entry : rowCounts.entrySet()) {
+            statistics.put(entry.getKey(), new RelationStatistics(entry.getValue(), columns.get(entry.getKey())));
+        }
+        return statistics;
+    }
+
+    /**
+     * Parses a value of the statistics file: a quoted string or an integer.
+     *
+     * @param field the field holding the value
+     * @return the value as a constant
+     */
+    private static Constant parseValue(String field) {
+        if (field.startsWith("'")) return StringConstant.valueOf(field.substring(1, field.length() - 1));
+        return IntegerConstant.valueOf(Integer.parseInt(field));
+    }
+}
@@ -1,20 +1,31 @@
 /**
  * This class represents a Scan Operator that reads data from a relation and returns the tuples.
+ * The relation file is memory-mapped and tokenized by a CsvRelationReader. A complete scan hands the decoded rows
+ * to the DatabaseCatalog cache, and later scans of the unchanged file iterate the cached rows instead.
+ * Batches are filled by copying the rows into the column vectors.
  */
 package ed.inf.adbs.minibase.operator;
 
 import ed.inf.adbs.minibase.base.*;
 
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Scanner;
 
 public class ScanOperator extends Operator{
     private final String relationName;
-    private Scanner scanner;
+    private CsvRelationReader reader;
     private final List<String> schema;
+    private boolean started = false;
+    private long length;
+    private long lastModified;
+    private List<long[]> cachedRows = null;
+    private int cachedIndex = 0;
+    private List<long[]> loadedRows = null;
+    private long loadedBytes = 0;
+    private Batch batch = null;
 
     /**
      * Constructs a new ScanOperator object for the given RelationalAtom.
@@ -29,21 +40,21 @@ public class ScanOperator extends Operator{
         this.relationName = atom.getName();
         DatabaseCatalog dbCat = DatabaseCatalog.getInstance();
         this.schema = dbCat.getSchema(relationName);
+        this.varsType.addAll(this.schema);
         this.reset();
     }
 
     /**
      * Resets the operator to the beginning of the relation.
+     * Whether the rows come from the cache or from the file is decided when the next tuple is requested.
      */
     @Override
     public void reset() {
-        DatabaseCatalog dbCat = DatabaseCatalog.getInstance();
-        try {
-            this.scanner = new Scanner(new File(dbCat.getRelationPath(relationName)));
-        } catch (FileNotFoundException e) {
-            System.out.println("Relation data file not found: " + dbCat.getRelationPath(relationName));
-            e.printStackTrace();
-        }
+        this.started = false;
+        this.cachedRows = null;
+        this.cachedIndex = 0;
+        this.loadedRows = null;
+        if (this.reader != null) this.reader.reset();
     }
 
     /**
@@ -53,20 +64,90 @@ public class ScanOperator extends Operator{
      */
     @Override
     public Tuple getNextTuple() {
-        if (this.scanner.hasNextLine()) {
-            String line = this.scanner.nextLine();
-            String[] rawData = line.split("[^a-zA-Z0-9]+");
-            ArrayList<Term> terms = new ArrayList<>();
-            for (int i = 0; i < rawData.length; i++) {
-                if (this.schema.get(i).equals("int")) {
-                    terms.add(new IntegerConstant(Integer.parseInt(rawData[i])));
-                } else {
-                    terms.add(new StringConstant(rawData[i]));
+        long[] row = nextRow();
+        return row == null ? null : new Tuple(row);
+    }
+
+    /**
+     * Returns the next batch of tuples in the relation, or null if there are no more tuples.
+     *
+     * @return the next batch of tuples in the relation, or null if there are no more tuples.
+     */
+    @Override
+    public Batch getNextBatch() {
+        if (this.batch == null) this.batch = new Batch(this.schema.size());
+        this.batch.clear();
+        while (!this.batch.isFull()) {
+            long[] row = nextRow();
+            if (row == null) break;
+            this.batch.addRow(row);
+        }
+        return this.batch.getSize() == 0 ? null : this.batch;
+    }
+
+    /**
+     * Returns the slots of the next row, from the cache or from the file.
+     *
+     * @return the slots of the next row, or null if there are no more rows.
+     */
+    private long[] nextRow() {
+        if (!this.started) start();
+        if (this.cachedRows != null) {
+            if (this.cachedIndex >= this.cachedRows.size()) return null;
+            return this.cachedRows.get(this.cachedIndex++);
+        }
+        if (this.reader == null) return null;
+        try {
+            long[] row = this.reader.nextRow();
+            if (row == null) {
+                // The whole file has been read, so its rows can be cached
+                if (this.loadedRows != null) {
+                    DatabaseCatalog.getInstance().cacheRelation(relationPath(), this.length, this.lastModified, this.loadedRows, this.loadedBytes);
+                    this.loadedRows = null;
                 }
+                return null;
+            }
+            if (this.loadedRows != null) {
+                this.loadedBytes += DatabaseCatalog.estimateRowSize(row);
+                if (this.loadedBytes > DatabaseCatalog.getInstance().getCacheBudget()) this.loadedRows = null;
+                else this.loadedRows.add(row);
             }
-            return new Tuple(this.relationName, terms);
-        } else {
-            return null;
+            return row;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Chooses the source of the scan: the cached rows if the file is unchanged since they were cached,
+     * otherwise the file itself, whose rows are collected for the cache while the scan proceeds.
+     */
+    private void start() {
+        this.started = true;
+        DatabaseCatalog dbCat = DatabaseCatalog.getInstance();
+        File relationFile = new File(relationPath());
+        this.length = relationFile.length();
+        this.lastModified = relationFile.lastModified();
+        this.cachedRows = dbCat.getCachedRelation(relationPath(), this.length, this.lastModified);
+        if (this.cachedRows != null) return;
+
+        this.loadedRows = new ArrayList<>();
+        this.loadedBytes = 0;
+        if (this.reader != null) return;
+        try {
+            this.reader = new CsvRelationReader(relationPath(), this.schema);
+        } catch (IOException e) {
+            System.out.println("Relation data file not found: " + relationPath());
+            e.printStackTrace();
         }
     }
+
+    /**
+     * Returns the path of the scanned relation file.
+     *
+     * @return the path of the relation file
+     */
+    private String relationPath() {
+        return DatabaseCatalog.getInstance().getRelationPath(this.relationName);
+    }
 }
@@ -6,7 +6,7 @@ import java.util.List;
 
 public class SelectOperator extends Operator {
     private final Operator childOperator;
-    private final List<ComparisonAtom> comparisonAtomList;
+    private final TuplePredicate[] predicates;
 
     /**
      * Constructs a new SelectOperator object with a child operator and a list of comparison atoms.
@@ -17,7 +17,12 @@ public class SelectOperator extends Operator {
     public SelectOperator(Operator childOperator, List<ComparisonAtom> compAtomList) {
         this.childOperator = childOperator;
         this.varsName = this.childOperator.getVarsName();
-        this.comparisonAtomList = compAtomList;
+        this.varsType = this.childOperator.getVarsType();
+        // Compile the comparison atoms against the columns of the child operator
+        this.predicates = new TuplePredicate[compAtomList.size()];
+        for (int i = 0; i < compAtomList.size(); i++) {
+            this.predicates[i] = TuplePredicate.compile(compAtomList.get(i), this.varsName, this.varsType);
+        }
     }
 
     /**
@@ -28,6 +33,16 @@ public class SelectOperator extends Operator {
         this.childOperator.reset();
     }
 
+    /**
+     * Returns the sort order of the child operator, which the selection keeps.
+     *
+     * @return the indices of the columns the tuples are sorted on
+     */
+    @Override
+    public int[] getSortOrder() {
+        return this.childOperator.getSortOrder();
+    }
+
     /**
      * Returns the next tuple that satisfies the comparison atoms.
      *
@@ -43,6 +58,25 @@ public class SelectOperator extends Operator {
         return null;
     }
 
+    /**
+     * Returns the next batch of tuples, keeping in the selection vector only the rows that satisfy the comparison atoms.
+     *
+     * @return The next batch with at least one selected row, or null if no such batch exists.
+     */
+    @Override
+    public Batch getNextBatch() {
+        Batch batch = this.childOperator.getNextBatch();
+        while (batch != null) {
+            for (TuplePredicate predicate : this.predicates) {
+                predicate.filter(batch);
+                if (batch.getCount() == 0) break;
+            }
+            if (batch.getCount() > 0) return batch;
+            batch = this.childOperator.getNextBatch();
+        }
+        return null;
+    }
+
     /**
      * Returns whether a tuple satisfies all the comparison atoms.
      *
@@ -50,51 +84,10 @@ public class SelectOperator extends Operator {
      * @return True if the tuple satisfies all the comparison atoms, false otherwise.
      */
     public boolean valid(Tuple tuple) {
-        for (ComparisonAtom compAtom : this.comparisonAtomList) {
-            String operation = compAtom.getOp().toString();
-            Term term1 = null;
-            Term term2 = null;
-            int term1Index = 0;
-            int term2Index = 0;
-            if (compAtom.getTerm1() instanceof Variable) term1Index = this.varsName.indexOf(((Variable) compAtom.getTerm1()).getName());
-            else term1 = compAtom.getTerm1();
-            if (compAtom.getTerm2() instanceof Variable) term2Index = this.varsName.indexOf(((Variable) compAtom.getTerm2()).getName());
-            else term2 = compAtom.getTerm2();
-
-            Term operand1 = term1 == null ? tuple.getTerms().get(term1Index) : term1;
-            Term operand2 = term2 == null ? tuple.getTerms().get(term2Index) : term2;
-
-            boolean valid;
-            boolean equals = operand1.toString().equals(operand2.toString());
-            switch (operation) {
-                case "=":
-                    valid = equals;
-                    break;
-                case "!=":
-                    valid = (!equals);
-                    break;
-                case ">":
-                    if (operand1 instanceof IntegerConstant) valid = ((IntegerConstant) operand1).getValue() > ((IntegerConstant) operand2).getValue();
-                    else valid = ((StringConstant) operand1).getValue().compareTo(((StringConstant) operand2).getValue()) > 0;
-                    break;
-                case ">=":
-                    if (operand1 instanceof IntegerConstant) valid = ((IntegerConstant) operand1).getValue() >= ((IntegerConstant) operand2).getValue();
-                    else valid = ((StringConstant) operand1).getValue().compareTo(((StringConstant) operand2).getValue()) >= 0;
-                    break;
-                case "<":
-                    if (operand1 instanceof IntegerConstant) valid = ((IntegerConstant) operand1).getValue() < ((IntegerConstant) operand2).getValue();
-                    else valid = ((StringConstant) operand1).getValue().compareTo(((StringConstant) operand2).getValue()) < 0;
-                    break;
-                case "<=":
-                    if (operand1 instanceof IntegerConstant) valid = ((IntegerConstant) operand1).getValue() <= ((IntegerConstant) operand2).getValue();
-                    else valid = ((StringConstant) operand1).getValue().compareTo(((StringConstant) operand2).getValue()) <= 0;
-                    break;
-                default:
-                    valid = false;
-                    break;
-            }
-            if (!valid) return false;
+        long[] values = tuple.getValues();
+        for (TuplePredicate predicate : this.predicates) {
+            if (!predicate.test(values, values)) return false;
         }
         return true;
     }
-}
\ No newline at end of file
+}
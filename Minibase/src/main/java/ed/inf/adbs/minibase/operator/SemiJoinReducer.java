@@ -0,0 +1,152 @@
+/**
+ * The SemiJoinReducer class runs the semi-join passes of the Yannakakis algorithm over the atoms of an acyclic query.
+ * The selected tuples of every atom are read into memory; a bottom-up pass over a join forest of the atoms then keeps
+ * the tuples of every parent that match a tuple of each of its children, and a top-down pass keeps the tuples of every
+ * child that match a tuple of its parent. Afterwards every remaining tuple takes part in the join of all atoms, so a
+ * join that adds the atoms along the edges of the forest builds no intermediate tuple that the output does not extend.
+ * The tuples of an atom repeating a variable are only kept when their columns holding it are equal.
+ * The reduced atoms are read through the operators returned by getAtomOperator; the reduction runs when the first of
+ * them is read, and is kept across resets.
+ */
+
+package ed.inf.adbs.minibase.operator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class SemiJoinReducer {
+    // The default strategy ("auto", "always" or "never"), configurable with -Dminibase.semijoin
+    public static final String DEFAULT_MODE = System.getProperty("minibase.semijoin", "auto");
+
+    private final List<Operator> atomOperators;
+    private final int[] parent;
+    private List<List<long[]>> reducedRows = null;
+
+    /**
+     * Constructs a SemiJoinReducer over the operators of the atoms.
+     *
+     * @param atomOperators the operators producing the selected tuples of the atoms
+     * @param parent the index of the parent of every atom in a join forest of the atoms, or -1 for the roots
+     */
+    public SemiJoinReducer(List<Operator> atomOperators, int[] parent) {
+        this.atomOperators = new ArrayList<>(atomOperators);
+        this.parent = parent;
+    }
+
+    /**
+     * Returns an operator producing the reduced tuples of an atom.
+     *
+     * @param atom the index of the atom
+     * @return the operator over the reduced tuples, with the columns of the operator of the atom
+     */
+    public Operator getAtomOperator(int atom) {
+        return new ReducedAtomOperator(atom);
+    }
+
+    /**
+     * Reads the tuples of every atom and runs the bottom-up and top-down semi-join passes.
+     */
+    private void reduce() {
+        int n = this.atomOperators.size();
+        this.reducedRows = new ArrayList<>();
+        for (Operator atomOperator : this.atomOperators) {
+            // A tuple repeating a variable takes part in no joined tuple unless its repeated columns are equal
+            List<String> vars = atomOperator.getVarsName();
+            List<int[]> repeated = new ArrayList<>();
+            for (int column = 0; column < vars.size(); column++) {
+                int first = vars.get(column) == null ? column : vars.indexOf(vars.get(column));
+                if (first != column) repeated.add(new int[]{first, column});
+            }
+            List<long[]> rows = new ArrayList<>();
+            for (Batch batch = atomOperator.getNextBatch(); batch != null; batch = atomOperator.getNextBatch()) {
+                for (int i = 0; i < batch.getCount(); i++) {
+                    long[] row = batch.getRow(batch.rowAt(i));
+                    boolean consistent = true;
+                    for (int[] pair : repeated) consistent &= row[pair[0]] == row[pair[1]];
+                    if (consistent) rows.add(row);
+                }
+            }
+            this.reducedRows.add(rows);
+        }
+
+        // Order the atoms so that every parent comes before its children
+        List<Integer> topDown = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (this.parent[i] < 0) topDown.add(i);
+        }
+        for (int k = 0; k < topDown.size(); k++) {
+            for (int i = 0; i < n; i++) {
+                if (this.parent[i] == topDown.get(k)) topDown.add(i);
+            }
+        }
+        for (int k = topDown.size() - 1; k >= 0; k--) {
+            int child = topDown.get(k);
+            if (this.parent[child] >= 0) semiJoin(this.parent[child], child);
+        }
+        for (int atom : topDown) {
+            if (this.parent[atom] >= 0) semiJoin(atom, this.parent[atom]);
+        }
+    }
+
+    /**
+     * Keeps the tuples of an atom that agree with a tuple of another atom on their shared variables.
+     *
+     * @param target the index of the atom whose tuples are filtered
+     * @param source the index of the atom whose tuples are matched
+     */
+    private void semiJoin(int target, int source) {
+        List<String> targetVars = this.atomOperators.get(target).getVarsName();
+        List<String> sourceVars = this.atomOperators.get(source).getVarsName();
+        List<Integer> targetKeys = new ArrayList<>();
+        List<Integer> sourceKeys = new ArrayList<>();
+        for (int column = 0; column < targetVars.size(); column++) {
+            String var = targetVars.get(column);
+            if (var == null || targetVars.indexOf(var) != column || !sourceVars.contains(var)) continue;
+            targetKeys.add(column);
+            sourceKeys.add(sourceVars.indexOf(var));
+        }
+        int[] targetColumns = targetKeys.stream().mapToInt(Integer::intValue).toArray();
+        JoinHashTable table = new JoinHashTable(sourceKeys.stream().mapToInt(Integer::intValue).toArray());
+        for (long[] row : this.reducedRows.get(source)) table.add(row);
+        table.build();
+        List<long[]> kept = new ArrayList<>();
+        for (long[] row : this.reducedRows.get(target)) {
+            if (table.first(row, targetColumns) >= 0) kept.add(row);
+        }
+        this.reducedRows.set(target, kept);
+    }
+
+    /**
+     * An operator reading the reduced tuples of one atom.
+     */
+    private class ReducedAtomOperator extends Operator {
+        private final int atom;
+        private int nextRow = 0;
+
+        private ReducedAtomOperator(int atom) {
+            this.atom = atom;
+            this.varsName = atomOperators.get(atom).getVarsName();
+            this.varsType = atomOperators.get(atom).getVarsType();
+        }
+
+        /**
+         * Rewinds to the first reduced tuple of the atom.
+         */
+        @Override
+        public void reset() {
+            this.nextRow = 0;
+        }
+
+        /**
+         * Returns the next reduced tuple of the atom, reducing all atoms on the first call.
+         *
+         * @return the next tuple, or null if there are no more tuples
+         */
+        @Override
+        public Tuple getNextTuple() {
+            if (reducedRows == null) reduce();
+            List<long[]> rows = reducedRows.get(this.atom);
+            return this.nextRow < rows.size() ? new Tuple(rows.get(this.nextRow++)) : null;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * The SharedBuild class holds the build side of a join in a parallel plan: the rows of a relational atom that pass
+ * its selections, read once by parallel workers and shared by the join operators of every probe pipeline.
+ * The rows are gathered in morsel order, so they are in the same order as in a serial scan. Hash tables over the rows
+ * are built once per key and are only read afterwards, so the probe workers can use them concurrently.
+ */
+
+package ed.inf.adbs.minibase.operator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class SharedBuild {
+    private final MorselSource source;
+    private final MorselScanOperator[] scans;
+    private final Operator[] pipelines;
+    private List<long[]> rows = null;
+    private final Map<String, JoinHashTable> hashTables = new HashMap<>();
+
+    /**
+     * Constructs a SharedBuild reading the rows of the build pipelines.
+     *
+     * @param source the morsel source of the build side
+     * @param scans the scan of the pipeline of every worker
+     * @param pipelines the root of the pipeline of every worker, applying the selections of the atom
+     */
+    public SharedBuild(MorselSource source, MorselScanOperator[] scans, Operator[] pipelines) {
+        this.source = source;
+        this.scans = scans;
+        this.pipelines = pipelines;
+    }
+
+    /**
+     * Returns an operator producing the columns of the build side, for computing the schema of a join.
+     *
+     * @return the pipeline of the first worker
+     */
+    public Operator getTemplate() {
+        return pipelines[0];
+    }
+
+    /**
+     * Reads the rows of the build side with one worker per pipeline, if they have not been read yet.
+     * It must not be called from a worker thread.
+     */
+    public synchronized void build() {
+        if (rows != null) return;
+        source.open();
+        source.reset();
+        List<List<long[]>> morselRows = new ArrayList<>();
+        for (int i = 0; i < source.getMorselCount(); i++) morselRows.add(null);
+        ParallelExecution.run(source, scans, pipelines, (worker, morsel, pipeline) -> {
+            List<long[]> output = new ArrayList<>();
+            ParallelExecution.drain(pipeline, output);
+            synchronized (morselRows) {
+                morselRows.set(morsel, output);
+            }
+        });
+        List<long[]> gathered = new ArrayList<>();
+        for (List<long[]> output : morselRows) gathered.addAll(output);
+        rows = gathered;
+    }
+
+    /**
+     * Returns the rows of the build side, reading them first if needed.
+     *
+     * @return the rows, in the order of a serial scan
+     */
+    public synchronized List<long[]> getRows() {
+        build();
+        return rows;
+    }
+
+    /**
+     * Returns a hash table over the rows of the build side, building it on the first request for the given key.
+     *
+     * @param keyColumns the key columns of the hash table
+     * @return the hash table
+     */
+    public synchronized JoinHashTable getHashTable(int[] keyColumns) {
+        JoinHashTable table = hashTables.get(Arrays.toString(keyColumns));
+        if (table != null) return table;
+        table = new JoinHashTable(keyColumns);
+        for (long[] row : getRows()) table.add(row);
+        table.build();
+        hashTables.put(Arrays.toString(keyColumns), table);
+        return table;
+    }
+}
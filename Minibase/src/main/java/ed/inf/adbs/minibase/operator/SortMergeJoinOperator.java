@@ -0,0 +1,161 @@
+/**
+ * The SortMergeJoinOperator class represents an equi-join on the variables shared by its two children, computed by
+ * merging both children sorted on their shared-variable columns. A child that is not already sorted on those columns
+ * is read through an ExternalSortOperator, so neither child needs to fit in memory; only the right tuples sharing one
+ * key are buffered at a time, and they are reused for consecutive left tuples with that key.
+ * The output is in the order of the left child, so it keeps the sort order of the left child.
+ * It inherits the JoinOperator class, which computes the output variables and the remaining join conditions.
+ */
+
+package ed.inf.adbs.minibase.operator;
+
+import ed.inf.adbs.minibase.base.ComparisonAtom;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class SortMergeJoinOperator extends JoinOperator {
+    private final int[] leftKeyIndices;
+    private final int[] rightKeyIndices;
+    private final Operator leftInput;
+    private final Operator rightInput;
+    private final List<Tuple> rightGroup = new ArrayList<>();
+    private int groupIndex = 0;
+    private Tuple nextRight = null;
+    private boolean started = false;
+
+    /**
+     * Constructs a SortMergeJoinOperator object that joins the tuples of the left and right child operators
+     * on their shared variables, sorting the children that are not already sorted on them.
+     *
+     * @param leftChildOperator the left child operator
+     * @param rightChildOperator the right child operator
+     * @param comparisonAtoms the list of comparison atoms for the join condition
+     */
+    public SortMergeJoinOperator(Operator leftChildOperator, Operator rightChildOperator, List<ComparisonAtom> comparisonAtoms) {
+        super(leftChildOperator, rightChildOperator, comparisonAtoms);
+        this.leftKeyIndices = new int[this.joinConditionIndices.size()];
+        this.rightKeyIndices = new int[this.joinConditionIndices.size()];
+        // Order the keys as the shared variables appear in the left child, as isSortedOn expects
+        int k = 0;
+        for (int leftColumn = 0; leftColumn < this.leftVarsName.size(); leftColumn++) {
+            if (!this.joinConditionIndices.containsKey(leftColumn)) continue;
+            this.leftKeyIndices[k] = leftColumn;
+            this.rightKeyIndices[k++] = this.joinConditionIndices.get(leftColumn);
+        }
+        this.leftInput = isSortedOn(leftChildOperator, this.leftKeyIndices)
+                ? leftChildOperator : new ExternalSortOperator(leftChildOperator, this.leftKeyIndices);
+        this.rightInput = isSortedOn(rightChildOperator, this.rightKeyIndices)
+                ? rightChildOperator : new ExternalSortOperator(rightChildOperator, this.rightKeyIndices);
+    }
+
+    /**
+     * Resets both inputs and the merge state.
+     */
+    @Override
+    public void reset() {
+        this.leftInput.reset();
+        this.rightInput.reset();
+        this.leftTuple = null;
+        this.rightGroup.clear();
+        this.groupIndex = 0;
+        this.nextRight = null;
+        this.started = false;
+    }
+
+    /**
+     * Returns the next tuple produced by merging the sorted children.
+     *
+     * @return the next joined tuple, or null if there are no more tuples
+     */
+    @Override
+    public Tuple getNextTuple() {
+        if (!this.started) {
+            this.started = true;
+            this.nextRight = this.rightInput.getNextTuple();
+        }
+        while (true) {
+            // Join the current left tuple with the remaining tuples of its right group
+            if (this.leftTuple != null && this.groupIndex < this.rightGroup.size()) {
+                Tuple rightTuple = this.rightGroup.get(this.groupIndex++);
+                if (valid(this.leftTuple, rightTuple)) return joinTuples(this.leftTuple, rightTuple);
+                continue;
+            }
+            this.leftTuple = this.leftInput.getNextTuple();
+            this.groupIndex = 0;
+            if (this.leftTuple == null) return null;
+            if (!this.rightGroup.isEmpty() && compareKeys(this.leftTuple, this.rightGroup.get(0)) == 0) continue;
+
+            // Skip the right tuples with smaller keys, then buffer those with the key of the left tuple
+            this.rightGroup.clear();
+            while (this.nextRight != null && compareKeys(this.leftTuple, this.nextRight) > 0)
+                this.nextRight = this.rightInput.getNextTuple();
+            while (this.nextRight != null && compareKeys(this.leftTuple, this.nextRight) == 0) {
+                this.rightGroup.add(this.nextRight);
+                this.nextRight = this.rightInput.getNextTuple();
+            }
+            if (this.rightGroup.isEmpty() && this.nextRight == null) return null;
+        }
+    }
+
+    /**
+     * Returns the sort order of the left child, which the output keeps.
+     *
+     * @return the indices of the columns the output is sorted on
+     */
+    @Override
+    public int[] getSortOrder() {
+        return this.leftInput.getSortOrder();
+    }
+
+    /**
+     * Compares the shared-variable columns of a left and a right tuple.
+     *
+     * @param leftTuple the tuple from the left child
+     * @param rightTuple the tuple from the right child
+     * @return a negative number, zero or a positive number if the key of the left tuple is smaller than, equal to
+     *         or greater than the key of the right tuple
+     */
+    private int compareKeys(Tuple leftTuple, Tuple rightTuple) {
+        long[] left = leftTuple.getValues();
+        long[] right = rightTuple.getValues();
+        for (int k = 0; k < this.leftKeyIndices.length; k++) {
+            int comparison = Long.compare(left[this.leftKeyIndices[k]], right[this.rightKeyIndices[k]]);
+            if (comparison != 0) return comparison;
+        }
+        return 0;
+    }
+
+    /**
+     * Checks whether an operator is sorted on the columns of the given variables, so that a sort-merge join on those
+     * variables reads it without sorting it. The variables of a join are its shared variables in the order of the left child.
+     *
+     * @param operator the operator
+     * @param variables the variables, most significant first
+     * @return true if the tuples of the operator are sorted on the variables
+     */
+    public static boolean isSortedOn(Operator operator, List<String> variables) {
+        int[] columns = new int[variables.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = operator.getVarsName().indexOf(variables.get(i));
+            if (columns[i] < 0) return false;
+        }
+        return isSortedOn(operator, columns);
+    }
+
+    /**
+     * Checks whether an operator is sorted on the given columns, that is, whether they are a prefix of its sort order.
+     *
+     * @param operator the operator
+     * @param columns the columns, most significant first
+     * @return true if the tuples of the operator are sorted on the columns
+     */
+    private static boolean isSortedOn(Operator operator, int[] columns) {
+        int[] order = operator.getSortOrder();
+        if (order.length < columns.length) return false;
+        for (int i = 0; i < columns.length; i++) {
+            if (order[i] != columns[i]) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * The SpillFile class represents a temporary file holding rows that do not fit in the memory budget of an operator.
+ * Rows are appended with write, and once finishWriting has been called they can be read back in the same order,
+ * any number of times. Each row is stored as its number of slots followed by the slots. String slots hold
+ * StringDictionary codes, which are only valid in the process that wrote the file, as is the file itself.
+ */
+
+package ed.inf.adbs.minibase.operator;
+
+import java.io.*;
+
+public class SpillFile {
+    private final File file;
+    private DataOutputStream out;
+    private long rowCount = 0;
+
+    /**
+     * Creates an empty temporary spill file.
+     *
+     * @throws IOException if the file cannot be created
+     */
+    public SpillFile() throws IOException {
+        this.file = File.createTempFile("minibase-spill", ".tmp");
+        this.file.deleteOnExit();
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.file)));
+    }
+
+    /**
+     * Appends a row to the file.
+     *
+     * @param values the slots of the row
+     * @throws IOException if the row cannot be written
+     */
+    public void write(long[] values) throws IOException {
+        out.writeInt(values.length);
+        for (long value : values) out.writeLong(value);
+        rowCount++;
+    }
+
+    /**
+     * Closes the file for writing.
+     *
+     * @throws IOException if the buffered rows cannot be written
+     */
+    public void finishWriting() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    /**
+     * Returns the number of rows written to the file.
+     *
+     * @return the row count
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Opens a reader over the rows of the file, from the first one.
+     *
+     * @return the reader
+     * @throws IOException if the file cannot be opened
+     */
+    public Reader openReader() throws IOException {
+        finishWriting();
+        return new Reader();
+    }
+
+    /**
+     * Deletes the file.
+     */
+    public void delete() {
+        try {
+            finishWriting();
+        } catch (IOException e) {
+            // The file is deleted anyway
+        }
+        file.delete();
+    }
+
+    /**
+     * A sequential reader over the rows of a spill file.
+     */
+    public class Reader implements Closeable {
+        private final DataInputStream in;
+        private long rowsRead = 0;
+
+        private Reader() throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        }
+
+        /**
+         * Reads the next row of the file.
+         *
+         * @return the slots of the next row, or null if all rows have been read
+         * @throws IOException if the row cannot be read
+         */
+        public long[] read() throws IOException {
+            if (rowsRead == rowCount) return null;
+            long[] values = new long[in.readInt()];
+            for (int i = 0; i < values.length; i++) values[i] = in.readLong();
+            rowsRead++;
+            return values;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
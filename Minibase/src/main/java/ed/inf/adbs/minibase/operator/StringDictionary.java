@@ -0,0 +1,63 @@
+/**
+ * The StringDictionary class assigns a code to every distinct string value read or compared by the query engine,
+ * so that tuples can store strings as numbers. The dictionary is shared by all operators and relations, so two slots
+ * hold equal strings exactly when they hold the same code, and string equality never needs to look at characters.
+ * Codes are assigned in the order in which values are first seen and are never reused, so they do not follow the
+ * lexicographic order; ordering comparisons decode both values.
+ */
+
+package ed.inf.adbs.minibase.operator;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+public final class StringDictionary {
+    private static final ConcurrentHashMap<String, Integer> codes = new ConcurrentHashMap<>();
+    private static volatile String[] values = new String[1024];
+    private static int size = 0;
+
+    private StringDictionary() {
+    }
+
+    /**
+     * Returns the code of a string, assigning a new code if the string has not been seen yet.
+     *
+     * @param value the string value
+     * @return the code of the value
+     */
+    public static int encode(String value) {
+        Integer code = codes.get(value);
+        if (code != null) return code;
+        synchronized (StringDictionary.class) {
+            code = codes.get(value);
+            if (code != null) return code;
+            // The value is stored before its code is published, so a code read from the map can always be decoded
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size] = value;
+            codes.put(value, size);
+            return size++;
+        }
+    }
+
+    /**
+     * Returns the string value of a code.
+     *
+     * @param code a code returned by encode
+     * @return the string value
+     */
+    public static String decode(long code) {
+        return values[(int) code];
+    }
+
+    /**
+     * Compares the string values of two codes lexicographically.
+     *
+     * @param code1 the code of the first value
+     * @param code2 the code of the second value
+     * @return a negative number, zero or a positive number as the first value is smaller, equal or greater
+     */
+    public static int compare(long code1, long code2) {
+        if (code1 == code2) return 0;
+        return decode(code1).compareTo(decode(code2));
+    }
+}
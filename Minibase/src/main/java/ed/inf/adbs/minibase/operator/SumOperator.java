@@ -1,135 +1,168 @@
 /**
- * The SumOperator class represents an operator that performs a sum operation on a column of integers from a given child operator.
+ * The SumOperator class represents an operator that groups the tuples of its child operator by the head variables
+ * and sums the product of the factors of the SUM aggregate over every group.
+ * Groups are accumulated in a GroupByHashTable with long sums and returned in the order in which they were first seen.
+ * A query without group-by variables returns a single tuple, with a zero sum if the child operator has no tuple.
+ * The child operator is read a batch at a time, and the groups can be returned one at a time or in batches.
  */
 
 package ed.inf.adbs.minibase.operator;
 
 import ed.inf.adbs.minibase.base.*;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Objects;
 
 public class SumOperator extends Operator {
-    private boolean done = false;
     protected Operator childOperator;
     protected String projectionName;
-    protected int sumIndex;
-    protected String sumVar;
-    protected List<Integer> projectIndices = new ArrayList<>();
-    protected List<Integer> output = new ArrayList<>();
-    protected HashMap<String, Integer> tupleIndex = new HashMap<>();
-    public String var;
-    public List<List<Term>> termList = new ArrayList<>();
+    protected int[] groupIndices;
+    // For every factor of the product, the index of its column in the child tuples, or -1 for a constant factor
+    protected int[] factorIndices;
+    // The product of the constant factors
+    protected long constantFactor = 1;
+    protected GroupByHashTable groups = null;
+    private int nextGroup = 0;
+    private Batch output = null;
 
     /**
      * Constructs a SumOperator object with a child operator and a query head that specifies
-     * the name of the projection and the variable name for the sum operation.
+     * the name of the projection, the group-by variables and the sum aggregate.
      *
      * @param childOperator the child operator to perform the sum operation on
-     * @param queryHead the query head that specifies the name of the projection and the
-     *                  variable name for the sum operation
+     * @param queryHead the query head whose last term is the sum aggregate
      */
     public SumOperator(Operator childOperator, RelationalAtom queryHead) {
+        this(queryHead, childOperator.getVarsName(), childOperator.getVarsType());
         this.childOperator = childOperator;
-        List<String> childVarsName = childOperator.getVarsName();
+    }
+
+    /**
+     * Constructs a SumOperator without a child operator, for subclasses that compute the groups from other inputs.
+     * The group-by and factor indices refer to the given columns.
+     *
+     * @param queryHead the query head whose last term is the sum aggregate
+     * @param childVarsName the variable names of the columns the indices refer to
+     * @param childVarsType the types of those columns
+     */
+    protected SumOperator(RelationalAtom queryHead, List<String> childVarsName, List<String> childVarsType) {
         this.projectionName = queryHead.getName();
-        // Create a list of indices of the columns to be projected
-        for (int i = 0; i < queryHead.getTerms().size() - 1; i++) {
+        int sumIndex = queryHead.getTerms().size() - 1;
+        // Create a list of indices of the group-by columns
+        this.groupIndices = new int[sumIndex];
+        for (int i = 0; i < sumIndex; i++) {
             String varName = ((Variable) queryHead.getTerms().get(i)).getName();
-            int index = childVarsName.indexOf(varName);
-            this.projectIndices.add(index);
+            this.groupIndices[i] = childVarsName.indexOf(varName);
             this.varsName.add(varName);
+            this.varsType.add(childVarsType.get(this.groupIndices[i]));
+        }
+        // Resolve every factor of the product to a column or fold it into the constant factor
+        SumAggregate sumTerm = (SumAggregate) queryHead.getTerms().get(sumIndex);
+        List<Term> productTerms = sumTerm.getProductTerms();
+        this.factorIndices = new int[productTerms.size()];
+        for (int i = 0; i < productTerms.size(); i++) {
+            Term factor = productTerms.get(i);
+            if (factor instanceof Variable) {
+                this.factorIndices[i] = childVarsName.indexOf(((Variable) factor).getName());
+            } else {
+                this.factorIndices[i] = -1;
+                this.constantFactor *= ((IntegerConstant) factor).getValue();
+            }
         }
-        // Get the index of the variable for the sum operation
-        this.sumIndex = queryHead.getTerms().size()-1;
-        SumAggregate sumTerm = ((SumAggregate) queryHead.getTerms().get(this.sumIndex));
-        this.var = sumTerm.getProductTerms().get(0).toString();
-        int index = childVarsName.indexOf(this.var);
-        this.projectIndices.add(index);
         this.varsName.add(sumTerm.toString());
+        this.varsType.add("int");
     }
 
     /**
-     * Resets the operator by resetting its child operator and clearing its output list and tuple index.
+     * Resets the operator by resetting its child operator and discarding its groups.
      */
     @Override
     public void reset() {
-        this.childOperator.reset();
-        this.tupleIndex = new HashMap<>();
-        this.output = new ArrayList<>();
+        if (this.childOperator != null) this.childOperator.reset();
+        this.groups = null;
+        this.nextGroup = 0;
     }
 
     /**
-     * Retrieves the next tuple resulting from the sum operation. If the sum operation is
-     * complete and there are no more tuples to be processed, this method returns null.
+     * Retrieves the next group with its sum. The child operator is fully consumed by the first call.
      *
-     * @return the next tuple resulting from the sum operation, or null if the sum operation
-     *         is complete and there are no more tuples to be processed
+     * @return the next tuple resulting from the sum operation, or null if all groups have been returned
      */
     @Override
     public Tuple getNextTuple() {
-        if (Objects.equals(this.var, "1")) {
-            if (done) return null;
-            done = true;
-            return aggregateColumn();
-        } else {
-            aggregate();
-            if (this.output.size() > 0) {
-                int constant = this.output.remove(0);
-                List<Term> termList = new ArrayList<>(this.termList.remove(0));
-                termList.add(this.sumIndex, new IntegerConstant(constant));
-                return new Tuple("SUM("+this.sumVar +")", termList);
-            } else {
-                return null;
-            }
+        if (this.groups == null) aggregate();
+        if (this.nextGroup == this.groups.size()) return null;
+        long[] values = Arrays.copyOf(this.groups.getKey(this.nextGroup), this.groupIndices.length + 1);
+        values[this.groupIndices.length] = this.groups.getSum(this.nextGroup);
+        this.nextGroup++;
+        return new Tuple(values);
+    }
+
+    /**
+     * Retrieves the next batch of groups with their sums. The child operator is fully consumed by the first call.
+     *
+     * @return the next batch resulting from the sum operation, or null if all groups have been returned
+     */
+    @Override
+    public Batch getNextBatch() {
+        if (this.groups == null) aggregate();
+        if (this.output == null) this.output = new Batch(this.groupIndices.length + 1);
+        int size = Math.min(this.output.getCapacity(), this.groups.size() - this.nextGroup);
+        if (size == 0) return null;
+        for (int row = 0; row < size; row++) {
+            long[] key = this.groups.getKey(this.nextGroup);
+            for (int c = 0; c < key.length; c++) this.output.getColumn(c)[row] = key[c];
+            this.output.getColumn(key.length)[row] = this.groups.getSum(this.nextGroup++);
         }
+        this.output.setSize(size);
+        return this.output;
     }
 
     /**
-     * Processes each tuple from the child operator, aggregates the values in the sum variable
-     * column, and stores the result in the output list.
+     * Processes each batch from the child operator and adds the product of the factors of every row
+     * to the sum of its group.
      */
     protected void aggregate() {
-        Tuple tuple = this.childOperator.getNextTuple();
-        while (tuple != null) {
-            List<Term> termList = new ArrayList<>();
-            for (int index : this.projectIndices) {
-                termList.add(tuple.getTerms().get(index));
-            }
-            Tuple newTuple = new Tuple(this.projectionName, termList);
-            IntegerConstant aggTerm = (IntegerConstant) newTuple.getTerms().remove(this.sumIndex);
-
-            String bufferKey = newTuple.getTerms().toString();
-            if (this.tupleIndex.containsKey(bufferKey)) {
-                int bufferIndex = this.tupleIndex.get(bufferKey);
-                int k = this.output.get(bufferIndex);
-                k += aggTerm.getValue();
-                this.output.set(bufferIndex, k);
-            } else {
-                this.output.add(aggTerm.getValue());
-                this.termList.add(newTuple.getTerms());
-                this.tupleIndex.put(bufferKey, this.output.size()-1);
-            }
-            tuple = this.childOperator.getNextTuple();
-        }
+        this.groups = new GroupByHashTable();
+        accumulate(this.childOperator, this.groups, 0);
     }
 
     /**
-     * Aggregates the number of rows in the child operator by counting the number of tuples returned.
+     * Adds the product of the factors of every row of an operator to the sum of its group in a table.
+     * Each row is given as order its position in the output of the operator, counted from firstOrder.
+     * Without group-by variables, the products are summed in a local accumulator and added to the single group,
+     * which exists even over no tuple.
      *
-     @return a Tuple with the number of rows as the only term.
+     * @param child the operator whose rows are aggregated
+     * @param table the table receiving the sums
+     * @param firstOrder the order of the first row
      */
-    public Tuple aggregateColumn() {
-        Tuple tuple = this.childOperator.getNextTuple();
-        int k = 0;
-        while (tuple != null) {
-            k++;
-            tuple = this.childOperator.getNextTuple();
+    protected void accumulate(Operator child, GroupByHashTable table, long firstOrder) {
+        long[] key = new long[this.groupIndices.length];
+        long total = 0;
+        long order = firstOrder;
+        Batch batch = child.getNextBatch();
+        while (batch != null) {
+            long[][] groupColumns = new long[this.groupIndices.length][];
+            for (int k = 0; k < groupColumns.length; k++) groupColumns[k] = batch.getColumn(this.groupIndices[k]);
+            long[][] factorColumns = new long[this.factorIndices.length][];
+            int factors = 0;
+            for (int index : this.factorIndices) {
+                if (index >= 0) factorColumns[factors++] = batch.getColumn(index);
+            }
+            for (int i = 0; i < batch.getCount(); i++) {
+                int row = batch.rowAt(i);
+                long product = this.constantFactor;
+                for (int f = 0; f < factors; f++) product *= factorColumns[f][row];
+                if (key.length == 0) {
+                    total += product;
+                    continue;
+                }
+                for (int k = 0; k < key.length; k++) key[k] = groupColumns[k][row];
+                table.add(key, product, order++);
+            }
+            batch = child.getNextBatch();
         }
-        List<Term> termList = new ArrayList<>();
-        termList.add(this.sumIndex, new IntegerConstant(k));
-        return new Tuple(this.projectionName, termList);
+        if (key.length == 0) table.add(key, total, firstOrder);
     }
-}
\ No newline at end of file
+}
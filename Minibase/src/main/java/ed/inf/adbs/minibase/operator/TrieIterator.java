@@ -0,0 +1,158 @@
+/**
+ * The TrieIterator class presents rows sorted lexicographically by their slots as a trie, whose levels are the columns
+ * of the rows: the nodes at a level below a node are the distinct values of the column among the rows sharing the
+ * prefix of that node. The iterator is positioned on a node; open descends to the first child of the node, up returns
+ * to the parent, and next and seek move to the following siblings. Moves look up the sorted rows by galloping search,
+ * so seeking forward costs logarithmic time in the distance moved.
+ * Duplicate rows are kept, and the number of rows below a node gives the multiplicity of the prefix of the node.
+ */
+
+package ed.inf.adbs.minibase.operator;
+
+public class TrieIterator {
+    private final long[][] rows;
+    // For every open level: the end of the rows below the parent node, and the first row of the current node
+    private final int[] high;
+    private final int[] position;
+    private int depth = -1;
+
+    /**
+     * Constructs an iterator positioned above the root level of the trie.
+     *
+     * @param rows the rows, sorted lexicographically by increasing slot values
+     * @param width the number of columns of the rows
+     */
+    public TrieIterator(long[][] rows, int width) {
+        this.rows = rows;
+        this.high = new int[width];
+        this.position = new int[width];
+    }
+
+    /**
+     * Returns the number of rows of the trie.
+     *
+     * @return the row count
+     */
+    public int size() {
+        return rows.length;
+    }
+
+    /**
+     * Returns the level of the current node.
+     *
+     * @return the index of the column of the current node, or -1 above the root level
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Descends to the first child of the current node, or to the first node of the root level.
+     */
+    public void open() {
+        int from = depth < 0 ? 0 : position[depth];
+        int to = depth < 0 ? rows.length : nodeEnd();
+        depth++;
+        high[depth] = to;
+        position[depth] = from;
+    }
+
+    /**
+     * Returns to the parent of the current node.
+     */
+    public void up() {
+        depth--;
+    }
+
+    /**
+     * Checks whether the iterator has moved past the last sibling of its level.
+     *
+     * @return true if there is no current node
+     */
+    public boolean atEnd() {
+        return position[depth] >= high[depth];
+    }
+
+    /**
+     * Returns the value of the current node.
+     *
+     * @return the slot of the current node
+     */
+    public long key() {
+        return rows[position[depth]][depth];
+    }
+
+    /**
+     * Moves to the next sibling of the current node.
+     */
+    public void next() {
+        position[depth] = search(position[depth], high[depth], key(), true);
+    }
+
+    /**
+     * Moves to the first sibling, from the current node on, whose value is at least a given value.
+     *
+     * @param value the value to reach
+     */
+    public void seek(long value) {
+        position[depth] = search(position[depth], high[depth], value, false);
+    }
+
+    /**
+     * Returns the number of rows below the current node, which is the multiplicity of its prefix at the last level.
+     *
+     * @return the number of rows sharing the prefix of the current node
+     */
+    public int count() {
+        return nodeEnd() - position[depth];
+    }
+
+    /**
+     * Returns the end of the range of rows below the current node.
+     *
+     * @return the index of the first row after the current node
+     */
+    private int nodeEnd() {
+        return search(position[depth], high[depth], key(), true);
+    }
+
+    /**
+     * Finds the first row of a range whose value at the current level is greater than, or at least, a given value.
+     * The range is sorted on the current level, since all its rows share the prefix of the levels above.
+     *
+     * @param from the first row of the range
+     * @param to the end of the range, exclusive
+     * @param value the value to compare with
+     * @param strict true to find a greater value, false to find a value at least as large
+     * @return the index of the row found, or to if there is none
+     */
+    private int search(int from, int to, long value, boolean strict) {
+        // Gallop to a window holding the answer, then search it by bisection
+        int step = 1;
+        int bound = from;
+        while (bound < to && before(rows[bound][depth], value, strict)) {
+            from = bound + 1;
+            bound += step;
+            step <<= 1;
+        }
+        int end = Math.min(bound, to);
+        while (from < end) {
+            int middle = (from + end) >>> 1;
+            if (before(rows[middle][depth], value, strict)) from = middle + 1;
+            else end = middle;
+        }
+        return from;
+    }
+
+    /**
+     * Checks whether a slot comes before the row searched for.
+     *
+     * @param slot the slot of a row
+     * @param value the value searched for
+     * @param strict true if rows equal to the value come before it
+     * @return true if the row comes before the one searched for
+     */
+    private static boolean before(long slot, long value, boolean strict) {
+        return strict ? slot <= value : slot < value;
+    }
+}
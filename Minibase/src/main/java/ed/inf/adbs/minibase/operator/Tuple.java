@@ -1,54 +1,130 @@
 /**
- * The Tuple class represents a row in a relation, which consists of a relation name and a list of terms.
+ * The Tuple class represents a row in a relation as an array of slots, one per column.
+ * An int column stores its value in the slot and a string column stores the code of its value in the StringDictionary,
+ * so a row is a single array of primitives. The types of the columns are known by the operator producing the tuple
+ * (see Operator.getVarsType), which uses them to decode the slots into terms when they are written out.
+ * Tuples are never modified once created, so operators may share their arrays.
  */
 
 package ed.inf.adbs.minibase.operator;
 
-import ed.inf.adbs.minibase.Utils;
-import ed.inf.adbs.minibase.base.Term;
+import ed.inf.adbs.minibase.base.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class Tuple {
-    private final String relationName;
-    private final List<Term> terms;
+    private final long[] values;
 
     /**
-     * Creates a Tuple object with the specified relation name and list of terms.
+     * Creates a Tuple object with the specified slots.
      *
-     * @param relationName the name of the relation
-     * @param terms a list of terms representing the values in the tuple
+     * @param values the slots of the tuple, one per column
      */
-    public Tuple(String relationName, List<Term> terms) {
-        this.relationName = relationName;
-        this.terms = terms;
+    public Tuple(long[] values) {
+        this.values = values;
     }
 
     /**
-     * Returns the name of the relation this tuple belongs to.
+     * Returns the slots of this tuple. The array must not be modified.
      *
-     * @return the name of the relation
+     * @return the slots, one per column
      */
-    public String getName() {
-        return relationName;
+    public long[] getValues() {
+        return values;
     }
 
     /**
-     * Returns the list of terms representing the values in this tuple.
+     * Returns the number of columns of this tuple.
      *
-     * @return a list of terms
+     * @return the column count
      */
-    public List<Term> getTerms() {
+    public int size() {
+        return values.length;
+    }
+
+    /**
+     * Decodes the slots of this tuple into terms.
+     *
+     * @param types the types ("int" or "string") of the columns
+     * @return a list of terms, one per column
+     */
+    public List<Term> getTerms(List<String> types) {
+        List<Term> terms = new ArrayList<>(values.length);
+        for (int i = 0; i < values.length; i++) terms.add(decode(values[i], types.get(i)));
         return terms;
     }
 
+    /**
+     * Decodes a slot into a constant.
+     *
+     * @param value the slot
+     * @param type the type ("int" or "string") of the column
+     * @return the constant held by the slot
+     */
+    public static Constant decode(long value, String type) {
+        if (type.equals("string")) return StringConstant.valueOf(StringDictionary.decode(value));
+        if (value == (int) value) return IntegerConstant.valueOf((int) value);
+        return new LongConstant(value);
+    }
+
+    /**
+     * Encodes a constant into a slot.
+     *
+     * @param constant an integer or string constant
+     * @return the slot holding the constant
+     */
+    public static long encode(Constant constant) {
+        if (constant instanceof StringConstant) return StringDictionary.encode(((StringConstant) constant).getValue());
+        if (constant instanceof LongConstant) return ((LongConstant) constant).getValue();
+        return ((IntegerConstant) constant).getValue();
+    }
+
+    /**
+     * Checks whether another tuple holds the same slots.
+     *
+     * @param o the object to compare with
+     * @return true if o is a tuple with equal slots
+     */
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Tuple && Arrays.equals(values, ((Tuple) o).values);
+    }
+
+    /**
+     * Returns a hash code computed from the slots of this tuple.
+     *
+     * @return the hash code
+     */
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(values);
+    }
+
     /**
      * Returns a string representation of this tuple, where each term is separated by a comma.
      *
+     * @param types the types ("int" or "string") of the columns
+     * @return a string representation of this tuple
+     */
+    public String toString(List<String> types) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) builder.append(", ");
+            if (types.get(i).equals("string")) builder.append('\'').append(StringDictionary.decode(values[i])).append('\'');
+            else builder.append(values[i]);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Returns a string representation of the raw slots of this tuple.
+     *
      * @return a string representation of this tuple
      */
     @Override
     public String toString() {
-        return Utils.join(terms, ", ");
+        return Arrays.toString(values);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,366 @@
+/**
+ * The TuplePredicate class represents a comparison atom compiled against the columns of one or two operators.
+ * Variables are resolved to column indices and the operand types are resolved when the plan is built, so that
+ * evaluating a predicate on a tuple only reads the slots of the columns and compares them, without looking up
+ * variable names or decoding values. Equality of strings compares their dictionary codes; ordering comparisons
+ * of strings decode them with the StringDictionary.
+ * A predicate is evaluated on a pair of tuples (left, right); predicates compiled for a single operator read
+ * both of their operands from the left tuple. Predicates compiled for a single operator can also filter a whole
+ * batch, shrinking its selection vector in a loop over the column vectors.
+ */
+
+package ed.inf.adbs.minibase.operator;
+
+import ed.inf.adbs.minibase.base.*;
+
+import java.util.List;
+
+public abstract class TuplePredicate {
+
+    /**
+     * Evaluates the predicate.
+     *
+     * @param left the slots of the left tuple, or of the only tuple for a single-operator predicate
+     * @param right the slots of the right tuple; ignored by single-operator predicates
+     * @return true if the tuples satisfy the comparison, false otherwise
+     */
+    public abstract boolean test(long[] left, long[] right);
+
+    /**
+     * Removes the rows of a batch that do not satisfy a predicate compiled for a single operator.
+     * This implementation evaluates test on a copy of every selected row; subclasses read the column vectors directly.
+     *
+     * @param batch the batch to filter
+     */
+    public void filter(Batch batch) {
+        long[] row = new long[batch.getColumnCount()];
+        int[] selection = batch.getSelection();
+        int kept = 0;
+        for (int i = 0; i < batch.getCount(); i++) {
+            int r = batch.rowAt(i);
+            batch.copyRow(r, row);
+            if (test(row, row)) selection[kept++] = r;
+        }
+        batch.select(kept);
+    }
+
+    /**
+     * Compiles a comparison atom whose variables are all columns of a single operator.
+     *
+     * @param comparison the comparison atom
+     * @param vars the variable names of the operator's columns
+     * @param types the types of the operator's columns
+     * @return the compiled predicate
+     */
+    public static TuplePredicate compile(ComparisonAtom comparison, List<String> vars, List<String> types) {
+        return compile(comparison, vars, types, null, null);
+    }
+
+    /**
+     * Compiles a comparison atom whose variables are columns of a left or a right operator.
+     * A variable is looked up in the left operator first.
+     *
+     * @param comparison the comparison atom
+     * @param leftVars the variable names of the left operator's columns
+     * @param leftTypes the types of the left operator's columns
+     * @param rightVars the variable names of the right operator's columns, or null
+     * @param rightTypes the types of the right operator's columns, or null
+     * @return the compiled predicate
+     */
+    public static TuplePredicate compile(ComparisonAtom comparison, List<String> leftVars, List<String> leftTypes,
+                                         List<String> rightVars, List<String> rightTypes) {
+        Operand operand1 = new Operand(comparison.getTerm1(), leftVars, leftTypes, rightVars, rightTypes);
+        Operand operand2 = new Operand(comparison.getTerm2(), leftVars, leftTypes, rightVars, rightTypes);
+        ComparisonOperator op = comparison.getOp();
+
+        // Keep the column first when comparing a column with a constant
+        if (operand1.constant != null && operand2.constant == null) {
+            Operand swap = operand1;
+            operand1 = operand2;
+            operand2 = swap;
+            op = op.reverse();
+        }
+
+        // Values of different types are never equal
+        if (!operand1.type.equals(operand2.type)) return new ConstantPredicate(op == ComparisonOperator.NEQ);
+
+        boolean isInt = operand1.type.equals("int");
+        if (operand1.constant != null) {
+            return new ConstantPredicate(holds(op, operand1.constant.compareTo(operand2.constant)));
+        }
+        if (operand2.constant != null) {
+            if (isInt) return new IntColumnConstant(op, operand1, Tuple.encode(operand2.constant));
+            return new StringColumnConstant(op, operand1, Tuple.encode(operand2.constant));
+        }
+        if (isInt) return new IntColumnColumn(op, operand1, operand2);
+        return new StringColumnColumn(op, operand1, operand2);
+    }
+
+    /**
+     * Compiles the equality of a column of the left tuple and a column of the right tuple, as used for join variables.
+     *
+     * @param leftIndex the index of the column in the left tuple
+     * @param rightIndex the index of the column in the right tuple
+     * @param type the type of both columns
+     * @return the compiled predicate
+     */
+    public static TuplePredicate columnsEqual(int leftIndex, int rightIndex, String type) {
+        Operand leftColumn = new Operand(true, leftIndex, type);
+        Operand rightColumn = new Operand(false, rightIndex, type);
+        if (type.equals("int")) return new IntColumnColumn(ComparisonOperator.EQ, leftColumn, rightColumn);
+        return new StringColumnColumn(ComparisonOperator.EQ, leftColumn, rightColumn);
+    }
+
+    /**
+     * Checks whether the result of a three-way comparison satisfies a comparison operator.
+     *
+     * @param op the comparison operator
+     * @param cmp a negative, zero or positive number as the first operand is smaller, equal or greater
+     * @return true if "first op second" holds
+     */
+    static boolean holds(ComparisonOperator op, int cmp) {
+        switch (op) {
+            case EQ:
+                return cmp == 0;
+            case NEQ:
+                return cmp != 0;
+            case GT:
+                return cmp > 0;
+            case GEQ:
+                return cmp >= 0;
+            case LT:
+                return cmp < 0;
+            default:
+                return cmp <= 0;
+        }
+    }
+
+    /**
+     * An operand of a comparison, resolved to a constant or to a column of the left or right tuple.
+     */
+    private static class Operand {
+        private Constant constant = null;
+        private boolean fromLeft = true;
+        private int index = -1;
+        private String type;
+
+        private Operand(boolean fromLeft, int index, String type) {
+            this.fromLeft = fromLeft;
+            this.index = index;
+            this.type = type;
+        }
+
+        private Operand(Term term, List<String> leftVars, List<String> leftTypes, List<String> rightVars, List<String> rightTypes) {
+            if (term instanceof Constant) {
+                this.constant = (Constant) term;
+                this.type = term instanceof IntegerConstant ? "int" : "string";
+                return;
+            }
+            String name = ((Variable) term).getName();
+            this.index = leftVars.indexOf(name);
+            if (this.index >= 0) {
+                this.type = leftTypes.get(this.index);
+            } else {
+                this.fromLeft = false;
+                this.index = rightVars == null ? -1 : rightVars.indexOf(name);
+                if (this.index < 0) throw new IllegalArgumentException("Variable " + name + " is not bound by the operator");
+                this.type = rightTypes.get(this.index);
+            }
+        }
+    }
+
+    /**
+     * A comparison whose result does not depend on the tuples.
+     */
+    private static class ConstantPredicate extends TuplePredicate {
+        private final boolean result;
+
+        private ConstantPredicate(boolean result) {
+            this.result = result;
+        }
+
+        @Override
+        public boolean test(long[] left, long[] right) {
+            return result;
+        }
+
+        @Override
+        public void filter(Batch batch) {
+            if (!result) batch.select(0);
+        }
+    }
+
+    /**
+     * A comparison between an int column and an int constant.
+     */
+    private static class IntColumnConstant extends TuplePredicate {
+        private final ComparisonOperator op;
+        private final boolean fromLeft;
+        private final int index;
+        private final long constant;
+        private int[] mask = null;
+
+        private IntColumnConstant(ComparisonOperator op, Operand column, long constant) {
+            this.op = op;
+            this.fromLeft = column.fromLeft;
+            this.index = column.index;
+            this.constant = constant;
+        }
+
+        @Override
+        public boolean test(long[] left, long[] right) {
+            long value = (fromLeft ? left : right)[index];
+            return holds(op, Long.compare(value, constant));
+        }
+
+        @Override
+        public void filter(Batch batch) {
+            if (IntFilterKernel.ENABLED) {
+                if (mask == null || mask.length < batch.getCapacity()) mask = new int[batch.getCapacity()];
+                IntFilterKernel.filterConstant(batch, op, index, constant, mask);
+                return;
+            }
+            long[] column = batch.getColumn(index);
+            int[] selection = batch.getSelection();
+            int count = batch.getCount();
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                int r = batch.isAllSelected() ? i : selection[i];
+                if (holds(op, Long.compare(column[r], constant))) selection[kept++] = r;
+            }
+            batch.select(kept);
+        }
+    }
+
+    /**
+     * A comparison between two int columns.
+     */
+    private static class IntColumnColumn extends TuplePredicate {
+        private final ComparisonOperator op;
+        private final boolean fromLeft1;
+        private final int index1;
+        private final boolean fromLeft2;
+        private final int index2;
+        private int[] mask = null;
+
+        private IntColumnColumn(ComparisonOperator op, Operand column1, Operand column2) {
+            this.op = op;
+            this.fromLeft1 = column1.fromLeft;
+            this.index1 = column1.index;
+            this.fromLeft2 = column2.fromLeft;
+            this.index2 = column2.index;
+        }
+
+        @Override
+        public boolean test(long[] left, long[] right) {
+            long value1 = (fromLeft1 ? left : right)[index1];
+            long value2 = (fromLeft2 ? left : right)[index2];
+            return holds(op, Long.compare(value1, value2));
+        }
+
+        @Override
+        public void filter(Batch batch) {
+            if (IntFilterKernel.ENABLED) {
+                if (mask == null || mask.length < batch.getCapacity()) mask = new int[batch.getCapacity()];
+                IntFilterKernel.filterColumns(batch, op, index1, index2, mask);
+                return;
+            }
+            long[] column1 = batch.getColumn(index1);
+            long[] column2 = batch.getColumn(index2);
+            int[] selection = batch.getSelection();
+            int count = batch.getCount();
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                int r = batch.isAllSelected() ? i : selection[i];
+                if (holds(op, Long.compare(column1[r], column2[r]))) selection[kept++] = r;
+            }
+            batch.select(kept);
+        }
+    }
+
+    /**
+     * A comparison between a string column and a string constant.
+     */
+    private static class StringColumnConstant extends TuplePredicate {
+        private final ComparisonOperator op;
+        private final boolean fromLeft;
+        private final int index;
+        private final long constant;
+
+        private StringColumnConstant(ComparisonOperator op, Operand column, long constant) {
+            this.op = op;
+            this.fromLeft = column.fromLeft;
+            this.index = column.index;
+            this.constant = constant;
+        }
+
+        @Override
+        public boolean test(long[] left, long[] right) {
+            long value = (fromLeft ? left : right)[index];
+            if (op == ComparisonOperator.EQ) return value == constant;
+            if (op == ComparisonOperator.NEQ) return value != constant;
+            return holds(op, StringDictionary.compare(value, constant));
+        }
+
+        @Override
+        public void filter(Batch batch) {
+            long[] column = batch.getColumn(index);
+            int[] selection = batch.getSelection();
+            int count = batch.getCount();
+            boolean equality = op == ComparisonOperator.EQ || op == ComparisonOperator.NEQ;
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                int r = batch.isAllSelected() ? i : selection[i];
+                boolean keep = equality ? (column[r] == constant) == (op == ComparisonOperator.EQ)
+                        : holds(op, StringDictionary.compare(column[r], constant));
+                if (keep) selection[kept++] = r;
+            }
+            batch.select(kept);
+        }
+    }
+
+    /**
+     * A comparison between two string columns.
+     */
+    private static class StringColumnColumn extends TuplePredicate {
+        private final ComparisonOperator op;
+        private final boolean fromLeft1;
+        private final int index1;
+        private final boolean fromLeft2;
+        private final int index2;
+
+        private StringColumnColumn(ComparisonOperator op, Operand column1, Operand column2) {
+            this.op = op;
+            this.fromLeft1 = column1.fromLeft;
+            this.index1 = column1.index;
+            this.fromLeft2 = column2.fromLeft;
+            this.index2 = column2.index;
+        }
+
+        @Override
+        public boolean test(long[] left, long[] right) {
+            long value1 = (fromLeft1 ? left : right)[index1];
+            long value2 = (fromLeft2 ? left : right)[index2];
+            if (op == ComparisonOperator.EQ) return value1 == value2;
+            if (op == ComparisonOperator.NEQ) return value1 != value2;
+            return holds(op, StringDictionary.compare(value1, value2));
+        }
+
+        @Override
+        public void filter(Batch batch) {
+            long[] column1 = batch.getColumn(index1);
+            long[] column2 = batch.getColumn(index2);
+            int[] selection = batch.getSelection();
+            int count = batch.getCount();
+            boolean equality = op == ComparisonOperator.EQ || op == ComparisonOperator.NEQ;
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                int r = batch.isAllSelected() ? i : selection[i];
+                boolean keep = equality ? (column1[r] == column2[r]) == (op == ComparisonOperator.EQ)
+                        : holds(op, StringDictionary.compare(column1[r], column2[r]));
+                if (keep) selection[kept++] = r;
+            }
+            batch.select(kept);
+        }
+    }
+}
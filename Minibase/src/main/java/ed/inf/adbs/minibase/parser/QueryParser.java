@@ -128,12 +128,12 @@ public class QueryParser {
         public Constant visitConstant(MinibaseParser.ConstantContext ctx) {
             if (ctx.INT() != null) {
                 String text = ctx.INT().getText();
-                return new IntegerConstant(Integer.valueOf(text));
+                return IntegerConstant.valueOf(Integer.parseInt(text));
             }
             if (ctx.STRING() != null) {
                 String text = ctx.STRING().getText();
                 String unquotedText = text.substring(1, text.length() - 1);
-                return new StringConstant(unquotedText);
+                return StringConstant.valueOf(unquotedText);
             }
             return null;
         }
@@ -0,0 +1,181 @@
+/**
+ * The CardinalityEstimator class estimates the number of tuples produced by scans, selections and joins,
+ * so that the planner can compare alternative plans without executing them.
+ * Row counts come from the DatabaseCatalog. Relations analyzed by the Analyzer use their distinct counts and
+ * histograms; for the others, every value of a column is assumed to be distinct and range comparisons are
+ * assumed to keep a third of the tuples.
+ */
+
+package ed.inf.adbs.minibase.planner;
+
+import ed.inf.adbs.minibase.base.*;
+import ed.inf.adbs.minibase.operator.ColumnStatistics;
+import ed.inf.adbs.minibase.operator.DatabaseCatalog;
+import ed.inf.adbs.minibase.operator.RelationStatistics;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class CardinalityEstimator {
+    private static final double RANGE_SELECTIVITY = 1.0 / 3;
+
+    private final DatabaseCatalog catalog;
+    private final Map<String, Double> rowCounts = new HashMap<>();
+
+    /**
+     * Constructs a CardinalityEstimator that reads relation sizes from the given catalog.
+     *
+     * @param catalog the database catalog
+     */
+    public CardinalityEstimator(DatabaseCatalog catalog) {
+        this.catalog = catalog;
+    }
+
+    /**
+     * Returns the estimated number of rows of a relation.
+     *
+     * @param relationName the name of the relation
+     * @return the estimated row count
+     */
+    public double relationRows(String relationName) {
+        return rowCounts.computeIfAbsent(relationName, name -> (double) catalog.estimateRowCount(name));
+    }
+
+    /**
+     * Returns the estimated number of distinct values in a column of a relation.
+     *
+     * @param relationName the name of the relation
+     * @param column the index of the column
+     * @return the estimated number of distinct values, at least 1
+     */
+    public double distinctValues(String relationName, int column) {
+        RelationStatistics statistics = catalog.getStatistics(relationName);
+        if (statistics != null && statistics.getColumn(column) != null)
+            return Math.max(1, statistics.getColumn(column).getDistinctValues());
+        return Math.max(1, relationRows(relationName));
+    }
+
+    /**
+     * Estimates the number of tuples of an atom that satisfy the comparisons whose variables all occur in the atom.
+     *
+     * @param atom the relational atom
+     * @param comparisons the comparison atoms of the query
+     * @return the estimated number of tuples
+     */
+    public double atomRows(RelationalAtom atom, List<ComparisonAtom> comparisons) {
+        double rows = relationRows(atom.getName());
+        Map<String, Double> distinct = atomDistinctValues(atom, Double.MAX_VALUE);
+        for (ComparisonAtom comparison : comparisons) {
+            if (isLocal(comparison, atom)) rows *= localSelectivity(comparison, atom, distinct);
+        }
+        return rows;
+    }
+
+    /**
+     * Returns the estimated number of distinct values of every variable of an atom, capped by the number of tuples.
+     *
+     * @param atom the relational atom
+     * @param atomRows the estimated number of tuples of the atom
+     * @return the estimated number of distinct values by variable name
+     */
+    public Map<String, Double> atomDistinctValues(RelationalAtom atom, double atomRows) {
+        Map<String, Double> distinct = new HashMap<>();
+        for (int i = 0; i < atom.getTerms().size(); i++) {
+            Term term = atom.getTerms().get(i);
+            if (!(term instanceof Variable)) continue;
+            double values = Math.max(1, Math.min(distinctValues(atom.getName(), i), atomRows));
+            distinct.merge(((Variable) term).getName(), values, Math::min);
+        }
+        return distinct;
+    }
+
+    /**
+     * Estimates the fraction of the tuples of an atom that satisfy a comparison on its own variables.
+     *
+     * @param comparison the comparison atom
+     * @param atom the relational atom holding the variables of the comparison
+     * @param distinct the estimated number of distinct values by variable name
+     * @return the estimated selectivity, between 0 and 1
+     */
+    protected double localSelectivity(ComparisonAtom comparison, RelationalAtom atom, Map<String, Double> distinct) {
+        RelationStatistics statistics = catalog.getStatistics(atom.getName());
+        // Comparisons between a column and a constant are estimated from the histogram of the column
+        if (statistics != null) {
+            Term term1 = comparison.getTerm1();
+            Term term2 = comparison.getTerm2();
+            ComparisonOperator op = comparison.getOp();
+            if (term1 instanceof Constant && term2 instanceof Variable) {
+                term1 = comparison.getTerm2();
+                term2 = comparison.getTerm1();
+                op = op.reverse();
+            }
+            if (term1 instanceof Variable && term2 instanceof Constant) {
+                ColumnStatistics column = statistics.getColumn(columnOf(atom, (Variable) term1));
+                double selectivity = column == null ? -1 : column.selectivity(op, (Constant) term2);
+                if (selectivity >= 0) return selectivity;
+            }
+        }
+        return selectivity(comparison, distinct);
+    }
+
+    /**
+     * Returns the position of the first occurrence of a variable in an atom.
+     *
+     * @param atom the relational atom
+     * @param variable the variable
+     * @return the index of the column bound to the variable, or -1 if the variable does not occur in the atom
+     */
+    private static int columnOf(RelationalAtom atom, Variable variable) {
+        for (int i = 0; i < atom.getTerms().size(); i++) {
+            Term term = atom.getTerms().get(i);
+            if (term instanceof Variable && ((Variable) term).getName().equals(variable.getName())) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Estimates the fraction of tuples that satisfy a comparison, given the number of distinct values of its variables.
+     * Equalities keep one value out of the distinct values of their variables and range comparisons keep a constant fraction.
+     *
+     * @param comparison the comparison atom
+     * @param distinct the estimated number of distinct values by variable name
+     * @return the estimated selectivity, between 0 and 1
+     */
+    public double selectivity(ComparisonAtom comparison, Map<String, Double> distinct) {
+        double values = 1;
+        for (Term term : new Term[]{comparison.getTerm1(), comparison.getTerm2()}) {
+            if (term instanceof Variable) values = Math.max(values, distinct.getOrDefault(((Variable) term).getName(), 1.0));
+        }
+        switch (comparison.getOp()) {
+            case EQ:
+                return 1 / values;
+            case NEQ:
+                return values > 1 ? 1 - 1 / values : RANGE_SELECTIVITY;
+            default:
+                return RANGE_SELECTIVITY;
+        }
+    }
+
+    /**
+     * Checks whether all variables of a comparison occur in an atom.
+     *
+     * @param comparison the comparison atom
+     * @param atom the relational atom
+     * @return true if the comparison can be evaluated on the tuples of the atom alone
+     */
+    public static boolean isLocal(ComparisonAtom comparison, RelationalAtom atom) {
+        for (Term term : new Term[]{comparison.getTerm1(), comparison.getTerm2()}) {
+            if (!(term instanceof Variable)) continue;
+            boolean found = false;
+            for (Term atomTerm : atom.getTerms()) {
+                if (atomTerm instanceof Variable && ((Variable) atomTerm).getName().equals(((Variable) term).getName())) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) return false;
+        }
+        return true;
+    }
+}
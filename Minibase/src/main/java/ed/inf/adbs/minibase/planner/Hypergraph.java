@@ -0,0 +1,113 @@
+/**
+ * The Hypergraph class represents the hypergraph of the relational atoms of a query: its vertices are the variables
+ * and every atom is an edge holding the variables it mentions. The planner uses it to tell acyclic queries from cyclic
+ * ones with the GYO reduction, which repeatedly removes the variables occurring in a single edge and the edges
+ * contained in another edge, including empty ones; the query is acyclic if and only if this leaves a single edge.
+ */
+
+package ed.inf.adbs.minibase.planner;
+
+import ed.inf.adbs.minibase.base.*;
+
+import java.util.*;
+
+public class Hypergraph {
+    private final List<RelationalAtom> atoms;
+    private final List<Set<String>> edges = new ArrayList<>();
+
+    /**
+     * Constructs the hypergraph of a list of relational atoms.
+     *
+     * @param atoms the relational atoms of the query
+     */
+    public Hypergraph(List<RelationalAtom> atoms) {
+        this.atoms = atoms;
+        for (RelationalAtom atom : atoms) {
+            Set<String> edge = new LinkedHashSet<>();
+            for (Term term : atom.getTerms()) {
+                if (term instanceof Variable) edge.add(((Variable) term).getName());
+            }
+            this.edges.add(edge);
+        }
+    }
+
+    /**
+     * Checks whether the hypergraph is alpha-acyclic.
+     *
+     * @return true if the GYO reduction removes every edge but one
+     */
+    public boolean isAcyclic() {
+        return reduce(new int[atoms.size()]);
+    }
+
+    /**
+     * Builds a join forest of the atoms from the GYO reduction: the atoms sharing a variable are connected through a
+     * path of atoms that all hold the variable, so that semi-joins along the edges of the forest fully reduce the atoms.
+     *
+     * @return the index of the parent of every atom, or -1 for the roots, or null if the hypergraph is cyclic
+     */
+    public int[] joinForest() {
+        int[] parent = new int[atoms.size()];
+        return reduce(parent) ? parent : null;
+    }
+
+    /**
+     * Orders the variables for a worst-case optimal join: variables shared by more atoms come first, since they
+     * constrain more relations at once, and ties are broken by the first atom mentioning them in the given order.
+     *
+     * @return the variables of the atoms, in join order
+     */
+    public List<String> variableOrder() {
+        Map<String, Integer> occurrences = new LinkedHashMap<>();
+        for (Set<String> edge : edges) {
+            for (String var : edge) occurrences.merge(var, 1, Integer::sum);
+        }
+        List<String> order = new ArrayList<>(occurrences.keySet());
+        // The sort is stable, so variables occurring equally often keep the order of their first atom
+        order.sort((a, b) -> Integer.compare(occurrences.get(b), occurrences.get(a)));
+        return order;
+    }
+
+    /**
+     * Runs the GYO reduction. Every edge removed because it is contained in another edge records that edge as its
+     * parent, which makes the parents a join forest when the hypergraph is acyclic.
+     *
+     * @param parent filled with the index of the parent of every atom, or -1 for the roots
+     * @return true if the hypergraph is acyclic
+     */
+    private boolean reduce(int[] parent) {
+        int n = edges.size();
+        List<Set<String>> remaining = new ArrayList<>();
+        for (Set<String> edge : edges) remaining.add(new HashSet<>(edge));
+        boolean[] removed = new boolean[n];
+        Arrays.fill(parent, -1);
+        int left = n;
+        boolean changed = true;
+        while (changed && left > 1) {
+            changed = false;
+            // Remove the variables occurring in a single remaining edge
+            Map<String, Integer> occurrences = new HashMap<>();
+            for (int i = 0; i < n; i++) {
+                if (removed[i]) continue;
+                for (String var : remaining.get(i)) occurrences.merge(var, 1, Integer::sum);
+            }
+            for (int i = 0; i < n; i++) {
+                if (!removed[i] && remaining.get(i).removeIf(var -> occurrences.get(var) == 1)) changed = true;
+            }
+            // Remove an edge contained in another edge, or an empty edge, which starts a new component of the forest
+            for (int i = 0; i < n; i++) {
+                if (removed[i]) continue;
+                for (int j = 0; j < n; j++) {
+                    if (j == i || removed[j] || !remaining.get(j).containsAll(remaining.get(i))) continue;
+                    removed[i] = true;
+                    parent[i] = remaining.get(i).isEmpty() ? -1 : j;
+                    left--;
+                    changed = true;
+                    break;
+                }
+                if (removed[i]) break;
+            }
+        }
+        return left <= 1;
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * The IndexAccess class describes how the planner reads a relational atom through a secondary index:
+ * the index and the range of keys to look up. For an index nested loop join, the range is replaced by the key
+ * of every outer tuple.
+ */
+
+package ed.inf.adbs.minibase.planner;
+
+import ed.inf.adbs.minibase.operator.RelationIndex;
+
+public class IndexAccess {
+    private final RelationIndex index;
+    private final long low;
+    private final long high;
+
+    /**
+     * Constructs an index access.
+     *
+     * @param index the index to read
+     * @param low the smallest key, inclusive
+     * @param high the largest key, inclusive
+     */
+    public IndexAccess(RelationIndex index, long low, long high) {
+        this.index = index;
+        this.low = low;
+        this.high = high;
+    }
+
+    /**
+     * Returns the index to read.
+     *
+     * @return the index
+     */
+    public RelationIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the smallest key to look up.
+     *
+     * @return the smallest key, inclusive
+     */
+    public long getLow() {
+        return low;
+    }
+
+    /**
+     * Returns the largest key to look up.
+     *
+     * @return the largest key, inclusive
+     */
+    public long getHigh() {
+        return high;
+    }
+}
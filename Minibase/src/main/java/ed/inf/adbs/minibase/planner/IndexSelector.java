@@ -0,0 +1,106 @@
+/**
+ * The IndexSelector class decides when the planner reads a relational atom through one of the secondary indexes
+ * registered in the catalog. An atom is read with an index scan when the comparisons between an indexed variable and
+ * constants are estimated to keep only a small fraction of the relation: equalities use hash or B+tree indexes, and
+ * range comparisons use B+tree indexes. An atom joined on an indexed variable is read with an index nested loop join
+ * when looking up every outer tuple is estimated to be cheaper than scanning the relation.
+ */
+
+package ed.inf.adbs.minibase.planner;
+
+import ed.inf.adbs.minibase.base.*;
+import ed.inf.adbs.minibase.operator.DatabaseCatalog;
+import ed.inf.adbs.minibase.operator.RelationIndex;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+public class IndexSelector {
+    // The largest estimated fraction of a relation read through an index scan, configurable with -Dminibase.index.maxSelectivity
+    public static final double MAX_SCAN_SELECTIVITY = Double.parseDouble(System.getProperty("minibase.index.maxSelectivity", "0.05"));
+    // The estimated cost of an index lookup, in rows read by a scan
+    private static final double LOOKUP_COST = 4;
+
+    private final DatabaseCatalog catalog;
+    private final CardinalityEstimator estimator;
+
+    /**
+     * Constructs an IndexSelector over the indexes of a catalog.
+     *
+     * @param catalog the database catalog
+     * @param estimator the estimator of relation and selection sizes
+     */
+    public IndexSelector(DatabaseCatalog catalog, CardinalityEstimator estimator) {
+        this.catalog = catalog;
+        this.estimator = estimator;
+    }
+
+    /**
+     * Chooses an index scan for an atom from the comparisons between its variables and constants.
+     *
+     * @param atom the relational atom
+     * @param comparisons the comparison atoms of the query
+     * @return the most selective index access, or null if no index is selective enough
+     */
+    public IndexAccess chooseScan(RelationalAtom atom, List<ComparisonAtom> comparisons) {
+        double relationRows = Math.max(1, estimator.relationRows(atom.getName()));
+        IndexAccess best = null;
+        double bestSelectivity = MAX_SCAN_SELECTIVITY;
+        for (RelationIndex index : catalog.getIndexes(atom.getName())) {
+            Term term = atom.getTerms().get(index.getColumn());
+            if (!(term instanceof Variable)) continue;
+            String var = ((Variable) term).getName();
+            long low = Long.MIN_VALUE;
+            long high = Long.MAX_VALUE;
+            List<ComparisonAtom> used = new ArrayList<>();
+            for (ComparisonAtom comparison : comparisons) {
+                Term term1 = comparison.getTerm1();
+                Term term2 = comparison.getTerm2();
+                ComparisonOperator op = comparison.getOp();
+                if (term1 instanceof Constant && term2 instanceof Variable) {
+                    term1 = comparison.getTerm2();
+                    term2 = comparison.getTerm1();
+                    op = op.reverse();
+                }
+                if (!(term1 instanceof Variable) || !((Variable) term1).getName().equals(var) || !(term2 instanceof Constant))
+                    continue;
+                Long key = index.key((Constant) term2);
+                if (key == null || op == ComparisonOperator.NEQ || (op != ComparisonOperator.EQ && !index.supportsRanges()))
+                    continue;
+                if (op == ComparisonOperator.EQ || op == ComparisonOperator.GT || op == ComparisonOperator.GEQ)
+                    low = Math.max(low, op == ComparisonOperator.GT ? key + 1 : key);
+                if (op == ComparisonOperator.EQ || op == ComparisonOperator.LT || op == ComparisonOperator.LEQ)
+                    high = Math.min(high, op == ComparisonOperator.LT ? key - 1 : key);
+                used.add(comparison);
+            }
+            if (used.isEmpty() || (!index.supportsRanges() && low != high)) continue;
+            double selectivity = estimator.atomRows(atom, used) / relationRows;
+            if (selectivity <= bestSelectivity) {
+                best = new IndexAccess(index, low, high);
+                bestSelectivity = selectivity;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Chooses an index for an index nested loop join of an atom with the atoms joined before it.
+     *
+     * @param atom the relational atom joined next
+     * @param joinedVars the variables of the atoms joined before it
+     * @param outerRows the estimated number of tuples of the join of the atoms joined before it
+     * @return an index on a join variable, or null if scanning the relation is estimated to be cheaper
+     */
+    public IndexAccess chooseJoin(RelationalAtom atom, Collection<String> joinedVars, double outerRows) {
+        if (outerRows * LOOKUP_COST >= estimator.relationRows(atom.getName())) return null;
+        IndexAccess best = null;
+        for (RelationIndex index : catalog.getIndexes(atom.getName())) {
+            Term term = atom.getTerms().get(index.getColumn());
+            if (!(term instanceof Variable) || !joinedVars.contains(((Variable) term).getName())) continue;
+            // Prefer hash indexes, whose lookups read a single bucket
+            if (best == null || !index.supportsRanges()) best = new IndexAccess(index, 0, 0);
+        }
+        return best;
+    }
+}
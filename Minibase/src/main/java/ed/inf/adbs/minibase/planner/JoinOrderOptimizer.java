@@ -0,0 +1,216 @@
+/**
+ * The JoinOrderOptimizer class chooses the order in which the relational atoms of a query are joined
+ * in the left-deep plan built by Minibase. Each order is costed by the estimated sizes of the relations it reads
+ * and of the intermediate results it produces. Queries with few atoms are optimized exactly by dynamic programming
+ * over subsets of atoms; larger queries are ordered greedily. In both cases an atom that shares no variable with the
+ * atoms joined before it is only chosen when no connected order exists, so Cartesian products are avoided.
+ */
+
+package ed.inf.adbs.minibase.planner;
+
+import ed.inf.adbs.minibase.base.*;
+
+import java.util.*;
+
+public class JoinOrderOptimizer {
+    // The largest number of atoms ordered by dynamic programming, configurable with -Dminibase.optimizer.dpLimit
+    public static final int DP_ATOM_LIMIT = Integer.getInteger("minibase.optimizer.dpLimit", 10);
+
+    private final List<RelationalAtom> atoms;
+    private final List<ComparisonAtom> comparisons;
+    private final CardinalityEstimator estimator;
+    private final double[] atomRows;
+    private final List<Map<String, Double>> atomDistinct = new ArrayList<>();
+    private final List<Set<String>> atomVars = new ArrayList<>();
+
+    /**
+     * Constructs a JoinOrderOptimizer for the relational atoms of a query.
+     *
+     * @param atoms the relational atoms to join
+     * @param comparisons the comparison atoms of the query
+     * @param estimator the estimator of relation and selection sizes
+     */
+    public JoinOrderOptimizer(List<RelationalAtom> atoms, List<ComparisonAtom> comparisons, CardinalityEstimator estimator) {
+        this.atoms = atoms;
+        this.comparisons = comparisons;
+        this.estimator = estimator;
+        this.atomRows = new double[atoms.size()];
+        for (int i = 0; i < atoms.size(); i++) {
+            RelationalAtom atom = atoms.get(i);
+            this.atomRows[i] = estimator.atomRows(atom, comparisons);
+            this.atomDistinct.add(estimator.atomDistinctValues(atom, this.atomRows[i]));
+            this.atomVars.add(this.atomDistinct.get(i).keySet());
+        }
+    }
+
+    /**
+     * Returns the atoms in the order in which they should be joined.
+     *
+     * @return the reordered atoms
+     */
+    public List<RelationalAtom> order() {
+        if (atoms.size() <= 1) return atoms;
+        if (atoms.size() <= DP_ATOM_LIMIT) return dynamicProgramming();
+        return greedy();
+    }
+
+    /**
+     * Estimates the number of tuples in the join of the first atoms, in the order given to the optimizer.
+     *
+     * @param count the number of atoms
+     * @return the estimated number of tuples
+     */
+    public double prefixRows(int count) {
+        BitSet members = new BitSet();
+        members.set(0, count);
+        return cardinality(members);
+    }
+
+    /**
+     * Finds the cheapest left-deep order by dynamic programming over subsets of atoms.
+     * Subsets are visited in increasing numeric order, so every subset is costed before its supersets.
+     *
+     * @return the reordered atoms
+     */
+    private List<RelationalAtom> dynamicProgramming() {
+        int n = atoms.size();
+        double[] cost = new double[1 << n];
+        int[] last = new int[1 << n];
+        boolean[] crossProduct = new boolean[1 << n];
+        Arrays.fill(cost, Double.POSITIVE_INFINITY);
+        for (int i = 0; i < n; i++) {
+            cost[1 << i] = atomRows[i];
+            last[1 << i] = i;
+        }
+
+        for (int mask = 1; mask < (1 << n); mask++) {
+            if (Integer.bitCount(mask) < 2) continue;
+            double rows = cardinality(BitSet.valueOf(new long[]{mask}));
+            // First look for orders without Cartesian products, then accept them if there is none
+            for (int pass = 0; pass < 2 && cost[mask] == Double.POSITIVE_INFINITY; pass++) {
+                boolean connectedOnly = pass == 0;
+                for (int i = 0; i < n; i++) {
+                    if ((mask & (1 << i)) == 0) continue;
+                    int rest = mask & ~(1 << i);
+                    if (connectedOnly && (crossProduct[rest] || !connected(BitSet.valueOf(new long[]{rest}), i))) continue;
+                    double candidate = cost[rest] + atomRows[i] + rows;
+                    if (candidate < cost[mask]) {
+                        cost[mask] = candidate;
+                        last[mask] = i;
+                        crossProduct[mask] = !connectedOnly;
+                    }
+                }
+            }
+        }
+
+        LinkedList<RelationalAtom> order = new LinkedList<>();
+        int mask = (1 << n) - 1;
+        while (mask != 0) {
+            order.addFirst(atoms.get(last[mask]));
+            mask &= ~(1 << last[mask]);
+        }
+        return order;
+    }
+
+    /**
+     * Builds an order greedily: starting from the smallest atom, repeatedly joins the connected atom
+     * that gives the smallest intermediate result.
+     *
+     * @return the reordered atoms
+     */
+    private List<RelationalAtom> greedy() {
+        List<RelationalAtom> order = new ArrayList<>();
+        BitSet joined = new BitSet();
+        int first = 0;
+        for (int i = 1; i < atoms.size(); i++) {
+            if (atomRows[i] < atomRows[first]) first = i;
+        }
+        joined.set(first);
+        order.add(atoms.get(first));
+
+        while (order.size() < atoms.size()) {
+            int best = -1;
+            double bestRows = Double.POSITIVE_INFINITY;
+            for (int pass = 0; pass < 2 && best < 0; pass++) {
+                for (int i = 0; i < atoms.size(); i++) {
+                    if (joined.get(i) || (pass == 0 && !connected(joined, i))) continue;
+                    BitSet candidate = (BitSet) joined.clone();
+                    candidate.set(i);
+                    double rows = cardinality(candidate);
+                    if (rows < bestRows) {
+                        best = i;
+                        bestRows = rows;
+                    }
+                }
+            }
+            joined.set(best);
+            order.add(atoms.get(best));
+        }
+        return order;
+    }
+
+    /**
+     * Checks whether an atom shares a variable with a set of atoms.
+     *
+     * @param members the set of atoms
+     * @param atom the index of the atom
+     * @return true if the atom can be joined to the set without a Cartesian product
+     */
+    private boolean connected(BitSet members, int atom) {
+        for (int i = members.nextSetBit(0); i >= 0; i = members.nextSetBit(i + 1)) {
+            for (String var : atomVars.get(atom)) {
+                if (atomVars.get(i).contains(var)) return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Estimates the number of tuples in the join of a set of atoms. For a variable shared by several atoms,
+     * every atom but the one with the fewest distinct values divides the size by its number of distinct values.
+     * Comparisons spanning several atoms of the set then apply their selectivity.
+     *
+     * @param members the set of atoms
+     * @return the estimated number of tuples
+     */
+    private double cardinality(BitSet members) {
+        double rows = 1;
+        Map<String, List<Double>> distinctByVar = new HashMap<>();
+        for (int i = members.nextSetBit(0); i >= 0; i = members.nextSetBit(i + 1)) {
+            rows *= atomRows[i];
+            for (Map.Entry<String, Double> entry : atomDistinct.get(i).entrySet()) {
+                distinctByVar.computeIfAbsent(entry.getKey(), k -> new ArrayList<>()).add(entry.getValue());
+            }
+        }
+        Map<String, Double> distinct = new HashMap<>();
+        for (Map.Entry<String, List<Double>> entry : distinctByVar.entrySet()) {
+            List<Double> values = entry.getValue();
+            Collections.sort(values);
+            for (int i = 1; i < values.size(); i++) rows /= values.get(i);
+            distinct.put(entry.getKey(), values.get(0));
+        }
+        for (ComparisonAtom comparison : comparisons) {
+            if (spansAtoms(comparison, members, distinct.keySet())) rows *= estimator.selectivity(comparison, distinct);
+        }
+        return Math.max(rows, 1);
+    }
+
+    /**
+     * Checks whether a comparison is evaluated by a join within a set of atoms, that is, whether all of its variables
+     * occur in the set but not all in a single atom.
+     *
+     * @param comparison the comparison atom
+     * @param members the set of atoms
+     * @param vars the variables of the set of atoms
+     * @return true if the comparison applies to the join of the set but not to any of its atoms alone
+     */
+    private boolean spansAtoms(ComparisonAtom comparison, BitSet members, Set<String> vars) {
+        for (Term term : new Term[]{comparison.getTerm1(), comparison.getTerm2()}) {
+            if (term instanceof Variable && !vars.contains(((Variable) term).getName())) return false;
+        }
+        for (int i = members.nextSetBit(0); i >= 0; i = members.nextSetBit(i + 1)) {
+            if (CardinalityEstimator.isLocal(comparison, atoms.get(i))) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,412 @@
+/**
+ * The PredicateAnalyzer class rewrites the comparison atoms of a query into an equivalent, simpler set. Every variable
+ * gets the tightest bounds implied by its comparisons with constants and, through the order comparisons between
+ * variables, by the bounds of the other variables (x < y and y < 5 imply x < 5), so that every atom can filter its
+ * tuples by the bounds of its variables. The comparisons implied by these bounds are dropped, as are comparisons that
+ * always hold, and comparisons that can never hold together (x = 1 and x = 2, or x > 5 and x < 3) make the query
+ * unsatisfiable, so that it can be answered without reading any relation.
+ * As when tuples are compared, values of different types are never equal, numbers are compared numerically and
+ * strings lexicographically; bounds on integers are made inclusive, since no integer lies between n and n + 1.
+ */
+
+package ed.inf.adbs.minibase.planner;
+
+import ed.inf.adbs.minibase.base.*;
+
+import java.util.*;
+
+public class PredicateAnalyzer {
+    private final List<String> vars = new ArrayList<>();
+    private final Map<String, String> varTypes;
+    // For every variable: its lower and upper bound, or null if it is unbounded, whether they are strict, and the
+    // constants it differs from
+    private final Map<String, Constant> lower = new HashMap<>();
+    private final Map<String, Constant> upper = new HashMap<>();
+    private final Set<String> strictLower = new HashSet<>();
+    private final Set<String> strictUpper = new HashSet<>();
+    private final Map<String, List<Constant>> excluded = new HashMap<>();
+    // The comparisons between two variables, with their constant operands moved to the bounds
+    private final List<ComparisonAtom> between = new ArrayList<>();
+    private boolean unsatisfiable = false;
+
+    /**
+     * Analyzes the comparison atoms of a query.
+     *
+     * @param comparisonBody the comparison atoms
+     * @param varTypes the type ("int" or "string") of every variable of the relational atoms
+     */
+    public PredicateAnalyzer(List<ComparisonAtom> comparisonBody, Map<String, String> varTypes) {
+        this.varTypes = varTypes;
+        for (ComparisonAtom comparison : comparisonBody) add(comparison);
+        if (!this.unsatisfiable) checkOrderCycles();
+        if (!this.unsatisfiable) propagate();
+        for (String var : this.vars) {
+            if (this.unsatisfiable) break;
+            checkBounds(var);
+        }
+    }
+
+    /**
+     * Checks whether no assignment of the variables satisfies all the comparisons.
+     *
+     * @return true if the query has no answer
+     */
+    public boolean isUnsatisfiable() {
+        return unsatisfiable;
+    }
+
+    /**
+     * Returns comparisons equivalent to the analyzed ones: the bounds of every variable, in the order in which the
+     * variables first occur, followed by the comparisons between variables that the bounds do not imply.
+     *
+     * @return the comparison atoms
+     */
+    public List<ComparisonAtom> getComparisons() {
+        List<ComparisonAtom> comparisons = new ArrayList<>();
+        for (String var : this.vars) {
+            Variable variable = new Variable(var);
+            Constant low = this.lower.get(var);
+            Constant high = this.upper.get(var);
+            if (low != null && high != null && low.compareTo(high) == 0) {
+                comparisons.add(new ComparisonAtom(variable, low, ComparisonOperator.EQ));
+                continue;
+            }
+            if (low != null) comparisons.add(new ComparisonAtom(variable, low,
+                    this.strictLower.contains(var) ? ComparisonOperator.GT : ComparisonOperator.GEQ));
+            if (high != null) comparisons.add(new ComparisonAtom(variable, high,
+                    this.strictUpper.contains(var) ? ComparisonOperator.LT : ComparisonOperator.LEQ));
+            for (Constant constant : this.excluded.getOrDefault(var, new ArrayList<>())) {
+                if (withinBounds(var, constant)) comparisons.add(new ComparisonAtom(variable, constant, ComparisonOperator.NEQ));
+            }
+        }
+        List<ComparisonAtom> kept = new ArrayList<>();
+        for (ComparisonAtom comparison : this.between) {
+            boolean duplicate = false;
+            for (ComparisonAtom other : kept) duplicate |= other.toString().equals(comparison.toString());
+            if (!duplicate && !impliedByBounds(comparison)) kept.add(comparison);
+        }
+        comparisons.addAll(kept);
+        return comparisons;
+    }
+
+    /**
+     * Records a comparison atom as bounds of a variable or as a comparison between variables, and finds the
+     * comparisons that always or never hold.
+     *
+     * @param comparison the comparison atom
+     */
+    private void add(ComparisonAtom comparison) {
+        Term term1 = comparison.getTerm1();
+        Term term2 = comparison.getTerm2();
+        ComparisonOperator op = comparison.getOp();
+        if (term1 instanceof Constant && term2 instanceof Constant) {
+            if (!holds(op, (Constant) term1, (Constant) term2)) this.unsatisfiable = true;
+            return;
+        }
+        // Keep the variable first when comparing a variable with a constant
+        if (term1 instanceof Constant) {
+            Term swap = term1;
+            term1 = term2;
+            term2 = swap;
+            op = op.reverse();
+        }
+        String var1 = ((Variable) term1).getName();
+        noteVariable(var1);
+        if (term2 instanceof Variable) {
+            String var2 = ((Variable) term2).getName();
+            noteVariable(var2);
+            // Values of different types are only ever different
+            if (!typeOf(var1).equals(typeOf(var2))) {
+                if (op != ComparisonOperator.NEQ) this.unsatisfiable = true;
+                return;
+            }
+            if (var1.equals(var2)) {
+                if (op == ComparisonOperator.NEQ || op == ComparisonOperator.LT || op == ComparisonOperator.GT)
+                    this.unsatisfiable = true;
+                return;
+            }
+            this.between.add(new ComparisonAtom(term1, term2, op));
+            return;
+        }
+        Constant constant = (Constant) term2;
+        if (!typeOf(var1).equals(typeOf(constant))) {
+            if (op != ComparisonOperator.NEQ) this.unsatisfiable = true;
+            return;
+        }
+        switch (op) {
+            case EQ:
+                tightenLower(var1, constant, false);
+                tightenUpper(var1, constant, false);
+                break;
+            case NEQ:
+                this.excluded.computeIfAbsent(var1, v -> new ArrayList<>()).add(constant);
+                break;
+            case GT:
+            case GEQ:
+                tightenLower(var1, constant, op == ComparisonOperator.GT);
+                break;
+            default:
+                tightenUpper(var1, constant, op == ComparisonOperator.LT);
+        }
+    }
+
+    /**
+     * Passes the bounds of the variables along the order comparisons between them until no bound changes.
+     * Since no cycle of comparisons is strict, a bound only moves past a constant of the comparisons by a strict
+     * comparison on an acyclic path, so this terminates.
+     */
+    private void propagate() {
+        boolean changed = true;
+        while (changed && !this.unsatisfiable) {
+            changed = false;
+            for (ComparisonAtom comparison : this.between) {
+                ComparisonOperator op = comparison.getOp();
+                if (op == ComparisonOperator.NEQ) continue;
+                String var1 = ((Variable) comparison.getTerm1()).getName();
+                String var2 = ((Variable) comparison.getTerm2()).getName();
+                // Every comparison is read as "smaller op larger"; an equality is read both ways
+                if (op == ComparisonOperator.GT || op == ComparisonOperator.GEQ) {
+                    changed |= passBounds(var2, var1, op == ComparisonOperator.GT);
+                } else {
+                    changed |= passBounds(var1, var2, op == ComparisonOperator.LT);
+                    if (op == ComparisonOperator.EQ) changed |= passBounds(var2, var1, false);
+                }
+            }
+        }
+    }
+
+    /**
+     * Passes the upper bound of a larger variable to a smaller one, and the lower bound of the smaller variable to the
+     * larger one.
+     *
+     * @param smaller the smaller variable
+     * @param larger the larger variable
+     * @param strict true if the variables cannot be equal
+     * @return true if a bound changed
+     */
+    private boolean passBounds(String smaller, String larger, boolean strict) {
+        boolean changed = false;
+        if (this.upper.get(larger) != null)
+            changed |= tightenUpper(smaller, this.upper.get(larger), strict || this.strictUpper.contains(larger));
+        if (this.lower.get(smaller) != null)
+            changed |= tightenLower(larger, this.lower.get(smaller), strict || this.strictLower.contains(smaller));
+        return changed;
+    }
+
+    /**
+     * Finds cycles of order comparisons between variables with a strict comparison, such as x < y and y <= x,
+     * which can never hold.
+     */
+    private void checkOrderCycles() {
+        int n = this.vars.size();
+        // order[i][j] is 1 if variable i is at most variable j, 2 if it is smaller, and 0 if neither is implied
+        int[][] order = new int[n][n];
+        for (ComparisonAtom comparison : this.between) {
+            int i = this.vars.indexOf(((Variable) comparison.getTerm1()).getName());
+            int j = this.vars.indexOf(((Variable) comparison.getTerm2()).getName());
+            switch (comparison.getOp()) {
+                case LT:
+                    order[i][j] = 2;
+                    break;
+                case LEQ:
+                    order[i][j] = Math.max(order[i][j], 1);
+                    break;
+                case GT:
+                    order[j][i] = 2;
+                    break;
+                case GEQ:
+                    order[j][i] = Math.max(order[j][i], 1);
+                    break;
+                case EQ:
+                    order[i][j] = Math.max(order[i][j], 1);
+                    order[j][i] = Math.max(order[j][i], 1);
+                    break;
+                default:
+            }
+        }
+        for (int k = 0; k < n; k++) {
+            for (int i = 0; i < n; i++) {
+                if (order[i][k] == 0) continue;
+                for (int j = 0; j < n; j++) {
+                    if (order[k][j] != 0) order[i][j] = Math.max(order[i][j], Math.max(order[i][k], order[k][j]));
+                }
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            if (order[i][i] == 2) this.unsatisfiable = true;
+        }
+    }
+
+    /**
+     * Checks that the bounds of a variable leave it a value that it does not differ from.
+     *
+     * @param var the variable
+     */
+    private void checkBounds(String var) {
+        Constant low = this.lower.get(var);
+        Constant high = this.upper.get(var);
+        if (low != null && high != null) {
+            int cmp = low.compareTo(high);
+            if (cmp > 0 || (cmp == 0 && (this.strictLower.contains(var) || this.strictUpper.contains(var))))
+                this.unsatisfiable = true;
+            if (cmp == 0 && this.excluded.getOrDefault(var, new ArrayList<>()).contains(low)) this.unsatisfiable = true;
+        }
+    }
+
+    /**
+     * Checks whether a constant lies within the bounds of a variable.
+     *
+     * @param var the variable
+     * @param constant the constant
+     * @return true if the bounds do not exclude the constant
+     */
+    private boolean withinBounds(String var, Constant constant) {
+        Constant low = this.lower.get(var);
+        Constant high = this.upper.get(var);
+        if (low != null && !holds(this.strictLower.contains(var) ? ComparisonOperator.GT : ComparisonOperator.GEQ, constant, low))
+            return false;
+        return high == null || holds(this.strictUpper.contains(var) ? ComparisonOperator.LT : ComparisonOperator.LEQ, constant, high);
+    }
+
+    /**
+     * Checks whether the bounds of its variables imply a comparison between two variables.
+     *
+     * @param comparison the comparison between two variables
+     * @return true if the comparison holds for all values within the bounds
+     */
+    private boolean impliedByBounds(ComparisonAtom comparison) {
+        String var1 = ((Variable) comparison.getTerm1()).getName();
+        String var2 = ((Variable) comparison.getTerm2()).getName();
+        switch (comparison.getOp()) {
+            case LT:
+            case LEQ:
+                return separated(var1, var2, comparison.getOp() == ComparisonOperator.LT);
+            case GT:
+            case GEQ:
+                return separated(var2, var1, comparison.getOp() == ComparisonOperator.GT);
+            case NEQ:
+                return separated(var1, var2, true) || separated(var2, var1, true);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Checks whether every value allowed for a variable is below every value allowed for another variable.
+     *
+     * @param smaller the variable expected to be smaller
+     * @param larger the variable expected to be larger
+     * @param strict true if the values must also differ
+     * @return true if the bounds of the variables imply the order
+     */
+    private boolean separated(String smaller, String larger, boolean strict) {
+        Constant high = this.upper.get(smaller);
+        Constant low = this.lower.get(larger);
+        if (high == null || low == null) return false;
+        int cmp = high.compareTo(low);
+        boolean open = this.strictUpper.contains(smaller) || this.strictLower.contains(larger);
+        return cmp < 0 || (cmp == 0 && (!strict || open));
+    }
+
+    /**
+     * Raises the lower bound of a variable to a constant if it is larger.
+     *
+     * @param var the variable
+     * @param constant the new bound
+     * @param strict true if the variable must be larger than the constant
+     * @return true if the bound changed
+     */
+    private boolean tightenLower(String var, Constant constant, boolean strict) {
+        // An integer larger than n is at least n + 1
+        if (strict && constant instanceof IntegerConstant && ((IntegerConstant) constant).getValue() < Integer.MAX_VALUE) {
+            constant = IntegerConstant.valueOf(((IntegerConstant) constant).getValue() + 1);
+            strict = false;
+        }
+        Constant current = this.lower.get(var);
+        int cmp = current == null ? 1 : constant.compareTo(current);
+        if (cmp < 0 || (cmp == 0 && (!strict || this.strictLower.contains(var)))) return false;
+        this.lower.put(var, constant);
+        if (strict) this.strictLower.add(var);
+        else this.strictLower.remove(var);
+        return true;
+    }
+
+    /**
+     * Lowers the upper bound of a variable to a constant if it is smaller.
+     *
+     * @param var the variable
+     * @param constant the new bound
+     * @param strict true if the variable must be smaller than the constant
+     * @return true if the bound changed
+     */
+    private boolean tightenUpper(String var, Constant constant, boolean strict) {
+        // An integer smaller than n is at most n - 1
+        if (strict && constant instanceof IntegerConstant && ((IntegerConstant) constant).getValue() > Integer.MIN_VALUE) {
+            constant = IntegerConstant.valueOf(((IntegerConstant) constant).getValue() - 1);
+            strict = false;
+        }
+        Constant current = this.upper.get(var);
+        int cmp = current == null ? -1 : constant.compareTo(current);
+        if (cmp > 0 || (cmp == 0 && (!strict || this.strictUpper.contains(var)))) return false;
+        this.upper.put(var, constant);
+        if (strict) this.strictUpper.add(var);
+        else this.strictUpper.remove(var);
+        return true;
+    }
+
+    /**
+     * Records a variable in the order in which variables first occur.
+     *
+     * @param var the variable
+     */
+    private void noteVariable(String var) {
+        if (!this.vars.contains(var)) this.vars.add(var);
+    }
+
+    /**
+     * Returns the type of a variable.
+     *
+     * @param var the variable
+     * @return the type of the variable, "int" if it does not occur in a relational atom
+     */
+    private String typeOf(String var) {
+        return this.varTypes.getOrDefault(var, "int");
+    }
+
+    /**
+     * Returns the type of a constant.
+     *
+     * @param constant the constant
+     * @return "string" for string constants, "int" for numbers
+     */
+    private static String typeOf(Constant constant) {
+        return constant instanceof StringConstant ? "string" : "int";
+    }
+
+    /**
+     * Evaluates a comparison between two constants, where values of different types are only ever different.
+     *
+     * @param op the comparison operator
+     * @param constant1 the first operand
+     * @param constant2 the second operand
+     * @return true if "constant1 op constant2" holds
+     */
+    private static boolean holds(ComparisonOperator op, Constant constant1, Constant constant2) {
+        if (!typeOf(constant1).equals(typeOf(constant2))) return op == ComparisonOperator.NEQ;
+        int cmp = constant1.compareTo(constant2);
+        switch (op) {
+            case EQ:
+                return cmp == 0;
+            case NEQ:
+                return cmp != 0;
+            case GT:
+                return cmp > 0;
+            case GEQ:
+                return cmp >= 0;
+            case LT:
+                return cmp < 0;
+            default:
+                return cmp <= 0;
+        }
+    }
+}
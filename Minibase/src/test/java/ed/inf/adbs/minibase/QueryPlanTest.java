@@ -0,0 +1,121 @@
+package ed.inf.adbs.minibase;
+
+import ed.inf.adbs.minibase.base.*;
+import ed.inf.adbs.minibase.operator.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that the planner only runs a query on parallel workers when the serial plan would join every atom in memory,
+ * on a database whose first relation spans several morsels.
+ */
+public class QueryPlanTest {
+    private static final int ROWS = 20000;
+    private static final int PARALLELISM = 4;
+
+    private Path databaseDir;
+
+    /**
+     * Writes a database of two relations A(x, y) and D(x, z) joined on x, with one row per x in each.
+     */
+    @Before
+    public void createDatabase() throws IOException {
+        this.databaseDir = Files.createTempDirectory("minibase-db");
+        Files.createDirectory(this.databaseDir.resolve("files"));
+        Files.write(this.databaseDir.resolve("schema.txt"), Arrays.asList("A int int", "D int int"));
+        List<String> aRows = new ArrayList<>();
+        List<String> dRows = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            aRows.add(i + ", " + (i % 1000));
+            dRows.add(i + ", " + (1000 + i % 500));
+        }
+        Files.write(this.databaseDir.resolve("files").resolve("A.csv"), aRows);
+        Files.write(this.databaseDir.resolve("files").resolve("D.csv"), dRows);
+        DatabaseCatalog.getInstance().init(this.databaseDir.toString());
+    }
+
+    /**
+     * Deletes the database, with the indexes and statistics written by the tests.
+     */
+    @After
+    public void deleteDatabase() {
+        for (File file : this.databaseDir.resolve("files").toFile().listFiles()) file.delete();
+        for (File file : this.databaseDir.toFile().listFiles()) file.delete();
+        this.databaseDir.toFile().delete();
+    }
+
+    /**
+     * Builds Q(SUM(y)) :- A(x, y), D(x, z), var op bound, y < z. The comparison between y and z spans both atoms,
+     * so the atoms are joined pairwise.
+     */
+    private static Query sumQuery(String var, String op, int bound) {
+        List<Atom> body = new ArrayList<>();
+        body.add(new RelationalAtom("A", new ArrayList<>(Arrays.asList(new Variable("x"), new Variable("y")))));
+        body.add(new RelationalAtom("D", new ArrayList<>(Arrays.asList(new Variable("x"), new Variable("z")))));
+        body.add(new ComparisonAtom(new Variable(var), new IntegerConstant(bound), ComparisonOperator.fromString(op)));
+        body.add(new ComparisonAtom(new Variable("y"), new Variable("z"), ComparisonOperator.fromString("<")));
+        List<Term> sumTerms = new ArrayList<>();
+        sumTerms.add(new Variable("y"));
+        return new Query(new Head("Q", new ArrayList<>(), new SumAggregate(sumTerms)), body);
+    }
+
+    private static long sum(Operator plan) {
+        return plan.getNextTuple().getValues()[0];
+    }
+
+    @Test
+    public void inMemoryJoinsRunInParallel() {
+        Operator plan = Minibase.buildQueryPlan(sumQuery("y", "<", 500), PARALLELISM, HashJoinOperator.DEFAULT_MEMORY_BUDGET);
+        assertTrue(plan instanceof ParallelSumOperator);
+        assertEquals(sum(Minibase.buildQueryPlan(sumQuery("y", "<", 500), 1, HashJoinOperator.DEFAULT_MEMORY_BUDGET)), sum(plan));
+    }
+
+    @Test
+    public void inputsOverBudgetAreSortMergedInsteadOfRunningInParallel() {
+        long expected = sum(Minibase.buildQueryPlan(sumQuery("y", "<", 500), 1, HashJoinOperator.DEFAULT_MEMORY_BUDGET));
+        int spillFilesBefore = ListOperator.spillFileCount();
+        Operator plan = Minibase.buildQueryPlan(sumQuery("y", "<", 500), PARALLELISM, 1);
+        assertFalse(plan instanceof ParallelSumOperator);
+        assertEquals(expected, sum(plan));
+        // Both inputs exceed the budget, so they are sorted, in memory within the sort budget, rather than partitioned
+        // to disk by a hybrid hash join
+        assertEquals(spillFilesBefore, ListOperator.spillFileCount());
+    }
+
+    @Test
+    public void buildSideOverBudgetIsPartitionedInsteadOfRunningInParallel() {
+        // With statistics, z <= 1001 is estimated to keep few tuples of D, which then fit in the budget while A does not
+        Analyzer.analyzeDatabase(this.databaseDir.toString(), new ArrayList<>());
+        long expected = sum(Minibase.buildQueryPlan(sumQuery("z", "<=", 1001), 1, HashJoinOperator.DEFAULT_MEMORY_BUDGET));
+        int spillFilesBefore = ListOperator.spillFileCount();
+        Operator plan = Minibase.buildQueryPlan(sumQuery("z", "<=", 1001), PARALLELISM, 100 * 1024);
+        assertFalse(plan instanceof ParallelSumOperator);
+        assertEquals(expected, sum(plan));
+        assertTrue(ListOperator.spillFileCount() > spillFilesBefore);
+    }
+
+    @Test
+    public void indexJoinIsKeptInsteadOfRunningInParallel() {
+        // With statistics, z <= 1001 is estimated to keep few tuples of D, so looking them up in A by x is cheaper than a scan
+        CreateIndex.createIndex(this.databaseDir.toString(), new IndexDefinition("A", 0, HashIndex.KIND));
+        CreateIndex.createIndex(this.databaseDir.toString(), new IndexDefinition("D", 0, HashIndex.KIND));
+        Analyzer.analyzeDatabase(this.databaseDir.toString(), new ArrayList<>());
+        Operator plan = Minibase.buildQueryPlan(sumQuery("z", "<=", 1001), PARALLELISM, HashJoinOperator.DEFAULT_MEMORY_BUDGET);
+        assertFalse(plan instanceof ParallelSumOperator);
+        assertEquals(sum(Minibase.buildQueryPlan(sumQuery("z", "<=", 1001), 1, HashJoinOperator.DEFAULT_MEMORY_BUDGET)),
+                sum(plan));
+    }
+}
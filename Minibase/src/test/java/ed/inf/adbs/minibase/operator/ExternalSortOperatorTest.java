@@ -0,0 +1,61 @@
+package ed.inf.adbs.minibase.operator;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static ed.inf.adbs.minibase.operator.ListOperator.canonical;
+import static ed.inf.adbs.minibase.operator.ListOperator.readAll;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests ExternalSortOperator when its input spills to runs, and the sort-merge join of unsorted inputs.
+ */
+public class ExternalSortOperatorTest {
+    // A budget of about a hundred rows, so that the input is written to more runs than the merge fan-in
+    private static final long MEMORY_BUDGET = 4096;
+
+    /**
+     * Builds rows of two columns: a random key in [0, keys) and the position of the row.
+     */
+    private static List<long[]> randomRows(int count, int keys, long seed) {
+        Random random = new Random(seed);
+        List<long[]> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) rows.add(new long[]{random.nextInt(keys), i});
+        return rows;
+    }
+
+    @Test
+    public void spilledSortIsOrderedAndComplete() {
+        List<long[]> input = randomRows(30000, 1000, 1);
+        ExternalSortOperator sort = new ExternalSortOperator(new ListOperator(Arrays.asList("x", "y"), input),
+                new int[]{0}, MEMORY_BUDGET);
+        List<long[]> output = readAll(sort);
+        for (int i = 1; i < output.size(); i++) assertTrue(output.get(i - 1)[0] <= output.get(i)[0]);
+        assertEquals(canonical(input), canonical(output));
+
+        // The runs are kept, so a reset returns the same tuples in the same order
+        sort.reset();
+        List<long[]> again = readAll(sort);
+        assertEquals(output.size(), again.size());
+        for (int i = 0; i < output.size(); i++) assertTrue(Arrays.equals(output.get(i), again.get(i)));
+    }
+
+    @Test
+    public void sortMergeJoinOfUnsortedInputsMatchesHashJoin() {
+        List<long[]> left = randomRows(5000, 300, 2);
+        List<long[]> right = randomRows(4000, 400, 3);
+        Operator mergeJoin = new SortMergeJoinOperator(new ListOperator(Arrays.asList("x", "y"), left),
+                new ListOperator(Arrays.asList("x", "z"), right), Collections.emptyList());
+        Operator hashJoin = new HashJoinOperator(new ListOperator(Arrays.asList("x", "y"), left),
+                new ListOperator(Arrays.asList("x", "z"), right), Collections.emptyList());
+        List<long[]> expected = readAll(hashJoin);
+        assertTrue(expected.size() > left.size());
+        assertEquals(canonical(expected), canonical(readAll(mergeJoin)));
+    }
+}
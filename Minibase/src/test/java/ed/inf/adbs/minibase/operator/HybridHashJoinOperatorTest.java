@@ -0,0 +1,73 @@
+package ed.inf.adbs.minibase.operator;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static ed.inf.adbs.minibase.operator.ListOperator.canonical;
+import static ed.inf.adbs.minibase.operator.ListOperator.readAll;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests HybridHashJoinOperator with a memory budget small enough to spill and repartition its inputs.
+ */
+public class HybridHashJoinOperatorTest {
+    // A budget of a few dozen build rows, far below the size of the build side
+    private static final long MEMORY_BUDGET = 2048;
+    // A key shared by so many build rows that its partition is still too large at the deepest pass
+    private static final long SKEWED_KEY = 0;
+
+    /**
+     * Builds rows of two columns, a join key and a payload, with every key in [1, keys) about copies times
+     * and the skewed key skewedCopies times, in random order.
+     */
+    private static List<long[]> rows(int keys, int copies, int skewedCopies, long seed) {
+        List<long[]> rows = new ArrayList<>();
+        for (int key = 1; key < keys; key++) {
+            for (int copy = 0; copy < copies; copy++) rows.add(new long[]{key, rows.size()});
+        }
+        for (int copy = 0; copy < skewedCopies; copy++) rows.add(new long[]{SKEWED_KEY, rows.size()});
+        Collections.shuffle(rows, new Random(seed));
+        return rows;
+    }
+
+    private static Operator leftChild() {
+        return new ListOperator(Arrays.asList("x", "y"), rows(3000, 2, 5, 1));
+    }
+
+    private static Operator rightChild() {
+        return new ListOperator(Arrays.asList("x", "z"), rows(4000, 3, 2000, 2));
+    }
+
+    @Test
+    public void spilledJoinMatchesHashJoin() {
+        int spillFilesBefore = ListOperator.spillFileCount();
+        HybridHashJoinOperator hybridJoin = new HybridHashJoinOperator(leftChild(), rightChild(), Collections.emptyList(),
+                MEMORY_BUDGET);
+        List<long[]> output = readAll(hybridJoin);
+        assertTrue(ListOperator.spillFileCount() > spillFilesBefore);
+        List<long[]> expected = readAll(new HashJoinOperator(leftChild(), rightChild(), Collections.emptyList()));
+        assertEquals(2 * 3 * 2999 + 5 * 2000, expected.size());
+        assertEquals(canonical(expected), canonical(output));
+    }
+
+    @Test
+    public void resetDuringSpilledPassesReturnsSameTuples() {
+        HybridHashJoinOperator hybridJoin = new HybridHashJoinOperator(leftChild(), rightChild(), Collections.emptyList(),
+                MEMORY_BUDGET);
+        List<List<Long>> expected = canonical(readAll(hybridJoin));
+
+        // Stop in the first pass, then in the passes over spilled partitions, and read everything again after each reset
+        for (int stop : new int[]{10, expected.size() / 2, expected.size() - 10}) {
+            hybridJoin.reset();
+            for (int i = 0; i < stop; i++) hybridJoin.getNextTuple();
+            hybridJoin.reset();
+            assertEquals(expected, canonical(readAll(hybridJoin)));
+        }
+    }
+}
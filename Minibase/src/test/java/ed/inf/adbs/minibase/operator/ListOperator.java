@@ -0,0 +1,86 @@
+package ed.inf.adbs.minibase.operator;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * An operator returning a fixed list of rows of int columns, used as the child of the operators under test.
+ */
+public class ListOperator extends Operator {
+    private static final Comparator<long[]> ROW_ORDER = (a, b) -> {
+        for (int i = 0; i < a.length; i++) {
+            int comparison = Long.compare(a[i], b[i]);
+            if (comparison != 0) return comparison;
+        }
+        return 0;
+    };
+
+    private final List<long[]> rows;
+    private int index = 0;
+
+    /**
+     * Constructs a ListOperator.
+     *
+     * @param varsName the variable names of the columns
+     * @param rows the rows to return, in order
+     */
+    public ListOperator(List<String> varsName, List<long[]> rows) {
+        this.varsName = new ArrayList<>(varsName);
+        this.varsType = new ArrayList<>(Collections.nCopies(varsName.size(), "int"));
+        this.rows = rows;
+    }
+
+    @Override
+    public void reset() {
+        this.index = 0;
+    }
+
+    @Override
+    public Tuple getNextTuple() {
+        if (this.index >= this.rows.size()) return null;
+        return new Tuple(this.rows.get(this.index++).clone());
+    }
+
+    /**
+     * Counts the spill files currently in the temporary directory, to check that the operators under test delete theirs.
+     *
+     * @return the number of spill files
+     */
+    public static int spillFileCount() {
+        String[] names = new File(System.getProperty("java.io.tmpdir")).list((dir, name) -> name.startsWith("minibase-spill"));
+        return names == null ? 0 : names.length;
+    }
+
+    /**
+     * Reads the remaining tuples of an operator.
+     *
+     * @param operator the operator
+     * @return the slots of the tuples, in the order they were returned
+     */
+    public static List<long[]> readAll(Operator operator) {
+        List<long[]> rows = new ArrayList<>();
+        for (Tuple tuple = operator.getNextTuple(); tuple != null; tuple = operator.getNextTuple()) rows.add(tuple.getValues());
+        return rows;
+    }
+
+    /**
+     * Sorts rows on all their columns, so that two lists holding the same rows in any order compare equal.
+     *
+     * @param rows the rows
+     * @return the values of the rows, sorted
+     */
+    public static List<List<Long>> canonical(List<long[]> rows) {
+        List<long[]> sorted = new ArrayList<>(rows);
+        sorted.sort(ROW_ORDER);
+        List<List<Long>> values = new ArrayList<>();
+        for (long[] row : sorted) {
+            List<Long> value = new ArrayList<>();
+            for (long slot : row) value.add(slot);
+            values.add(value);
+        }
+        return values;
+    }
+}
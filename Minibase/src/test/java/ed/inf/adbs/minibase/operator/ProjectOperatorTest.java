@@ -0,0 +1,70 @@
+package ed.inf.adbs.minibase.operator;
+
+import ed.inf.adbs.minibase.base.RelationalAtom;
+import ed.inf.adbs.minibase.base.Term;
+import ed.inf.adbs.minibase.base.Variable;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the duplicate elimination of ProjectOperator when its set of seen tuples spills to disk.
+ */
+public class ProjectOperatorTest {
+    // A budget of a few dozen seen tuples, so that most tuples are spilled and partitions are split again
+    private static final long MEMORY_BUDGET = 4096;
+    private static final int DISTINCT = 5000;
+
+    /**
+     * Builds a projection on x of a child holding every value of x ten times, with a different y every time.
+     */
+    private static ProjectOperator spillingProjection() {
+        List<long[]> rows = new ArrayList<>();
+        for (int copy = 0; copy < 10; copy++) {
+            for (int x = 0; x < DISTINCT; x++) rows.add(new long[]{(x * 7919L) % DISTINCT, copy});
+        }
+        List<Term> headTerms = new ArrayList<>();
+        headTerms.add(new Variable("x"));
+        return new ProjectOperator(new ListOperator(Arrays.asList("x", "y"), rows), new RelationalAtom("Q", headTerms),
+                MEMORY_BUDGET);
+    }
+
+    /**
+     * Reads the remaining tuples of an operator, checking that none is returned twice.
+     */
+    private static Set<Long> readDistinct(Operator operator) {
+        Set<Long> values = new HashSet<>();
+        for (Tuple tuple = operator.getNextTuple(); tuple != null; tuple = operator.getNextTuple()) {
+            assertTrue("Duplicate tuple " + tuple, values.add(tuple.getValues()[0]));
+        }
+        return values;
+    }
+
+    @Test
+    public void spilledProjectionIsDistinctAndComplete() {
+        int spillFilesBefore = ListOperator.spillFileCount();
+        ProjectOperator project = spillingProjection();
+        Set<Long> values = readDistinct(project);
+        assertEquals(DISTINCT, values.size());
+        for (long x = 0; x < DISTINCT; x++) assertTrue(values.contains(x));
+        assertEquals(spillFilesBefore, ListOperator.spillFileCount());
+    }
+
+    @Test
+    public void resetDeletesSpillFilesAndRestarts() {
+        int spillFilesBefore = ListOperator.spillFileCount();
+        ProjectOperator project = spillingProjection();
+        for (int i = 0; i < 200; i++) project.getNextTuple();
+        assertTrue(ListOperator.spillFileCount() > spillFilesBefore);
+        project.reset();
+        assertEquals(spillFilesBefore, ListOperator.spillFileCount());
+        assertEquals(DISTINCT, readDistinct(project).size());
+    }
+}